@@ -0,0 +1,239 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Asynchronous file I/O whose completions are delivered on an {@link EventLoop} thread, so that handlers can read and
+ * write files without blocking the loop, and without synchronizing with another thread.
+ *
+ * <p>
+ * Files are opened as {@link AsynchronousFileChannel}s backed by an I/O executor, which can be small, and shared by
+ * every event loop.  The I/O happens on that executor, and the completion handlers are then invoked on the event loop.
+ *
+ * <p>
+ * File contents can also be {@link #pipe piped} into an {@link OutputBuffer} through pooled buffers, which are queued
+ * without copying, and returned to the pool once sent.  Reading stops while too much of the file is waiting to be
+ * sent, so a slow connection doesn't cause the whole file to be read into memory.  A pipe stops if the output buffer
+ * is cleared, and can be {@link Pipe#cancel() cancelled}, for instance when its connection is closed.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class AsyncFileIO {
+    private final EventLoop eventLoop;
+    private final ExecutorService ioExecutor;
+    private final BufferPool bufferPool;
+
+    /**
+     * Creates an asynchronous file I/O helper.
+     *
+     * @param eventLoop the event loop which completions are delivered on.
+     * @param ioExecutor the executor which performs the I/O.
+     * @param bufferPool the pool of buffers used for piping.
+     */
+    public AsyncFileIO(EventLoop eventLoop, ExecutorService ioExecutor, BufferPool bufferPool) {
+        this.eventLoop = eventLoop;
+        this.ioExecutor = ioExecutor;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Opens a file for asynchronous I/O on the I/O executor.
+     *
+     * @param file the file.
+     * @param options the options, as {@link AsynchronousFileChannel#open(Path, java.util.Set, ExecutorService, java.nio.file.attribute.FileAttribute[])}.
+     *
+     * @return the channel.
+     *
+     * @throws IOException if the file can't be opened.
+     */
+    public AsynchronousFileChannel open(Path file, OpenOption... options) throws IOException {
+        return AsynchronousFileChannel.open(file, new HashSet<>(Arrays.asList(options)), ioExecutor);
+    }
+
+    /**
+     * Reads from the file at the given position, and notifies the handler on the event loop thread.
+     *
+     * @see AsynchronousFileChannel#read(ByteBuffer, long, Object, CompletionHandler)
+     */
+    public <A> void read(AsynchronousFileChannel channel, ByteBuffer dst, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        channel.read(dst, position, attachment, onEventLoop(handler));
+    }
+
+    /**
+     * Writes to the file at the given position, and notifies the handler on the event loop thread.
+     *
+     * @see AsynchronousFileChannel#write(ByteBuffer, long, Object, CompletionHandler)
+     */
+    public <A> void write(AsynchronousFileChannel channel, ByteBuffer src, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        channel.write(src, position, attachment, onEventLoop(handler));
+    }
+
+    /**
+     * Pipes part of a file into an output buffer.  Must be called from the event loop thread.  The file is read a
+     * pooled buffer at a time, each buffer is queued in the output buffer by reference, and reading pauses whenever at
+     * least maximumBuffered bytes from the file are waiting to be sent.
+     *
+     * <p>
+     * The pipe fails if the output buffer is {@link OutputBuffer#clear() cleared}.  If the output buffer won't be sent
+     * or cleared any more, for instance because its connection was closed, the pipe must be {@link Pipe#cancel()
+     * cancelled}, or it would wait forever for room in the output buffer.
+     *
+     * @param channel the file.
+     * @param position the position to start reading from.
+     * @param count the number of bytes to pipe.  Piping stops early at end of file.
+     * @param outputBuffer the output buffer.
+     * @param maximumBuffered the number of bytes from the file which may wait in the output buffer before reading
+     *                        pauses.
+     * @param handler notified on the event loop thread with the number of bytes piped once everything has been
+     *                appended to the output buffer, or if reading fails, the output buffer is cleared, or the pipe
+     *                is cancelled.
+     *
+     * @return the pipe, which can be cancelled.
+     */
+    public Pipe pipe(AsynchronousFileChannel channel, long position, long count, OutputBuffer outputBuffer, long maximumBuffered, CompletionHandler<Long, Void> handler) {
+        final Pipe pipe = new Pipe(channel, position, count, outputBuffer, maximumBuffered, handler);
+        pipe.readMore();
+        return pipe;
+    }
+
+    private <V, A> CompletionHandler<V, A> onEventLoop(CompletionHandler<V, ? super A> handler) {
+        return new CompletionHandler<V, A>() {
+            @Override
+            public void completed(V result, A attachment) {
+                eventLoop.invokeLater(() -> handler.completed(result, attachment));
+            }
+
+            @Override
+            public void failed(Throwable exception, A attachment) {
+                eventLoop.invokeLater(() -> handler.failed(exception, attachment));
+            }
+        };
+    }
+
+    /**
+     * A pipe from a file to an output buffer.  Only accessed from the event loop thread.
+     */
+    public final class Pipe {
+        private final AsynchronousFileChannel channel;
+        private final OutputBuffer outputBuffer;
+        private final long maximumBuffered;
+        private final CompletionHandler<Long, Void> handler;
+        private final CompletionHandler<Integer, ByteBuffer> completion = onEventLoop(new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer result, ByteBuffer buffer) {
+                readCompleted(result, buffer);
+            }
+
+            @Override
+            public void failed(Throwable exception, ByteBuffer buffer) {
+                readFailed(exception, buffer);
+            }
+        });
+        private final Runnable cleared = () -> fail(new IOException("The output buffer was cleared"));
+        private long position;
+        private long remaining;
+        private long buffered;
+        private long piped;
+        private boolean reading;
+        private boolean finished;
+
+        Pipe(AsynchronousFileChannel channel, long position, long count, OutputBuffer outputBuffer, long maximumBuffered, CompletionHandler<Long, Void> handler) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = count;
+            this.outputBuffer = outputBuffer;
+            this.maximumBuffered = maximumBuffered;
+            this.handler = handler;
+            outputBuffer.addClearListener(cleared);
+        }
+
+        /**
+         * Stops the pipe, and notifies the handler with a {@link CancellationException}, unless it has already
+         * finished.  Buffers which were already appended to the output buffer are returned to the pool once the output
+         * buffer sends or clears them.  Must be called from the event loop thread.
+         */
+        public void cancel() {
+            fail(new CancellationException("Pipe cancelled"));
+        }
+
+        private void readMore() {
+            if (finished || reading) {
+                return;
+            }
+            if (remaining == 0) {
+                finish();
+                handler.completed(piped, null);
+                return;
+            }
+            if (buffered >= maximumBuffered) {
+                return;
+            }
+            reading = true;
+            final ByteBuffer buffer = bufferPool.acquire();
+            if (buffer.remaining() > remaining) {
+                buffer.limit((int) remaining);
+            }
+            try {
+                channel.read(buffer, position, buffer, completion);
+            } catch (final RuntimeException e) {
+                readFailed(e, buffer);
+            }
+        }
+
+        private void readCompleted(Integer result, ByteBuffer buffer) {
+            reading = false;
+            if (finished) {
+                // Cancelled while reading.
+                bufferPool.release(buffer);
+                return;
+            }
+            final int read = result;
+            if (read < 0) {
+                bufferPool.release(buffer);
+                remaining = 0;
+                readMore();
+                return;
+            }
+            buffer.flip();
+            position += read;
+            remaining -= read;
+            piped += read;
+            buffered += read;
+            outputBuffer.appendOwned(buffer, () -> sent(buffer, read));
+            readMore();
+        }
+
+        private void sent(ByteBuffer buffer, int count) {
+            bufferPool.release(buffer);
+            buffered -= count;
+            readMore();
+        }
+
+        private void readFailed(Throwable exception, ByteBuffer buffer) {
+            reading = false;
+            bufferPool.release(buffer);
+            fail(exception);
+        }
+
+        private void fail(Throwable exception) {
+            if (!finished) {
+                finish();
+                handler.failed(exception, null);
+            }
+        }
+
+        private void finish() {
+            finished = true;
+            outputBuffer.removeClearListener(cleared);
+        }
+    }
+}
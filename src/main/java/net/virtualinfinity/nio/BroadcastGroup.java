@@ -0,0 +1,117 @@
+package net.virtualinfinity.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of connections which receive the same messages.  Each broadcast appends one {@link SharedPayload} to every
+ * member's output buffer, so the message is never copied per member.
+ *
+ * <p>
+ * A member whose output buffer already holds more than the backlog limit is too slow to keep up.  It is removed from
+ * the group instead of being sent the message, and its listener is notified, typically to close the connection.
+ *
+ * <p>
+ * <strong>Warning:</strong> This class is not thread-safe.  Members on several event loops can be served by a group
+ * per event loop, sharing the same payloads.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class BroadcastGroup {
+    private final Map<OutputBuffer, Runnable> members = new LinkedHashMap<>();
+    private final long maximumBacklog;
+
+    /**
+     * Creates an empty group.
+     *
+     * @param maximumBacklog the number of bytes a member may have waiting to be sent before it is dropped, including the
+     *                       message being broadcast.
+     */
+    public BroadcastGroup(long maximumBacklog) {
+        if (maximumBacklog <= 0) {
+            throw new IllegalArgumentException("maximumBacklog must be positive");
+        }
+        this.maximumBacklog = maximumBacklog;
+    }
+
+    /**
+     * Adds a member.
+     *
+     * @param outputBuffer the member's output buffer.
+     * @param droppedListener called if the member is dropped for being too slow.  May be null.
+     */
+    public void add(OutputBuffer outputBuffer, Runnable droppedListener) {
+        members.put(outputBuffer, droppedListener);
+    }
+
+    /**
+     * Removes a member.
+     *
+     * @param outputBuffer the member's output buffer.
+     *
+     * @return true if it was a member.
+     */
+    public boolean remove(OutputBuffer outputBuffer) {
+        if (!members.containsKey(outputBuffer)) {
+            return false;
+        }
+        members.remove(outputBuffer);
+        return true;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Sends the payload to every member, dropping members which are too far behind.  The caller keeps its own
+     * reference to the payload.
+     *
+     * <p>
+     * Listeners and the output buffers' own listeners may add or remove members while the payload is being sent.
+     * Members removed before their turn are skipped, and members added are not sent this payload.
+     *
+     * @param payload the payload.
+     *
+     * @return the number of members the payload was sent to.
+     */
+    public int broadcast(SharedPayload payload) {
+        int sent = 0;
+        // A snapshot, because the drop listeners and the output buffers' listeners may change the membership.
+        for (final Map.Entry<OutputBuffer, Runnable> member : new ArrayList<>(members.entrySet())) {
+            final OutputBuffer outputBuffer = member.getKey();
+            if (!members.containsKey(outputBuffer)) {
+                continue;
+            }
+            if (outputBuffer.remaining() + payload.size() > maximumBacklog) {
+                members.remove(outputBuffer);
+                if (member.getValue() != null) {
+                    member.getValue().run();
+                }
+            } else {
+                payload.appendTo(outputBuffer);
+                ++sent;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Sends the data to every member, dropping members which are too far behind.
+     *
+     * @param data the data, which must not be modified until release is called.
+     * @param release called once every member has sent the data.  May be null.
+     *
+     * @return the number of members the data was sent to.
+     */
+    public int broadcast(ByteBuffer data, Runnable release) {
+        final SharedPayload payload = new SharedPayload(data, release);
+        try {
+            return broadcast(payload);
+        } finally {
+            payload.release();
+        }
+    }
+}
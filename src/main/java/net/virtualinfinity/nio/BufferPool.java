@@ -0,0 +1,78 @@
+package net.virtualinfinity.nio;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of equally sized direct byte buffers.
+ *
+ * <p>
+ * Direct buffers are expensive to allocate and are only reclaimed by the garbage collector, so components that need
+ * short lived buffers should acquire them from a shared pool, and release them when they are done.
+ *
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class BufferPool {
+    private final int bufferSize;
+    private final int maximumPooled;
+    private final Queue<ByteBuffer> pooled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+
+    /**
+     * Constructs a pool of buffers.
+     *
+     * @param bufferSize The capacity of each buffer in the pool.
+     * @param maximumPooled The maximum number of idle buffers to keep. Buffers released beyond this are discarded.
+     */
+    public BufferPool(int bufferSize, int maximumPooled) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maximumPooled = maximumPooled;
+    }
+
+    /**
+     * @return the capacity of the buffers in this pool.
+     */
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Acquires a cleared buffer with a capacity of {@link #bufferSize()}, allocating a new one if the pool is empty.
+     *
+     * @return the buffer.
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer buffer = pooled.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooledCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.  The caller must not use the buffer after releasing it.
+     * Buffers that were not acquired from a pool of this size are ignored.
+     *
+     * @param buffer the buffer to release.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || !buffer.isDirect() || buffer.isReadOnly()) {
+            return;
+        }
+        if (pooledCount.incrementAndGet() > maximumPooled) {
+            pooledCount.decrementAndGet();
+            return;
+        }
+        pooled.add(buffer);
+    }
+}
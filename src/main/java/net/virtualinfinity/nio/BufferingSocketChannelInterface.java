@@ -0,0 +1,55 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+
+/**
+ * A socket channel which buffers data internally, and may need to read or write on its own behalf, independently of
+ * the data the application is sending and receiving.  For example, a TLS channel must exchange handshake messages,
+ * and may decrypt more data from a single network read than fits in the caller's buffer.
+ *
+ * <p>
+ * {@link SocketSelectionActions} checks for this interface, and uses it to keep the channel's needs in its interest
+ * ops and selection handling.
+ *
+ * @see TlsSocketChannel
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public interface BufferingSocketChannelInterface extends SocketChannelInterface {
+    /**
+     * Adjusts the interest ops wanted by the application to include (or exclude) the operations this channel needs.
+     *
+     * @param requested the interest ops based on the application's needs.
+     *
+     * @return the interest ops that should be set on the selection key.
+     */
+    int adjustInterestOps(int requested);
+
+    /**
+     * Writes any internally buffered output to the underlying channel, as far as it will accept it.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void flush() throws IOException;
+
+    /**
+     * @return true if {@link #read(java.nio.ByteBuffer)} can make progress without the underlying channel being readable.
+     */
+    boolean hasBufferedInput();
+
+    /**
+     * Reads from the underlying channel for the channel's own needs, such as a handshake, while the application isn't
+     * reading.  Any application data read is kept buffered until the next {@link #read(java.nio.ByteBuffer)}.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void readAhead() throws IOException;
+
+    /**
+     * Sets a listener to be called from the event loop when the channel's needs change outside of a selection, for
+     * example when work it was waiting on completes.
+     *
+     * @param listener the listener, or null to remove it.
+     */
+    void setReadinessListener(Runnable listener);
+}
@@ -0,0 +1,33 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+
+/**
+ * Takes over the connections opened by a {@link BulkConnector}.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface BulkConnectionHandler {
+    /**
+     * Called from the connection's event loop once it has connected.  The handler takes ownership of the channel, and
+     * must register it with the event loop before returning, for example with
+     * {@link SocketSelectionActions#register(EventLoop)}, or close it.
+     *
+     * @param index the index of the connection, from 0.
+     * @param eventLoop the event loop which the channel is registered with.
+     * @param channel the connected channel.
+     *
+     * @throws IOException if the connection can't be set up.  The channel is closed.
+     */
+    void connected(int index, EventLoop eventLoop, SocketChannelInterface channel) throws IOException;
+
+    /**
+     * Called from the connection's event loop if it failed to connect.
+     *
+     * @param index the index of the connection, from 0.
+     * @param exception the cause.
+     */
+    default void connectionFailed(int index, IOException exception) {
+    }
+}
@@ -0,0 +1,359 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens many client connections, without overwhelming the network stack or the server.
+ *
+ * <p>
+ * Connections are started no faster than the connect rate, and no more than the in-flight limit are connecting at
+ * once, which avoids exhausting ephemeral ports and overflowing the server's SYN backlog.  Each endpoint's host name is
+ * resolved once, before any connections are started, and connections are assigned round-robin to the endpoints and
+ * to the event loops.  A connect which doesn't complete within the connect timeout is abandoned, so that a dropped SYN
+ * can't hold an in-flight slot forever.  The outcome and latency of every connect is recorded.
+ *
+ * <p>
+ * Scheduling happens on the first event loop.  Each connection is opened, and handed to the
+ * {@link BulkConnectionHandler}, on the event loop it was assigned to.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class BulkConnector {
+    /**
+     * The default connect timeout, in milliseconds.
+     */
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    private final ConnectionInitiator connectionInitiator;
+    private final AsynchronousAddressResolver addressResolver;
+    private final List<EventLoop> eventLoops;
+    private final EventLoop coordinator;
+    private final List<SocketAddress> endpoints;
+    private final int connections;
+    private final int maximumInFlight;
+    private final TokenBucket connectRate;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final Runnable dispatch = this::dispatch;
+    private BulkConnectionHandler handler;
+    private Runnable finished;
+    private int nextIndex;
+    private int unresolved;
+    private boolean dispatchScheduled;
+    private long connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    private int succeeded;
+    private int failed;
+    private int timedOut;
+
+    /**
+     * Creates a bulk connector.
+     *
+     * @param connectionInitiator opens the connections.
+     * @param addressResolver resolves the endpoints' host names.
+     * @param eventLoops the event loops to spread the connections over.
+     * @param endpoints the addresses to connect to.  Unresolved {@link InetSocketAddress}es are resolved once.
+     * @param connections the number of connections to open.
+     * @param maximumInFlight the most connections which may be connecting at once.
+     * @param connectsPerSecond the most connections to start per second.
+     */
+    public BulkConnector(ConnectionInitiator connectionInitiator, AsynchronousAddressResolver addressResolver, List<EventLoop> eventLoops, List<? extends SocketAddress> endpoints, int connections, int maximumInFlight, long connectsPerSecond) {
+        if (eventLoops.isEmpty()) {
+            throw new IllegalArgumentException("eventLoops must not be empty");
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("endpoints must not be empty");
+        }
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be positive");
+        }
+        if (maximumInFlight < 1) {
+            throw new IllegalArgumentException("maximumInFlight must be positive");
+        }
+        this.connectionInitiator = connectionInitiator;
+        this.addressResolver = addressResolver;
+        this.eventLoops = new ArrayList<>(eventLoops);
+        this.coordinator = this.eventLoops.get(0);
+        this.endpoints = new ArrayList<>(endpoints);
+        this.connections = connections;
+        this.maximumInFlight = maximumInFlight;
+        this.connectRate = new TokenBucket(connectsPerSecond, 1);
+    }
+
+    /**
+     * Sets how long each connect may take before it is abandoned and counted as failed.  Must be called before
+     * {@link #start(BulkConnectionHandler, Runnable)}.
+     *
+     * @param timeout the connect timeout.
+     * @param unit the unit of timeout.
+     */
+    public void setConnectTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+        this.connectTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Starts opening the connections.  May be called from any thread, but only once.
+     *
+     * @param handler takes over each connection once it has connected.
+     * @param finished called once every connection has either connected or failed, from the event loop of the last
+     *                 one to finish.  May be null.
+     */
+    public void start(BulkConnectionHandler handler, Runnable finished) {
+        synchronized (this) {
+            if (this.handler != null) {
+                throw new IllegalStateException("Already started");
+            }
+            this.handler = handler;
+            this.finished = finished;
+        }
+        coordinator.invokeLater(this::resolveEndpoints);
+    }
+
+    /**
+     * Resolves each host name once, however many endpoints share it.
+     */
+    private void resolveEndpoints() {
+        final Map<String, List<Integer>> indexesByHost = new LinkedHashMap<>();
+        for (int index = 0; index < endpoints.size(); ++index) {
+            final SocketAddress endpoint = endpoints.get(index);
+            if (endpoint instanceof InetSocketAddress && ((InetSocketAddress) endpoint).isUnresolved()) {
+                indexesByHost.computeIfAbsent(((InetSocketAddress) endpoint).getHostString(), host -> new ArrayList<>()).add(index);
+            }
+        }
+        unresolved = indexesByHost.size();
+        if (unresolved == 0) {
+            dispatch();
+            return;
+        }
+        indexesByHost.forEach((host, indexes) ->
+            addressResolver.lookupInetSocketAddress(coordinator, host, 0, resolved -> {
+                if (!resolved.isUnresolved()) {
+                    for (final int index : indexes) {
+                        endpoints.set(index, new InetSocketAddress(resolved.getAddress(), ((InetSocketAddress) endpoints.get(index)).getPort()));
+                    }
+                }
+                if (--unresolved == 0) {
+                    dispatch();
+                }
+            }));
+    }
+
+    /**
+     * Starts as many connections as the limits allow.  Runs on the coordinating event loop.
+     */
+    private void dispatch() {
+        dispatchScheduled = false;
+        while (nextIndex < connections && inFlight.get() < maximumInFlight) {
+            if (connectRate.tryAcquire(1) == 0) {
+                dispatchScheduled = true;
+                coordinator.invokeAfter(dispatch, connectRate.nanosUntilAvailable(1), TimeUnit.NANOSECONDS);
+                return;
+            }
+            final int index = nextIndex++;
+            inFlight.incrementAndGet();
+            new Attempt(index, eventLoops.get(index % eventLoops.size())).start(endpoints.get(index % endpoints.size()));
+        }
+    }
+
+    private void attemptFinished() {
+        inFlight.decrementAndGet();
+        coordinator.invokeLater(() -> {
+            if (!dispatchScheduled) {
+                dispatch();
+            }
+        });
+    }
+
+    private void recordOutcome(boolean connected, boolean timedOut, long latencyNanos) {
+        final boolean allFinished;
+        synchronized (this) {
+            if (connected) {
+                ++succeeded;
+                connectLatency.recordValue(latencyNanos);
+            } else {
+                ++failed;
+                if (timedOut) {
+                    ++this.timedOut;
+                }
+            }
+            allFinished = succeeded + failed == connections;
+        }
+        if (allFinished && finished != null) {
+            finished.run();
+        }
+    }
+
+    /**
+     * @return the number of connections which have connected.
+     */
+    public synchronized int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * @return the number of connections which failed to connect, including those which timed out.
+     */
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of connections which were abandoned because they didn't connect within the connect timeout.
+     */
+    public synchronized int getTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return the number of connections currently connecting.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return a copy of the latencies of the successful connects, from starting the connect until it completed.
+     */
+    public synchronized LatencyHistogram getConnectLatency() {
+        final LatencyHistogram copy = new LatencyHistogram();
+        copy.add(connectLatency);
+        return copy;
+    }
+
+    /**
+     * A single connect, which finishes the connection before handing it over.  Runs on its event loop.
+     */
+    private final class Attempt implements ConnectionListener, SelectionKeyActions {
+        private final int index;
+        private final EventLoop eventLoop;
+        private final long startNanos = System.nanoTime();
+        private SocketChannelInterface channel;
+        private boolean done;
+        private boolean timedOut;
+        private ScheduledFuture<?> timeout;
+
+        Attempt(int index, EventLoop eventLoop) {
+            this.index = index;
+            this.eventLoop = eventLoop;
+        }
+
+        void start(SocketAddress address) {
+            if (address instanceof InetSocketAddress && ((InetSocketAddress) address).isUnresolved()) {
+                // Don't let the connection initiator resolve it again for every connection.
+                eventLoop.invokeLater(() -> connectionFailed(new UnknownHostException(((InetSocketAddress) address).getHostString())));
+                return;
+            }
+            timeout = eventLoop.schedule(this::expire, connectTimeoutNanos, TimeUnit.NANOSECONDS);
+            connectionInitiator.connect(eventLoop, address, this, this::initiated);
+        }
+
+        private void expire() {
+            if (!done) {
+                timedOut = true;
+                connectionFailed(new SocketTimeoutException("Connect timed out"));
+            }
+        }
+
+        private void initiated(SocketChannelInterface channel) {
+            this.channel = channel;
+            if (done) {
+                // Timed out before the channel was opened.
+                close();
+                return;
+            }
+            if (channel.isConnectionPending()) {
+                try {
+                    eventLoop.registerHandler(channel.selectableChannel(), this);
+                } catch (final ClosedChannelException e) {
+                    connectionFailed(e);
+                }
+            }
+        }
+
+        @Override
+        public int interestOps() {
+            return SelectionKey.OP_CONNECT;
+        }
+
+        @Override
+        public void selected() {
+            if (done) {
+                return;
+            }
+            try {
+                if (channel.finishConnect()) {
+                    connected();
+                }
+            } catch (final IOException e) {
+                connectionFailed(e);
+            }
+        }
+
+        @Override
+        public void connecting() {
+        }
+
+        @Override
+        public void connected() {
+            if (done) {
+                return;
+            }
+            done = true;
+            cancelTimeout();
+            attemptFinished();
+            recordOutcome(true, false, System.nanoTime() - startNanos);
+            try {
+                handler.connected(index, eventLoop, channel);
+            } catch (final IOException e) {
+                close();
+            }
+        }
+
+        @Override
+        public void connectionFailed(IOException e) {
+            if (done) {
+                return;
+            }
+            done = true;
+            cancelTimeout();
+            close();
+            attemptFinished();
+            recordOutcome(false, timedOut, 0);
+            handler.connectionFailed(index, e);
+        }
+
+        @Override
+        public void disconnected() {
+        }
+
+        private void cancelTimeout() {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+
+        private void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException ignored) {
+                    // Nothing more can be done with the channel.
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package net.virtualinfinity.nio;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A thread-safe front end to an {@link OutputBuffer}, which lets any number of threads append data for a connection
+ * managed by an {@link EventLoop}.
+ *
+ * <p>
+ * Appends are lock-free, and don't allocate per message: each append reserves space in a shared block with a single
+ * atomic add, and copies its data straight into it.  A new block is only allocated once the current one is full.
+ * Blocks start small and double in size up to the block size, so an idle connection holds very little memory.
+ *
+ * <p>
+ * The buffer is drained by an {@link EventLoop#addIterationHook(Runnable) iteration hook}, and the event loop is only
+ * woken, with {@link EventLoop#wakeup()}, when there is no drain already pending, so appending never allocates an
+ * event.  The drain moves everything that has been completely written into the output buffer, which in turn notifies
+ * its listeners (such as {@link SocketSelectionActions}) from the event loop thread.  Each completed range of a block
+ * is handed to the output buffer by reference.
+ *
+ * <p>
+ * Data from a single thread is sent in the order it was appended.  There is no ordering between threads.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class ConcurrentOutputBuffer implements Closeable {
+    /**
+     * The default maximum size of a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 8192;
+    private static final int MINIMUM_BLOCK_SIZE = 64;
+    private final EventLoop eventLoop;
+    private final OutputBuffer outputBuffer;
+    private final int blockSize;
+    /**
+     * The block being appended to.
+     */
+    private final AtomicReference<Block> current;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable drain = this::drain;
+    /**
+     * The oldest block that hasn't been completely moved to the output buffer.  Only accessed from the event loop.
+     */
+    private Block head;
+
+    /**
+     * Creates a concurrent output buffer, with the default block size.
+     *
+     * @param eventLoop the event loop which owns the output buffer.
+     * @param outputBuffer the output buffer, which must only be used from the event loop thread.
+     */
+    public ConcurrentOutputBuffer(EventLoop eventLoop, OutputBuffer outputBuffer) {
+        this(eventLoop, outputBuffer, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a concurrent output buffer, and starts draining it on the event loop.
+     *
+     * @param eventLoop the event loop which owns the output buffer.
+     * @param outputBuffer the output buffer, which must only be used from the event loop thread.
+     * @param blockSize the largest block to allocate for data appended by copy.  Larger appends get a block of their own.
+     */
+    public ConcurrentOutputBuffer(EventLoop eventLoop, OutputBuffer outputBuffer, int blockSize) {
+        if (blockSize < MINIMUM_BLOCK_SIZE) {
+            throw new IllegalArgumentException("blockSize must be at least " + MINIMUM_BLOCK_SIZE);
+        }
+        this.eventLoop = eventLoop;
+        this.outputBuffer = outputBuffer;
+        this.blockSize = blockSize;
+        this.head = new Block(MINIMUM_BLOCK_SIZE);
+        this.current = new AtomicReference<>(head);
+        eventLoop.addIterationHook(drain);
+    }
+
+    /**
+     * Appends a copy of the data.  May be called from any thread.
+     *
+     * @param data the data, which is fully consumed.
+     *
+     * @return the number of bytes appended.
+     */
+    public int append(ByteBuffer data) {
+        final int count = data.remaining();
+        if (count == 0) {
+            return 0;
+        }
+        Block block = current.get();
+        while (true) {
+            final int start = block.reserve(count);
+            if (start >= 0) {
+                data.get(block.bytes, start, count);
+                block.written.addAndGet(count);
+                break;
+            }
+            block = replace(block, new Block(Math.max(count, Math.min(blockSize, Math.max(MINIMUM_BLOCK_SIZE, 2 * block.bytes.length)))));
+        }
+        scheduleDrain();
+        return count;
+    }
+
+    /**
+     * Appends the data without copying it.  May be called from any thread.  The caller must not modify the data until
+     * release is called, which will be from the event loop thread.
+     *
+     * @param data the data.  Its position is advanced to its limit.
+     * @param release called once the data is no longer needed.  May be null.
+     *
+     * @return the number of bytes appended.
+     *
+     * @see OutputBuffer#appendOwned(ByteBuffer, Runnable)
+     */
+    public int appendOwned(ByteBuffer data, Runnable release) {
+        final int count = data.remaining();
+        final Block owned = new Block(data.slice(), release);
+        data.position(data.limit());
+        Block block = current.get();
+        while (!current.compareAndSet(block, owned)) {
+            block = current.get();
+        }
+        // Nothing can be reserved in the replaced block from now on, so it ends before the owned data.
+        block.seal();
+        block.next = owned;
+        scheduleDrain();
+        return count;
+    }
+
+    /**
+     * Stops draining into the output buffer.  Data appended but not yet drained is discarded.
+     */
+    @Override
+    public void close() {
+        eventLoop.removeIterationHook(drain);
+    }
+
+    /**
+     * @return the output buffer that data is moved into.
+     */
+    public OutputBuffer outputBuffer() {
+        return outputBuffer;
+    }
+
+    /**
+     * Replaces a full block with a fresh one, unless another thread already has.
+     *
+     * @return the block to append to next.
+     */
+    private Block replace(Block full, Block fresh) {
+        if (current.compareAndSet(full, fresh)) {
+            full.next = fresh;
+            return fresh;
+        }
+        return current.get();
+    }
+
+    /**
+     * Every append calls this once its data is in place, so a drain always follows the last change.
+     */
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            eventLoop.wakeup();
+        }
+    }
+
+    /**
+     * Runs on the event loop every iteration, and returns straight away unless an append has scheduled a drain.
+     */
+    private void drain() {
+        if (!drainScheduled.get()) {
+            return;
+        }
+        drainScheduled.set(false);
+        while (head.drainTo(outputBuffer)) {
+            final Block next = head.next;
+            if (next == null) {
+                // The thread that replaced it hasn't linked its successor yet, and will schedule another drain.
+                return;
+            }
+            head = next;
+        }
+    }
+
+    /**
+     * A block of copied data, or a buffer appended by reference.
+     */
+    private static final class Block {
+        private final byte[] bytes;
+        /**
+         * The number of bytes reserved, including failed reservations past the end of the block.
+         */
+        private final AtomicLong reserved = new AtomicLong();
+        /**
+         * The number of reserved bytes which have been completely written.
+         */
+        private final AtomicInteger written = new AtomicInteger();
+        /**
+         * Where the data ends, once nothing more can be reserved, or -1 until then.
+         */
+        private volatile int end = -1;
+        private volatile Block next;
+        private ByteBuffer owned;
+        private Runnable release;
+        /**
+         * The number of bytes moved to the output buffer.  Only accessed from the event loop.
+         */
+        private int drained;
+
+        Block(int size) {
+            this.bytes = new byte[size];
+        }
+
+        Block(ByteBuffer owned, Runnable release) {
+            this.bytes = new byte[0];
+            this.owned = owned;
+            this.release = release;
+            this.reserved.set(1);
+            this.end = 0;
+        }
+
+        /**
+         * @return the offset reserved, or -1 if the block doesn't have room.
+         */
+        int reserve(int count) {
+            final long start = reserved.getAndAdd(count);
+            if (start + count <= bytes.length) {
+                return (int) start;
+            }
+            if (start <= bytes.length) {
+                // The first reservation that doesn't fit marks the end of the data.
+                end = (int) start;
+            }
+            return -1;
+        }
+
+        void seal() {
+            reserve(bytes.length + 1);
+        }
+
+        /**
+         * Moves everything that has been completely written to the output buffer.  Only called from the event loop.
+         *
+         * @return true if the block has been completely drained, and nothing more will be added to it.
+         */
+        boolean drainTo(OutputBuffer outputBuffer) {
+            if (owned != null) {
+                outputBuffer.appendOwned(owned, release);
+                owned = null;
+                release = null;
+            }
+            final int sealedAt = end;
+            final int complete;
+            if (sealedAt >= 0) {
+                complete = written.get() == sealedAt ? sealedAt : drained;
+            } else {
+                // Read written first: if it then equals reserved, every reservation made so far has been written.
+                final int writtenSoFar = written.get();
+                complete = writtenSoFar == reserved.get() ? writtenSoFar : drained;
+            }
+            if (complete > drained) {
+                outputBuffer.appendOwned(ByteBuffer.wrap(bytes, drained, complete - drained), null);
+                drained = complete;
+            }
+            return sealedAt >= 0 && drained == sealedAt;
+        }
+    }
+}
@@ -16,6 +16,9 @@ public final class ConnectionInitiator {
     private final AsynchronousAddressResolver addressResolver;
     private final ChannelProvider<SocketChannelInterface> socketChannelProvider;
     private final ChannelProvider<ServerSocketChannelInterface> serverSocketChannelProvider;
+    private final ChannelProvider<DatagramChannelInterface> datagramChannelProvider;
+    private final ChannelProvider<SocketChannelInterface> unixSocketChannelProvider;
+    private final ChannelProvider<ServerSocketChannelInterface> unixServerSocketChannelProvider;
 
     public ConnectionInitiator() {
         this(new AsynchronousAddressResolver());
@@ -25,9 +28,30 @@ public final class ConnectionInitiator {
     }
 
     public ConnectionInitiator(AsynchronousAddressResolver asynchronousAddressResolver, ChannelProvider<SocketChannelInterface> socketChannelProvider, ChannelProvider<ServerSocketChannelInterface> serverSocketChannelProvider) {
+        this(asynchronousAddressResolver, socketChannelProvider, serverSocketChannelProvider, DatagramChannelWrapper.PROVIDER);
+    }
+
+    public ConnectionInitiator(AsynchronousAddressResolver asynchronousAddressResolver, ChannelProvider<SocketChannelInterface> socketChannelProvider, ChannelProvider<ServerSocketChannelInterface> serverSocketChannelProvider, ChannelProvider<DatagramChannelInterface> datagramChannelProvider) {
+        this(asynchronousAddressResolver, socketChannelProvider, serverSocketChannelProvider, datagramChannelProvider, SocketChannelWrapper.UNIX_PROVIDER, ServerSocketChannelWrapper.UNIX_PROVIDER);
+    }
+
+    /**
+     * @param asynchronousAddressResolver The resolver for host names.
+     * @param socketChannelProvider Provides channels for connecting to {@link InetSocketAddress}es.
+     * @param serverSocketChannelProvider Provides channels for binding to {@link InetSocketAddress}es.
+     * @param datagramChannelProvider Provides datagram channels.
+     * @param unixSocketChannelProvider Provides channels for connecting to Unix domain socket addresses.
+     * @param unixServerSocketChannelProvider Provides channels for binding to Unix domain socket addresses.
+     *
+     * @see UnixDomainSockets
+     */
+    public ConnectionInitiator(AsynchronousAddressResolver asynchronousAddressResolver, ChannelProvider<SocketChannelInterface> socketChannelProvider, ChannelProvider<ServerSocketChannelInterface> serverSocketChannelProvider, ChannelProvider<DatagramChannelInterface> datagramChannelProvider, ChannelProvider<SocketChannelInterface> unixSocketChannelProvider, ChannelProvider<ServerSocketChannelInterface> unixServerSocketChannelProvider) {
         this.addressResolver = asynchronousAddressResolver;
         this.socketChannelProvider = socketChannelProvider;
         this.serverSocketChannelProvider = serverSocketChannelProvider;
+        this.datagramChannelProvider = datagramChannelProvider;
+        this.unixSocketChannelProvider = unixSocketChannelProvider;
+        this.unixServerSocketChannelProvider = unixServerSocketChannelProvider;
     }
 
     /**
@@ -62,18 +86,64 @@ public final class ConnectionInitiator {
      * @param connectionInitiated The object to be notified after the connection has been initiated.
      */
     public void connect(EventLoop eventLoop, String hostname, int port, ConnectionListener connectionListener, Consumer<SocketChannelInterface> connectionInitiated) {
-        addressResolver.lookupInetSocketAddress(eventLoop, hostname, port, address -> {
-            try {
-                checkAddress(address);
-                final SocketChannelInterface channel = socketChannelProvider.open();
-                channel.configureBlocking(false);
-                channel.connect(address);
-                connectionListener.connecting();
-                connectionInitiated.accept(channel);
-            } catch (IOException e) {
-                connectionListener.connectionFailed(e);
+        addressResolver.lookupInetSocketAddress(eventLoop, hostname, port, address -> doConnect(address, connectionListener, connectionInitiated));
+    }
+
+    /**
+     * Non-Blocking open socket and connect to the given address, which may be an {@link InetSocketAddress} or the
+     * address of a Unix domain socket (see {@link UnixDomainSockets#address(java.nio.file.Path)}).  Once the connection
+     * has been initiated, it will register a {@link SocketSelectionActions} instance configured with the newly opened
+     * channel.
+     *
+     * @param eventLoop The event loop that will manage the connection.
+     * @param address The address to connect to. An unresolved InetSocketAddress will be resolved first.
+     * @param connectionListener The connection listener to be notified about connections.
+     * @param receiver The object that will receive data read from the socket
+     * @param outputBuffer The output buffer that will be sent over the socket.
+     * @param sendAllBeforeReading Whether or not the outputBuffer should be fully flushed before new input is processed.
+     * @param inputBufferSize The input buffer size.
+     */
+    public void connect(EventLoop eventLoop, SocketAddress address, ConnectionListener connectionListener, ByteBufferConsumer receiver, OutputBuffer outputBuffer, boolean sendAllBeforeReading, int inputBufferSize) {
+        connect(eventLoop, address, connectionListener, socketChannel -> connectToSocketSelectionActions(eventLoop, socketChannel, connectionListener, receiver, outputBuffer, sendAllBeforeReading, inputBufferSize));
+    }
+
+    /**
+     * Non-Blocking open socket and connect to the given address, which may be an {@link InetSocketAddress} or the
+     * address of a Unix domain socket (see {@link UnixDomainSockets#address(java.nio.file.Path)}).  Once the
+     * connection has been initiated, send the socket to the connectionInitiated object from the event loop.
+     *
+     * @param eventLoop The event loop that will manage the connection.
+     * @param address The address to connect to. An unresolved InetSocketAddress will be resolved first.
+     * @param connectionListener The connection listener to be notified about connections.
+     * @param connectionInitiated The object to be notified after the connection has been initiated.
+     *
+     * @see #connect(EventLoop, String, int, ConnectionListener, Consumer)
+     */
+    public void connect(EventLoop eventLoop, SocketAddress address, ConnectionListener connectionListener, Consumer<SocketChannelInterface> connectionInitiated) {
+        if (isUnresolved(address)) {
+            final InetSocketAddress unresolved = (InetSocketAddress) address;
+            connect(eventLoop, unresolved.getHostString(), unresolved.getPort(), connectionListener, connectionInitiated);
+        } else {
+            eventLoop.invokeLater(() -> doConnect(address, connectionListener, connectionInitiated));
+        }
+    }
+
+    private void doConnect(SocketAddress address, ConnectionListener connectionListener, Consumer<SocketChannelInterface> connectionInitiated) {
+        try {
+            checkAddress(address);
+            final SocketChannelInterface channel = socketChannelProvider(address).open();
+            channel.configureBlocking(false);
+            final boolean connected = channel.connect(address);
+            connectionListener.connecting();
+            connectionInitiated.accept(channel);
+            if (connected) {
+                // Local connections (eg. Unix domain sockets) may complete immediately, in which case there is no
+                // pending connection to finish.
+                connectionListener.connected();
             }
-        });
+        } catch (IOException e) {
+            connectionListener.connectionFailed(e);
+        }
     }
 
     private void connectToSocketSelectionActions(EventLoop eventLoop, SocketChannelInterface socketChannel, ConnectionListener connectionListener, ByteBufferConsumer receiver, OutputBuffer outputBuffer, boolean sendAllBeforeReading, int inputBufferSize) {
@@ -101,9 +171,30 @@ public final class ConnectionInitiator {
         addressResolver.lookupInetSocketAddress(eventLoop, hostname, port, address -> doBind(eventLoop, backlog, incomingConnection, exceptionHandler, address));
     }
 
-    private void doBind(EventLoop eventLoop, int backlog, Consumer<SocketChannelInterface> incomingConnection, ExceptionHandler<IOException> exceptionHandler, InetSocketAddress address) {
+    /**
+     * Begins listening for incoming connections, binding to the given address, which may be an {@link InetSocketAddress}
+     * or the address of a Unix domain socket (see {@link UnixDomainSockets#address(java.nio.file.Path)}).
+     *
+     * @param eventLoop The event loop that will manage the connections.
+     * @param address The address to bind to. An unresolved InetSocketAddress will be resolved first.
+     * @param backlog The backlog to pass to {@link ServerSocketChannel#bind(SocketAddress, int)}
+     * @param incomingConnection the handler of incoming connections.
+     * @param exceptionHandler The handler of exceptions.
+     */
+    public void bind(EventLoop eventLoop, SocketAddress address, int backlog, Consumer<SocketChannelInterface> incomingConnection, ExceptionHandler<IOException> exceptionHandler) {
+        if (isUnresolved(address)) {
+            final InetSocketAddress unresolved = (InetSocketAddress) address;
+            bind(eventLoop, unresolved.getHostString(), unresolved.getPort(), backlog, incomingConnection, exceptionHandler);
+        } else {
+            eventLoop.invokeLater(() -> doBind(eventLoop, backlog, incomingConnection, exceptionHandler, address));
+        }
+    }
+
+    private void doBind(EventLoop eventLoop, int backlog, Consumer<SocketChannelInterface> incomingConnection, ExceptionHandler<IOException> exceptionHandler, SocketAddress address) {
         try {
-            final ServerSocketChannelInterface channel = serverSocketChannelProvider.open();
+            checkAddress(address);
+            final ServerSocketChannelInterface channel = serverSocketChannelProvider(address).open();
+            channel.configureBlocking(false);
             channel.bind(address, backlog);
             eventLoop.registerHandler(channel.selectableChannel(), SelectionKey.OP_ACCEPT, () -> {
                 final SocketChannelInterface accept = channel.accept();
@@ -114,17 +205,62 @@ public final class ConnectionInitiator {
             });
 
         } catch (final IOException e) {
+            handleException(exceptionHandler, e);
+        }
+    }
+
+    /**
+     * Opens a datagram channel bound to the given host/port, and registers a {@link DatagramSelectionActions} for it.
+     *
+     * @param eventLoop The event loop that will manage the channel.
+     * @param hostname The address to bind to. May be null, which means any local.
+     * @param port The port to bind on, or 0 for an ephemeral port.
+     * @param receiver The object that will receive datagrams.
+     * @param pool The pool of buffers for received and queued datagrams.  The buffer size limits the datagram size.
+     * @param maximumReceivesPerWakeup The maximum number of datagrams to receive each time the channel is selected.
+     * @param maximumQueued The maximum number of datagrams to queue for sending.
+     * @param bound The object to be notified once the channel is bound and registered.
+     * @param exceptionHandler The handler of exceptions.
+     */
+    public void bindDatagram(EventLoop eventLoop, String hostname, int port, DatagramConsumer receiver, BufferPool pool, int maximumReceivesPerWakeup, int maximumQueued, Consumer<DatagramSelectionActions> bound, ExceptionHandler<IOException> exceptionHandler) {
+        addressResolver.lookupInetSocketAddress(eventLoop, hostname, port, address -> {
             try {
-                exceptionHandler.handleException(null, e);
-            } catch (final IOException e1) {
-                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e1);
+                checkAddress(address);
+                final DatagramChannelInterface channel = datagramChannelProvider.open();
+                channel.configureBlocking(false);
+                channel.bind(address);
+                final DatagramSelectionActions actions = new DatagramSelectionActions(channel, receiver, pool, maximumReceivesPerWakeup, maximumQueued);
+                actions.register(eventLoop);
+                bound.accept(actions);
+            } catch (final IOException e) {
+                handleException(exceptionHandler, e);
             }
+        });
+    }
+
+    private static void handleException(ExceptionHandler<IOException> exceptionHandler, IOException e) {
+        try {
+            exceptionHandler.handleException(null, e);
+        } catch (final IOException e1) {
+            Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e1);
         }
     }
 
-    private static void checkAddress(InetSocketAddress address) throws UnknownHostException {
-        if (address.isUnresolved()) {
-            throw new UnknownHostException(address.getHostString());
+    private ChannelProvider<SocketChannelInterface> socketChannelProvider(SocketAddress address) {
+        return UnixDomainSockets.isUnixDomainAddress(address) ? unixSocketChannelProvider : socketChannelProvider;
+    }
+
+    private ChannelProvider<ServerSocketChannelInterface> serverSocketChannelProvider(SocketAddress address) {
+        return UnixDomainSockets.isUnixDomainAddress(address) ? unixServerSocketChannelProvider : serverSocketChannelProvider;
+    }
+
+    private static boolean isUnresolved(SocketAddress address) {
+        return address instanceof InetSocketAddress && ((InetSocketAddress) address).isUnresolved();
+    }
+
+    private static void checkAddress(SocketAddress address) throws UnknownHostException {
+        if (isUnresolved(address)) {
+            throw new UnknownHostException(((InetSocketAddress) address).getHostString());
         }
     }
 
@@ -0,0 +1,27 @@
+package net.virtualinfinity.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectableChannel;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public interface DatagramChannelInterface extends Closeable {
+    SelectableChannel selectableChannel();
+    boolean isOpen();
+    void configureBlocking(boolean blocking) throws IOException;
+    void bind(SocketAddress local) throws IOException;
+    SocketAddress getLocalAddress() throws IOException;
+    <T> void setOption(SocketOption<T> name, T value) throws IOException;
+    SocketAddress receive(ByteBuffer dst) throws IOException;
+    int send(ByteBuffer src, SocketAddress target) throws IOException;
+    MembershipKey join(InetAddress group, NetworkInterface networkInterface) throws IOException;
+    void close() throws IOException;
+}
@@ -0,0 +1,85 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class DatagramChannelWrapper implements DatagramChannelInterface {
+    public static final ChannelProvider<DatagramChannelInterface> PROVIDER = () -> new DatagramChannelWrapper(DatagramChannel.open());
+    private final DatagramChannel channel;
+
+    public DatagramChannelWrapper(DatagramChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a provider of channels for the given protocol family.  Multicast groups can only be joined by channels
+     * of the same family as the group address.
+     *
+     * @param family the protocol family.
+     *
+     * @return the provider.
+     */
+    public static ChannelProvider<DatagramChannelInterface> provider(ProtocolFamily family) {
+        return () -> new DatagramChannelWrapper(DatagramChannel.open(family));
+    }
+
+    @Override
+    public DatagramChannel selectableChannel() {
+        return channel;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void configureBlocking(boolean blocking) throws IOException {
+        channel.configureBlocking(blocking);
+    }
+
+    @Override
+    public void bind(SocketAddress local) throws IOException {
+        channel.bind(local);
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    @Override
+    public <T> void setOption(SocketOption<T> name, T value) throws IOException {
+        channel.setOption(name, value);
+    }
+
+    @Override
+    public SocketAddress receive(ByteBuffer dst) throws IOException {
+        return channel.receive(dst);
+    }
+
+    @Override
+    public int send(ByteBuffer src, SocketAddress target) throws IOException {
+        return channel.send(src, target);
+    }
+
+    @Override
+    public MembershipKey join(InetAddress group, NetworkInterface networkInterface) throws IOException {
+        return channel.join(group, networkInterface);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,23 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A consumer of received datagrams.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface DatagramConsumer {
+    /**
+     * Called for each received datagram.  The buffer is only valid for the duration of the call.
+     *
+     * @param data the contents of the datagram.
+     * @param source the address the datagram was sent from.
+     *
+     * @throws IOException if there is an error processing the datagram.
+     */
+    void accept(ByteBuffer data, SocketAddress source) throws IOException;
+}
@@ -0,0 +1,210 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Manages receiving and sending datagrams on a non-blocking {@link DatagramChannelInterface}.
+ *
+ * <p>
+ * Each time the channel is readable, up to <code>maximumReceivesPerWakeup</code> datagrams are received into a buffer
+ * acquired from the {@link BufferPool}, and passed to the receiver along with their source address.  Datagrams larger
+ * than the pool's buffer size are truncated.
+ *
+ * <p>
+ * Datagrams given to {@link #send(ByteBuffer, SocketAddress)} are copied into pooled buffers and queued, and are sent
+ * when the channel is writable.  A datagram which can't be sent is dropped and reported to the
+ * {@link DatagramSendFailureHandler}, so it doesn't hold up the datagrams queued after it.
+ *
+ * <p>
+ * <strong>Warning:</strong> This class is not thread-safe, and should only be used from the event loop thread.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class DatagramSelectionActions implements SelectionKeyActions {
+    private final DatagramChannelInterface channel;
+    private final DatagramConsumer receiver;
+    private final BufferPool pool;
+    private final int maximumReceivesPerWakeup;
+    private final int maximumQueued;
+    private final Deque<Outbound> sendQueue = new ArrayDeque<>();
+    private SelectionKeyInterface selectionKey;
+    private DatagramSendFailureHandler sendFailureHandler;
+    private long sendFailures;
+
+    /**
+     * Construct a new DatagramSelectionActions.
+     *
+     * @param channel the channel, which should already be non-blocking and bound.
+     * @param receiver The object that will receive datagrams.
+     * @param pool The pool of buffers for received and queued datagrams.
+     * @param maximumReceivesPerWakeup The maximum number of datagrams to receive each time the channel is selected.
+     * @param maximumQueued The maximum number of datagrams to queue for sending.
+     */
+    public DatagramSelectionActions(DatagramChannelInterface channel, DatagramConsumer receiver, BufferPool pool, int maximumReceivesPerWakeup, int maximumQueued) {
+        this.channel = channel;
+        this.receiver = receiver;
+        this.pool = pool;
+        this.maximumReceivesPerWakeup = maximumReceivesPerWakeup;
+        this.maximumQueued = maximumQueued;
+    }
+
+    public void register(EventLoop loop) throws ClosedChannelException {
+        loop.registerHandler(channel.selectableChannel(), this);
+    }
+
+    @Override
+    public int interestOps() {
+        return sendQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+    }
+
+    @Override
+    public void setSelectionKey(SelectionKeyInterface selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    @Override
+    public void selected() throws IOException {
+        try {
+            if (!channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            if (selectionKey.isWritable()) {
+                sendQueued();
+            }
+            if (selectionKey.isReadable()) {
+                receiveAvailable();
+            }
+        } finally {
+            updateInterests();
+        }
+    }
+
+    /**
+     * Queues a datagram to be sent.
+     *
+     * @param data the contents of the datagram, which is copied.
+     * @param target the destination address.
+     *
+     * @return true if the datagram was queued, false if the queue is full.
+     */
+    public boolean send(ByteBuffer data, SocketAddress target) {
+        if (sendQueue.size() >= maximumQueued) {
+            return false;
+        }
+        final ByteBuffer copy = data.remaining() <= pool.bufferSize() ? pool.acquire() : ByteBuffer.allocateDirect(data.remaining());
+        copy.put(data).flip();
+        sendQueue.add(new Outbound(copy, target));
+        if (sendQueue.size() == 1) {
+            updateInterests();
+        }
+        return true;
+    }
+
+    /**
+     * Sets the handler for datagrams which fail to send.  Without one, they are only counted.
+     *
+     * @param sendFailureHandler the handler, or null.
+     */
+    public void setSendFailureHandler(DatagramSendFailureHandler sendFailureHandler) {
+        this.sendFailureHandler = sendFailureHandler;
+    }
+
+    /**
+     * @return the number of datagrams which were dropped because they failed to send.
+     */
+    public long sendFailures() {
+        return sendFailures;
+    }
+
+    /**
+     * @return the number of datagrams waiting to be sent.
+     */
+    public int queued() {
+        return sendQueue.size();
+    }
+
+    /**
+     * Joins a multicast group.
+     *
+     * @param group the multicast group address.
+     * @param networkInterface the interface to join on.
+     *
+     * @return the membership key, which can be used to leave the group.
+     *
+     * @throws IOException if the group can not be joined.
+     */
+    public MembershipKey join(InetAddress group, NetworkInterface networkInterface) throws IOException {
+        return channel.join(group, networkInterface);
+    }
+
+    /**
+     * @return the channel.
+     */
+    public DatagramChannelInterface channel() {
+        return channel;
+    }
+
+    private void receiveAvailable() throws IOException {
+        final ByteBuffer buffer = pool.acquire();
+        try {
+            for (int received = 0; received < maximumReceivesPerWakeup; ++received) {
+                final SocketAddress source = channel.receive(buffer);
+                if (source == null) {
+                    return;
+                }
+                buffer.flip();
+                receiver.accept(buffer, source);
+                buffer.clear();
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    private void sendQueued() throws IOException {
+        while (!sendQueue.isEmpty()) {
+            final Outbound next = sendQueue.peek();
+            try {
+                if (channel.send(next.data, next.target) == 0 && next.data.hasRemaining()) {
+                    return;
+                }
+            } catch (final ClosedChannelException e) {
+                throw e;
+            } catch (final IOException e) {
+                // Only this datagram is at fault, so drop it rather than retrying it on every selection.
+                ++sendFailures;
+                if (sendFailureHandler != null) {
+                    sendFailureHandler.sendFailed(next.data, next.target, e);
+                }
+            }
+            sendQueue.poll();
+            pool.release(next.data);
+        }
+    }
+
+    private void updateInterests() {
+        if (selectionKey != null && selectionKey.isValid()) {
+            //noinspection MagicConstant
+            selectionKey.interestOps(interestOps());
+        }
+    }
+
+    private static final class Outbound {
+        private final ByteBuffer data;
+        private final SocketAddress target;
+
+        Outbound(ByteBuffer data, SocketAddress target) {
+            this.data = data;
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Notified when a queued datagram can't be sent, for example because it is too large, or the destination is
+ * unreachable.  The datagram is dropped, and the rest of the queue is still sent.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface DatagramSendFailureHandler {
+    /**
+     * Called from the event loop thread for each datagram that failed to send.
+     *
+     * @param data the contents of the datagram.  The buffer is only valid for the duration of the call.
+     * @param target the address the datagram was sent to.
+     * @param exception the cause.
+     */
+    void sendFailed(ByteBuffer data, SocketAddress target, IOException exception);
+}
@@ -0,0 +1,111 @@
+package net.virtualinfinity.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a byte stream into frames which are terminated by a delimiter.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class DelimiterFrameDecoder extends FrameDecoder {
+    private final byte[] delimiter;
+    private final boolean stripDelimiter;
+    private final boolean stripCarriageReturn;
+
+    /**
+     * @param frameConsumer The consumer of complete frames.
+     * @param delimiter The bytes which terminate each frame.
+     * @param maximumFrameLength The maximum length of a frame, including the delimiter.
+     * @param stripDelimiter Whether or not to remove the delimiter from frames passed to the frame consumer.
+     * @param pool The pool for cumulative buffers.
+     */
+    public DelimiterFrameDecoder(ByteBufferConsumer frameConsumer, byte[] delimiter, int maximumFrameLength, boolean stripDelimiter, BufferPool pool) {
+        this(frameConsumer, delimiter, maximumFrameLength, stripDelimiter, false, pool);
+    }
+
+    private DelimiterFrameDecoder(ByteBufferConsumer frameConsumer, byte[] delimiter, int maximumFrameLength, boolean stripDelimiter, boolean stripCarriageReturn, BufferPool pool) {
+        super(frameConsumer, maximumFrameLength, pool);
+        if (delimiter.length == 0) {
+            throw new IllegalArgumentException("delimiter must not be empty");
+        }
+        this.delimiter = delimiter.clone();
+        this.stripDelimiter = stripDelimiter;
+        this.stripCarriageReturn = stripCarriageReturn;
+    }
+
+    /**
+     * Creates a decoder for lines terminated by "\n" or "\r\n".  The line terminator is not included in the frames.
+     *
+     * @param frameConsumer The consumer of each line.
+     * @param maximumLineLength The maximum length of a line, including the line terminator.
+     * @param pool The pool for cumulative buffers.
+     *
+     * @return the decoder.
+     */
+    public static DelimiterFrameDecoder lines(ByteBufferConsumer frameConsumer, int maximumLineLength, BufferPool pool) {
+        return new DelimiterFrameDecoder(frameConsumer, new byte[] {'\n'}, maximumLineLength, true, true, pool);
+    }
+
+    @Override
+    protected int frameLength(ByteBuffer buffer) {
+        final int last = buffer.limit() - delimiter.length;
+        for (int index = buffer.position(); index <= last; ++index) {
+            if (delimiterAt(buffer, index)) {
+                return index + delimiter.length - buffer.position();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected void stripFraming(ByteBuffer frame) {
+        if (!stripDelimiter) {
+            return;
+        }
+        frame.limit(frame.limit() - delimiter.length);
+        if (stripCarriageReturn && frame.hasRemaining() && frame.get(frame.limit() - 1) == '\r') {
+            frame.limit(frame.limit() - 1);
+        }
+    }
+
+    /**
+     * Finds the first delimiter which ends in src, even if it starts in the cumulative buffer.
+     */
+    @Override
+    protected int lookahead(ByteBuffer cumulation, ByteBuffer src) {
+        for (int end = 1; end <= src.remaining(); ++end) {
+            if (delimiterEndsAt(cumulation, src, end)) {
+                return end;
+            }
+        }
+        return src.remaining();
+    }
+
+    private boolean delimiterAt(ByteBuffer buffer, int index) {
+        for (int i = 0; i < delimiter.length; ++i) {
+            if (buffer.get(index + i) != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the delimiter ends after the first srcCount bytes of src, with cumulation preceding src.
+     */
+    private boolean delimiterEndsAt(ByteBuffer cumulation, ByteBuffer src, int srcCount) {
+        if (srcCount + cumulation.remaining() < delimiter.length) {
+            return false;
+        }
+        for (int i = 0; i < delimiter.length; ++i) {
+            final int fromEnd = delimiter.length - 1 - i;
+            final byte value = fromEnd < srcCount ?
+                src.get(src.position() + srcCount - 1 - fromEnd) :
+                cumulation.get(cumulation.limit() - (fromEnd - srcCount) - 1);
+            if (value != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -2,12 +2,25 @@ package net.virtualinfinity.nio;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.*;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provides the functionality of an event loop that can listen to {@link SelectableChannel}, as well as execute events
@@ -15,17 +28,90 @@ import java.util.concurrent.TimeUnit;
  *
  * The { @link EventLoop#run() } method does the work.  This class is thread safe.
  *
+ * <p>
+ * An EventLoop is also a {@link ScheduledExecutorService}, so it can be given to libraries that expect an
+ * {@link java.util.concurrent.Executor}, such as {@link java.util.concurrent.CompletableFuture}.  Tasks executed from
+ * the event loop thread are queued locally, without locking or waking the selector.  Tasks given to
+ * {@link #execute(Runnable)} or the invoke methods may throw, in which case the exception propagates out of
+ * {@link #run()}, while tasks given to the submit and schedule methods report exceptions through their futures.
+ *
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
-public final class EventLoop implements Closeable {
-    private final Selector selector;
+public final class EventLoop extends AbstractExecutorService implements ScheduledExecutorService, Closeable {
+    /**
+     * The default number of consecutive premature, empty, selects which cause the selector to be rebuilt.
+     */
+    public static final int DEFAULT_SELECTOR_REBUILD_THRESHOLD = 512;
+    private volatile Selector selector;
+    private volatile boolean closed;
     private final ExceptionHandler<IOException> handler;
+    private final WaitStrategy waitStrategy;
+    private final WaitStrategy.Selection selection = new Selection();
     private final Queue<Event> events = new PriorityQueue<>();
+    private final Queue<Runnable> beforeSelect = new ArrayDeque<>();
+    private final List<Runnable> iterationHooks = new CopyOnWriteArrayList<>();
+    /**
+     * Set by {@link #wakeup()}, and cleared before the iteration hooks run.
+     */
+    private volatile boolean wakeupRequested;
+    /**
+     * Tasks executed from the event loop thread.  Only accessed from the event loop thread.
+     */
+    private final Queue<Runnable> localTasks = new ArrayDeque<>();
+    /**
+     * Orders events which are due at the same time.  Guarded by events.
+     */
+    private long eventSequence;
+    private volatile boolean shutdown;
+    private final CountDownLatch terminated = new CountDownLatch(1);
     private volatile boolean running;
+    private volatile Thread thread;
+    /**
+     * Incremented whenever an event is added, so that a spinning wait strategy can notice new events.
+     */
+    private volatile long eventsAdded;
+    private long eventsAddedBeforeSelect;
+    private int selectorRebuildThreshold = DEFAULT_SELECTOR_REBUILD_THRESHOLD;
+    private int prematureSelects;
+    private volatile long selectorRebuilds;
+    private volatile SelectorRebuildListener selectorRebuildListener;
+    /**
+     * When the current dispatch started, or 0 while waiting for selection.  Read by {@link StallDetector}.
+     */
+    private volatile long dispatchStartNanos;
+    /**
+     * When the current iteration's work started, after selection returned, or 0 while waiting for selection.  Read by
+     * {@link StallDetector}.
+     */
+    private volatile long iterationStartNanos;
+    /**
+     * The number of stall detectors monitoring this loop.  Dispatches are only timed while there is at least one.
+     */
+    private final AtomicInteger stallMonitors = new AtomicInteger();
+    /**
+     * Whether dispatches are timed this iteration.  Only accessed from the event loop thread.
+     */
+    private boolean timingDispatches;
 
-    private EventLoop(Selector selector, ExceptionHandler<IOException> handler) {
+    private EventLoop(Selector selector, ExceptionHandler<IOException> handler, WaitStrategy waitStrategy) {
         this.selector = selector;
         this.handler = handler == null ? (key, e) -> { throw e; } : handler;
+        this.waitStrategy = waitStrategy == null ? WaitStrategy.blocking() : waitStrategy;
+    }
+
+    /**
+     * Creates an EventLoop with the given exception handler and wait strategy.
+     *
+     * @param handler the exception handler, or null to use the default handler.
+     * @param waitStrategy how to wait for channels to be ready, or null to block in the selector.
+     *
+     * @throws IOException if there is an error opening a selector.
+     *
+     * @see #EventLoop(ExceptionHandler)
+     * @see WaitStrategy
+     */
+    public EventLoop(ExceptionHandler<IOException> handler, WaitStrategy waitStrategy) throws IOException {
+        this(Selector.open(), handler, waitStrategy);
     }
 
     /**
@@ -38,7 +124,7 @@ public final class EventLoop implements Closeable {
      * @throws IOException if there is an error opening a selector.
      */
     public EventLoop(ExceptionHandler<IOException> handler) throws IOException {
-        this(Selector.open(), handler);
+        this(Selector.open(), handler, null);
     }
 
     /**
@@ -49,7 +135,7 @@ public final class EventLoop implements Closeable {
      * @see #EventLoop(ExceptionHandler)
      */
     public EventLoop() throws IOException {
-        this(Selector.open(), null);
+        this(Selector.open(), null, null);
     }
 
     /**
@@ -62,44 +148,130 @@ public final class EventLoop implements Closeable {
                 throw new IllegalStateException("Event loop is already running, and is not thread safe");
             }
             running = true;
+            thread = Thread.currentThread();
         }
         try {
+            iterationStarting();
             while (running) {
-                running = doSelect(timeout(executePendingEvents()));
+                executePendingEvents();
+                if (shutdown && isIdle()) {
+                    selector.close();
+                    break;
+                }
+                running = doSelect();
             }
         } finally {
             synchronized (this) {
                 running = false;
+                thread = null;
+                if (shutdown) {
+                    terminated.countDown();
+                }
             }
         }
     }
 
-    private boolean doSelect(long timeout) throws IOException {
+    private boolean isIdle() {
+        synchronized (events) {
+            return events.isEmpty() && localTasks.isEmpty() && beforeSelect.isEmpty();
+        }
+    }
+
+    private boolean doSelect() throws IOException {
         if (!selector.isOpen()) {
             return false;
         }
-        select(timeout);
-        executeSelected();
+        try {
+            wakeupRequested = false;
+            executeIterationHooks();
+            executeBeforeSelect();
+            select(timeout());
+            executeSelected();
+        } catch (final ClosedSelectorException e) {
+            // Closed by another thread.
+            return false;
+        }
 
         return selector.isOpen();
     }
 
-    private long timeout(Event nextEvent) {
-        return nextEvent != null ? nextEvent.timeRemaining(TimeUnit.MILLISECONDS) : 0;
+    /**
+     * @return the time in milliseconds until the next event, 0 if there are no events, or -1 if there is work to do
+     *         now.
+     */
+    private long timeout() {
+        if (wakeupRequested || !localTasks.isEmpty()) {
+            return -1;
+        }
+        final long remaining;
+        synchronized (events) {
+            final Event nextEvent = events.peek();
+            if (nextEvent == null) {
+                return 0;
+            }
+            remaining = nextEvent.timeRemainingNanos();
+        }
+        // A timeout of 0 would block indefinitely, so never let a pending event round down to it.
+        return remaining <= 0 ? -1 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+    }
+
+    private void executeIterationHooks() {
+        for (final Runnable hook : iterationHooks) {
+            dispatchStarting();
+            hook.run();
+        }
+    }
+
+    /**
+     * Runs the actions queued by {@link #invokeBeforeSelect(Runnable)}, including any queued while they run.
+     */
+    private void executeBeforeSelect() {
+        for (Runnable action = beforeSelect.poll(); action != null; action = beforeSelect.poll()) {
+            dispatchStarting();
+            action.run();
+        }
     }
 
     /**
-     * Calls select on the selector, delegating exception management to the exception handler.
+     * Waits for selection using the wait strategy, delegating exception management to the exception handler.
      *
-     * @param timeout the timeout parameter to the {@link Selector#select(long)} call.
+     * @param timeout the timeout parameter to the {@link Selector#select(long)} call, or -1 to not wait.
      *
      * @throws IOException if there is an exception thrown by the exception handler.
      */
     private void select(long timeout) throws IOException {
         try {
-            selector.select(timeout);
+            dispatchStartNanos = 0;
+            iterationStartNanos = 0;
+            if (timeout < 0) {
+                selector.selectNow();
+                return;
+            }
+            eventsAddedBeforeSelect = eventsAdded;
+            waitStrategy.select(selection, timeout);
         } catch (final IOException e) {
             handler.handleException(null, e);
+        } finally {
+            iterationStarting();
+        }
+    }
+
+    /**
+     * Starts timing the work done between selects, if a stall detector is monitoring this loop.
+     */
+    private void iterationStarting() {
+        timingDispatches = stallMonitors.get() != 0;
+        if (timingDispatches) {
+            iterationStartNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records when a dispatch starts, if a stall detector is monitoring this loop.
+     */
+    private void dispatchStarting() {
+        if (timingDispatches) {
+            dispatchStartNanos = System.nanoTime();
         }
     }
 
@@ -112,15 +284,22 @@ public final class EventLoop implements Closeable {
     private void executeSelected() throws IOException {
         for (final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
             final SelectionKey key = iterator.next();
+            // Removed before dispatch, so that a handler which throws doesn't leave the key selected.  A key left in
+            // the selected set makes the next select return 0 immediately, which would look like a premature select.
+            iterator.remove();
             try {
                 final Object attachment = key.attachment();
+                dispatchStarting();
                 //noinspection ChainOfInstanceofChecks
                 if (attachment instanceof SelectionKeyHandler) {
                     ((SelectionKeyHandler) attachment).selected();
                 } else if (attachment instanceof Runnable) {
                     ((Runnable)attachment).run();
                 }
-                iterator.remove();
+                if (!selector.isOpen()) {
+                    // The handler closed the event loop, which also clears the selected key set.
+                    return;
+                }
             } catch (final IOException e) {
                 handler.handleException(key, e);
             }
@@ -128,31 +307,29 @@ public final class EventLoop implements Closeable {
     }
 
     /**
-     * Dispatches an due events, and returns the timeout until the next event.
-     *
-     * @return the time in milliseconds until the next event, or 0 if there are no events.
+     * Dispatches any due events, and the tasks that were executed locally before this call.
      */
-    private Event executePendingEvents() {
+    private void executePendingEvents() {
         final Collection<Runnable> toRun = new ArrayList<>();
-        final Event nextEvent = getReadyToRun(toRun);
-        toRun.forEach(Runnable::run);
-        return nextEvent;
+        getReadyToRun(toRun);
+        for (final Runnable runnable : toRun) {
+            dispatchStarting();
+            runnable.run();
+        }
+        // Tasks added while these run wait for the next iteration, so that they can't starve the selector.
+        for (int count = localTasks.size(); count > 0; --count) {
+            dispatchStarting();
+            localTasks.remove().run();
+        }
     }
 
-    private Event getReadyToRun(Collection<Runnable> toRun) {
+    private void getReadyToRun(Collection<Runnable> toRun) {
         synchronized (events) {
-            while (events.peek() != null) {
-                final Event nextEvent = events.peek();
-                final long nextEventTime = nextEvent.timeRemaining(TimeUnit.MILLISECONDS);
-                if (nextEventTime > 0) {
-                    return nextEvent;
-                }
+            while (events.peek() != null && events.peek().timeRemainingNanos() <= 0) {
                 // It's ready to run, so run it outside of the synchronized block.
                 toRun.add(events.poll());
             }
         }
-
-        return null;
     }
 
     /**
@@ -185,9 +362,350 @@ public final class EventLoop implements Closeable {
      * @param timeInFutureUnit the unit that the timeInFuture value is of.
      */
     public void invokeAfter(Runnable runnable, long timeInFuture, TimeUnit timeInFutureUnit) {
-        final Event e = new Event(System.nanoTime() + TimeUnit.NANOSECONDS.convert(timeInFuture, timeInFutureUnit), runnable);
+        enqueue(new Event(System.nanoTime() + TimeUnit.NANOSECONDS.convert(timeInFuture, timeInFutureUnit), runnable));
+    }
+
+    private void enqueue(Event e) {
         synchronized (events) {
+            e.sequence = eventSequence++;
             events.add(e);
+            ++eventsAdded;
+        }
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Executes the command on the event loop thread.  If called from the event loop thread, the command is queued
+     * locally, and runs before the loop next blocks.
+     *
+     * @param command the command.
+     *
+     * @throws RejectedExecutionException if the event loop has been shut down.
+     */
+    @Override
+    public void execute(Runnable command) {
+        Objects.requireNonNull(command, "command");
+        checkNotShutdown();
+        if (inEventLoop()) {
+            localTasks.add(command);
+        } else {
+            invokeLater(command);
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(new ScheduledTask<Void>(command, null, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return schedule(new ScheduledTask<>(callable, triggerTime(delay, unit)));
+    }
+
+    /**
+     * Runs the command periodically.  The same scheduled entry is reused for each run.
+     *
+     * @see ScheduledExecutorService#scheduleAtFixedRate(Runnable, long, long, TimeUnit)
+     */
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        return schedule(new ScheduledTask<Void>(command, null, triggerTime(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    /**
+     * Runs the command periodically.  The same scheduled entry is reused for each run.
+     *
+     * @see ScheduledExecutorService#scheduleWithFixedDelay(Runnable, long, long, TimeUnit)
+     */
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay must be positive");
+        }
+        return schedule(new ScheduledTask<Void>(command, null, triggerTime(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    private <V> ScheduledFuture<V> schedule(ScheduledTask<V> task) {
+        checkNotShutdown();
+        enqueue(task.event);
+        return task;
+    }
+
+    private static long triggerTime(long delay, TimeUnit unit) {
+        return System.nanoTime() + unit.toNanos(Math.max(0, delay));
+    }
+
+    private void checkNotShutdown() {
+        if (shutdown) {
+            throw new RejectedExecutionException("Event loop has been shut down");
+        }
+    }
+
+    /**
+     * Stops accepting new tasks from the {@link java.util.concurrent.Executor} methods, and cancels periodic tasks.
+     * Tasks that were already queued still run, after which the event loop closes its selector and terminates.
+     * If the event loop isn't running, it terminates immediately.
+     */
+    @Override
+    public void shutdown() {
+        final boolean isRunning;
+        synchronized (this) {
+            shutdown = true;
+            isRunning = running;
+        }
+        final List<ScheduledTask<?>> periodic = new ArrayList<>();
+        synchronized (events) {
+            for (final Event event : events) {
+                if (event.handler instanceof ScheduledTask && ((ScheduledTask<?>) event.handler).isPeriodic()) {
+                    periodic.add((ScheduledTask<?>) event.handler);
+                }
+            }
+        }
+        periodic.forEach(task -> task.cancel(false));
+        if (isRunning) {
+            wakeup();
+        } else {
+            closeSelectorAfterShutdown();
+        }
+    }
+
+    /**
+     * Shuts down the event loop, and closes it without running any queued tasks.
+     *
+     * @return the tasks that never ran.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        final List<Runnable> neverRun = new ArrayList<>();
+        synchronized (events) {
+            for (Event event = events.poll(); event != null; event = events.poll()) {
+                neverRun.add(event.handler);
+            }
+        }
+        if (inEventLoop()) {
+            neverRun.addAll(localTasks);
+            localTasks.clear();
+        }
+        closeSelectorAfterShutdown();
+        return neverRun;
+    }
+
+    private void closeSelectorAfterShutdown() {
+        try {
+            close();
+        } catch (final IOException e) {
+            // The selector is unusable either way.
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Sets how many consecutive times select may return early, without any selected keys, before the selector is
+     * assumed to be broken and is rebuilt.  Some JDK selector implementations are known to get into a state where
+     * they return immediately, which would otherwise spin the event loop at 100% CPU.  Returns caused by events being
+     * added, by {@link #close()}, or by the thread being interrupted are not counted.
+     *
+     * @param threshold the number of premature selects, or 0 to never rebuild.
+     */
+    public void setSelectorRebuildThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative");
+        }
+        this.selectorRebuildThreshold = threshold;
+    }
+
+    /**
+     * @param listener notified each time the selector is rebuilt.  May be null.
+     */
+    public void setSelectorRebuildListener(SelectorRebuildListener listener) {
+        this.selectorRebuildListener = listener;
+    }
+
+    /**
+     * @return the number of times the selector has been rebuilt.
+     */
+    public long getSelectorRebuildCount() {
+        return selectorRebuilds;
+    }
+
+    /**
+     * Replaces the selector with a new one, registering every valid channel with the same interest ops and
+     * attachment.  {@link SelectionKeyActions} attachments are given their new key.  Must be called from the event
+     * loop thread, or while the loop isn't running.
+     *
+     * @throws IOException if a new selector can not be opened.
+     */
+    void rebuildSelector() throws IOException {
+        final Selector oldSelector = selector;
+        final Selector newSelector = Selector.open();
+        int channels = 0;
+        for (final SelectionKey key : oldSelector.keys()) {
+            try {
+                if (!key.isValid()) {
+                    continue;
+                }
+                final Object attachment = key.attachment();
+                final int ops = key.interestOps();
+                key.cancel();
+                final SelectionKey newKey = key.channel().register(newSelector, ops, attachment);
+                if (attachment instanceof SelectionKeyActions) {
+                    ((SelectionKeyActions) attachment).setSelectionKey(new SelectionKeyWrapper(newKey, this));
+                }
+                ++channels;
+            } catch (final CancelledKeyException | ClosedChannelException e) {
+                // The channel was closed, so there is nothing to move.
+            }
+        }
+        selector = newSelector;
+        oldSelector.close();
+        if (closed) {
+            // Closed by another thread while rebuilding.
+            newSelector.close();
+        }
+        ++selectorRebuilds;
+        final SelectorRebuildListener listener = selectorRebuildListener;
+        if (listener != null) {
+            listener.selectorRebuilt(prematureSelects, channels);
+        }
+    }
+
+    /**
+     * Counts premature empty selects, and rebuilds the selector once there have been too many in a row.
+     *
+     * @param timeout the timeout passed to select.
+     * @param startNanos when select was called.
+     * @param selected the number of keys selected.
+     */
+    private void checkSelectorHealth(long timeout, long startNanos, int selected) throws IOException {
+        final boolean premature = selected == 0 && !closed && !selection.eventsPending() && !Thread.currentThread().isInterrupted() &&
+            (timeout == 0 || System.nanoTime() - startNanos < TimeUnit.MILLISECONDS.toNanos(timeout));
+        if (!premature) {
+            prematureSelects = 0;
+            return;
+        }
+        ++prematureSelects;
+        if (selectorRebuildThreshold != 0 && prematureSelects >= selectorRebuildThreshold) {
+            try {
+                rebuildSelector();
+            } finally {
+                prematureSelects = 0;
+            }
+        }
+    }
+
+    /**
+     * @return when the handler or event currently being dispatched started, in {@link System#nanoTime()} terms, or 0
+     *         if the loop is waiting for selection.
+     */
+    long dispatchStartNanos() {
+        return running ? dispatchStartNanos : 0;
+    }
+
+    /**
+     * @return when the work since the last select started, in {@link System#nanoTime()} terms, or 0 if the loop is
+     *         waiting for selection.
+     */
+    long iterationStartNanos() {
+        return running ? iterationStartNanos : 0;
+    }
+
+    /**
+     * Called by a {@link StallDetector} when it starts monitoring this loop, so that dispatches are timed from the
+     * next iteration on.
+     */
+    void stallMonitoringStarted() {
+        stallMonitors.incrementAndGet();
+    }
+
+    /**
+     * Called by a {@link StallDetector} when it stops monitoring this loop.
+     */
+    void stallMonitoringStopped() {
+        stallMonitors.decrementAndGet();
+    }
+
+    /**
+     * @return the thread running this event loop, or null if it isn't running.
+     */
+    Thread thread() {
+        return thread;
+    }
+
+    /**
+     * @return true if the calling thread is the thread running this event loop.
+     */
+    public boolean inEventLoop() {
+        return thread == Thread.currentThread();
+    }
+
+    /**
+     * Enqueue an action to run once at the end of the current loop iteration, after all selected keys and due events
+     * have been handled, and before the selector is next blocked on.  This lets a handler batch work that several
+     * selections in the same iteration contribute to, such as the corked writes of
+     * {@link SocketSelectionActions#setCorking(boolean, long)}.
+     * <p>
+     * <strong>Warning:</strong> Unlike the other invoke methods, this must only be called from the event loop thread.
+     *
+     * @param action the action.
+     *
+     * @throws IllegalStateException if called from another thread.
+     */
+    public void invokeBeforeSelect(Runnable action) {
+        if (!inEventLoop()) {
+            throw new IllegalStateException("invokeBeforeSelect must be called from the event loop thread");
+        }
+        beforeSelect.add(action);
+    }
+
+    /**
+     * Adds a hook which is run on every loop iteration, before the selector is waited on.  Hooks are meant for cheap
+     * polling of work handed over from other threads, such as draining a {@link LoopChannel}.  A hook which finds work
+     * from another thread should be paired with a call to {@link #wakeup()} from that thread.
+     *
+     * @param hook the hook.
+     */
+    public void addIterationHook(Runnable hook) {
+        iterationHooks.add(hook);
+    }
+
+    /**
+     * Removes a hook added by {@link #addIterationHook(Runnable)}.
+     *
+     * @param hook the hook.
+     */
+    public void removeIterationHook(Runnable hook) {
+        iterationHooks.remove(hook);
+    }
+
+    /**
+     * Causes the current or next wait for selection to return immediately, so that the iteration hooks run again.
+     * May be called from any thread.  Unlike {@link #invokeLater(Runnable)}, this doesn't queue anything, so a thread
+     * handing work to an iteration hook can wake the loop without allocating.
+     */
+    public void wakeup() {
+        wakeupRequested = true;
+        if (!inEventLoop()) {
             selector.wakeup();
         }
     }
@@ -233,7 +751,7 @@ public final class EventLoop implements Closeable {
      * @throws ClosedChannelException if the channel is closed.
      */
     private SelectionKeyInterface doRegister(SelectableChannel channel, int ops, SelectionKeyHandler handler) throws ClosedChannelException {
-        return new SelectionKeyWrapper(channel.register(selector, ops, handler));
+        return new SelectionKeyWrapper(channel.register(selector, ops, handler), this);
     }
 
     /**
@@ -241,14 +759,45 @@ public final class EventLoop implements Closeable {
      */
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            shutdown = true;
+            if (!running) {
+                terminated.countDown();
+            }
+        }
         selector.close();
     }
 
     /**
-     * Priority queue event item.
+     * The selector operations given to the wait strategy.
+     */
+    private class Selection implements WaitStrategy.Selection {
+        @Override
+        public int selectNow() throws IOException {
+            return selector.selectNow();
+        }
+
+        @Override
+        public int select(long timeout) throws IOException {
+            final long start = System.nanoTime();
+            final int selected = selector.select(timeout);
+            checkSelectorHealth(timeout, start, selected);
+            return selected;
+        }
+
+        @Override
+        public boolean eventsPending() {
+            return wakeupRequested || eventsAdded != eventsAddedBeforeSelect;
+        }
+    }
+
+    /**
+     * Priority queue event item.  Events due at the same time run in the order they were added.
      */
     private static class Event implements Comparable<Event>, Runnable {
-        private final long desiredTimeNanos;
+        private long desiredTimeNanos;
+        private long sequence;
         private final Runnable handler;
 
         public Event(long desiredTimeNanos, Runnable handler) {
@@ -258,7 +807,11 @@ public final class EventLoop implements Closeable {
 
         @Override
         public int compareTo(Event event) {
-            return Long.compare(timeRemainingNanos(), event.timeRemainingNanos());
+            final long difference = desiredTimeNanos - event.desiredTimeNanos;
+            if (difference != 0) {
+                return difference < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, event.sequence);
         }
 
         @Override
@@ -274,4 +827,69 @@ public final class EventLoop implements Closeable {
             return desiredTimeNanos - System.nanoTime();
         }
     }
+
+    /**
+     * A task scheduled through the {@link ScheduledExecutorService} methods.  Periodic tasks re-enqueue their event
+     * after each run, rather than allocating a new one.
+     */
+    private final class ScheduledTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+        private final Event event;
+        /**
+         * 0 for one-shot tasks, positive for a fixed rate, negative for a fixed delay.
+         */
+        private final long periodNanos;
+
+        ScheduledTask(Runnable command, V result, long triggerTime, long periodNanos) {
+            super(command, result);
+            this.event = new Event(triggerTime, this);
+            this.periodNanos = periodNanos;
+        }
+
+        ScheduledTask(Callable<V> callable, long triggerTime) {
+            super(callable);
+            this.event = new Event(triggerTime, this);
+            this.periodNanos = 0;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return periodNanos != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return event.timeRemaining(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof ScheduledTask) {
+                return event.compareTo(((ScheduledTask<?>) other).event);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+            } else if (shutdown) {
+                cancel(false);
+            } else if (runAndReset()) {
+                event.desiredTimeNanos = periodNanos > 0 ? event.desiredTimeNanos + periodNanos : System.nanoTime() - periodNanos;
+                enqueue(event);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                synchronized (events) {
+                    events.remove(event);
+                }
+            }
+            return cancelled;
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package net.virtualinfinity.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a byte stream into frames of a fixed length.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class FixedLengthFrameDecoder extends FrameDecoder {
+    private final int frameLength;
+
+    /**
+     * @param frameConsumer The consumer of complete frames.
+     * @param frameLength The length of every frame.
+     * @param pool The pool for cumulative buffers.
+     */
+    public FixedLengthFrameDecoder(ByteBufferConsumer frameConsumer, int frameLength, BufferPool pool) {
+        super(frameConsumer, frameLength, pool);
+        this.frameLength = frameLength;
+    }
+
+    @Override
+    protected int frameLength(ByteBuffer buffer) {
+        return frameLength;
+    }
+}
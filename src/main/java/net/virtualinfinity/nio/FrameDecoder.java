@@ -0,0 +1,199 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A receiver that splits a byte stream into frames, and passes each complete frame on to another consumer.
+ *
+ * <p>
+ * When a frame is entirely contained in the buffer given to {@link #accept(ByteBuffer)}, it is passed on as a read-only
+ * slice of that buffer, without copying.  Only frames which are split across reads are copied, into a cumulative
+ * buffer acquired from a {@link BufferPool}, which is released again as soon as it has been emptied.
+ *
+ * <p>
+ * Frames given to the frame consumer are only valid for the duration of the call.  A frame consumer that needs to
+ * retain the data must copy it.
+ *
+ * <p>
+ * Unlike most {@link ByteBufferConsumer}s, this consumer always consumes the entire src buffer.
+ *
+ * <p>
+ * <strong>Warning:</strong> This class is not thread-safe.
+ *
+ * @see FixedLengthFrameDecoder
+ * @see LengthFieldFrameDecoder
+ * @see DelimiterFrameDecoder
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public abstract class FrameDecoder implements ByteBufferConsumer {
+    private final ByteBufferConsumer frameConsumer;
+    private final int maximumFrameLength;
+    private final BufferPool pool;
+    /**
+     * Bytes of an incomplete frame, between position and limit. Null when there are none.
+     */
+    private ByteBuffer cumulation;
+
+    /**
+     * @param frameConsumer The consumer of complete frames.
+     * @param maximumFrameLength The maximum length of a frame, including any framing bytes.
+     * @param pool The pool for cumulative buffers.
+     */
+    protected FrameDecoder(ByteBufferConsumer frameConsumer, int maximumFrameLength, BufferPool pool) {
+        if (maximumFrameLength < 1) {
+            throw new IllegalArgumentException("maximumFrameLength must be positive");
+        }
+        this.frameConsumer = frameConsumer;
+        this.maximumFrameLength = maximumFrameLength;
+        this.pool = pool;
+    }
+
+    /**
+     * Determines the length of the frame that starts at buffer.position().  This method must not change the position
+     * or limit of the buffer.
+     *
+     * @param buffer the buffer.
+     *
+     * @return the total length of the frame, including framing bytes, or -1 if the length can not be determined from
+     *         the bytes available.  The frame length may be larger than <code>buffer.remaining()</code>.
+     *
+     * @throws IOException if the frame is malformed.
+     */
+    protected abstract int frameLength(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Removes framing bytes from a frame before it is passed to the frame consumer, by adjusting its position and limit.
+     * The default implementation leaves the frame as is.
+     *
+     * @param frame the frame, which includes all of its framing bytes between position and limit.
+     */
+    protected void stripFraming(ByteBuffer frame) {
+    }
+
+    /**
+     * Determines how many bytes of src to copy into the cumulative buffer, when the length of the partial frame in it
+     * can not be determined.  The default implementation copies everything.
+     *
+     * @param cumulation The incomplete frame.
+     * @param src The newly received bytes, which has at least one byte remaining.
+     *
+     * @return the number of bytes to copy, between 1 and <code>src.remaining()</code>.
+     */
+    protected int lookahead(ByteBuffer cumulation, ByteBuffer src) {
+        return src.remaining();
+    }
+
+    /**
+     * @return the maximum frame length, including framing bytes.
+     */
+    public final int maximumFrameLength() {
+        return maximumFrameLength;
+    }
+
+    @Override
+    public final void accept(ByteBuffer src) throws IOException {
+        try {
+            if (cumulation == null || completeCumulatedFrames(src)) {
+                decodeContiguousFrames(src);
+            }
+        } catch (final IOException e) {
+            src.position(src.limit());
+            releaseCumulation();
+            throw e;
+        }
+    }
+
+    /**
+     * Completes frames from the cumulative buffer, consuming src as needed.
+     *
+     * @return true if the cumulative buffer has been emptied, false if src was exhausted first.
+     */
+    private boolean completeCumulatedFrames(ByteBuffer src) throws IOException {
+        while (cumulation != null) {
+            final int length = checkedFrameLength(cumulation);
+            final int needed = length >= 0 ? length - cumulation.remaining() : 0;
+            if (length < 0 || needed > 0) {
+                if (!src.hasRemaining()) {
+                    return false;
+                }
+                cumulate(src, length < 0 ?
+                    Math.min(lookahead(cumulation, src), maximumFrameLength - cumulation.remaining()) :
+                    Math.min(needed, src.remaining()));
+                continue;
+            }
+            deliver(cumulation, length);
+            if (!cumulation.hasRemaining()) {
+                releaseCumulation();
+            }
+        }
+        return true;
+    }
+
+    private void decodeContiguousFrames(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            final int length = checkedFrameLength(src);
+            if (length < 0 || length > src.remaining()) {
+                cumulate(src, src.remaining());
+                return;
+            }
+            deliver(src, length);
+        }
+    }
+
+    private int checkedFrameLength(ByteBuffer buffer) throws IOException {
+        final int length = frameLength(buffer);
+        if (length > maximumFrameLength || (length < 0 && buffer.remaining() >= maximumFrameLength)) {
+            throw new IOException("Frame length exceeds maximum of " + maximumFrameLength);
+        }
+        return length;
+    }
+
+    private void deliver(ByteBuffer buffer, int length) throws IOException {
+        final int start = buffer.position();
+        final ByteBuffer frame = buffer.asReadOnlyBuffer();
+        frame.limit(start + length);
+        buffer.position(start + length);
+        stripFraming(frame);
+        frameConsumer.accept(frame.slice());
+    }
+
+    /**
+     * Copies count bytes of src to the end of the cumulative buffer, growing it as needed.
+     */
+    private void cumulate(ByteBuffer src, int count) {
+        final int size = cumulation == null ? 0 : cumulation.remaining();
+        if (cumulation == null || cumulation.capacity() - cumulation.limit() < count) {
+            final ByteBuffer grown = allocate(size + count);
+            if (cumulation != null) {
+                grown.put(cumulation);
+                releaseCumulation();
+            }
+            grown.flip();
+            cumulation = grown;
+        }
+        final int start = cumulation.position();
+        final int end = cumulation.limit();
+        cumulation.limit(end + count).position(end);
+        final ByteBuffer slice = src.slice();
+        slice.limit(count);
+        cumulation.put(slice);
+        src.position(src.position() + count);
+        cumulation.position(start);
+    }
+
+    private ByteBuffer allocate(int size) {
+        if (size <= pool.bufferSize()) {
+            return pool.acquire();
+        }
+        return ByteBuffer.allocateDirect(Math.min(Math.max(size, pool.bufferSize() * 2), maximumFrameLength));
+    }
+
+    private void releaseCumulation() {
+        if (cumulation != null) {
+            pool.release(cumulation);
+            cumulation = null;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A consumer of a sequence of byte buffers.  The consume method is intended to mimic the semantics of
+ * {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[], int, int)}.
+ *
+ * @see OutputBuffer#sendGathering(GatheringByteBufferConsumer)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface GatheringByteBufferConsumer {
+    /**
+     * This method should implement the same contract as {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[], int, int)},
+     * though it doesn't need to return a value.
+     *
+     * @param srcs The buffers from which bytes are to be retrieved
+     * @param offset The offset within the buffer array of the first buffer
+     * @param length The number of buffers to be accessed
+     *
+     * @throws IOException If some I/O error occurs
+     */
+    void accept(ByteBuffer[] srcs, int offset, int length) throws IOException;
+}
@@ -0,0 +1,288 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed precision latency histogram in the style of HdrHistogram.
+ *
+ * <p>
+ * Values are nanoseconds.  Values are grouped into log-linear buckets, so that every recorded value is
+ * tracked to within the configured number of significant decimal digits, regardless of its magnitude.
+ * Memory use is fixed at construction time, and recording a value never allocates.
+ *
+ * <p>
+ * Values larger than the highest trackable value are recorded as the highest trackable value.
+ *
+ * <p>
+ * <strong>Warning:</strong> This class is not thread-safe.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class LatencyHistogram {
+    private final long highestTrackableValue;
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+    private final long[] counts;
+    private long totalCount;
+    private long minValue = Long.MAX_VALUE;
+    private long maxValue;
+    private double sum;
+
+    /**
+     * Constructs a histogram that tracks values up to one hour, with 3 significant digits.
+     */
+    public LatencyHistogram() {
+        this(TimeUnit.HOURS.toNanos(1), 3);
+    }
+
+    /**
+     * Constructs a histogram.
+     *
+     * @param highestTrackableValue the highest value, in nanoseconds, that can be recorded.
+     * @param significantDigits the number of significant decimal digits to maintain, between 1 and 5.
+     */
+    public LatencyHistogram(long highestTrackableValue, int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("significantDigits must be between 1 and 5");
+        }
+        if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("highestTrackableValue must be at least 2");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        final long largestSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        this.subBucketBits = 64 - Long.numberOfLeadingZeros(largestSingleUnitResolution - 1);
+        this.subBucketCount = 1 << subBucketBits;
+        this.subBucketHalfCount = subBucketCount >> 1;
+        this.counts = new long[indexOf(highestTrackableValue) + 1];
+    }
+
+    /**
+     * Records a single value.
+     *
+     * @param value the value, in nanoseconds.
+     *
+     * @throws IllegalArgumentException if the value is negative.
+     */
+    public void recordValue(long value) {
+        recordValue(value, 1);
+    }
+
+    /**
+     * Records a value, with an expected interval between samples.  If the value is larger than the expected interval,
+     * additional values are recorded with linearly decreasing magnitude, to correct for samples that were
+     * not taken while the system being measured was stalled ("coordinated omission").
+     *
+     * <p>
+     * This is only needed when measuring a closed-loop system.  Open-loop measurements that compute latency from the
+     * intended start time already account for stalls.
+     *
+     * @param value the value, in nanoseconds.
+     * @param expectedInterval the expected interval between samples, in nanoseconds.  0 disables correction.
+     */
+    public void recordValueWithExpectedInterval(long value, long expectedInterval) {
+        recordValue(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+            recordValue(missing);
+        }
+    }
+
+    private void recordValue(long value, long count) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        final long clamped = Math.min(value, highestTrackableValue);
+        counts[indexOf(clamped)] += count;
+        totalCount += count;
+        sum += (double) clamped * count;
+        minValue = Math.min(minValue, clamped);
+        maxValue = Math.max(maxValue, clamped);
+    }
+
+    /**
+     * Adds all of the values recorded in another histogram to this one.
+     *
+     * @param other the other histogram, which must have been constructed with the same parameters.
+     */
+    public void add(LatencyHistogram other) {
+        if (other.counts.length != counts.length || other.subBucketBits != subBucketBits) {
+            throw new IllegalArgumentException("Histograms have incompatible parameters");
+        }
+        if (other.totalCount == 0) {
+            return;
+        }
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        minValue = Math.min(minValue, other.minValue);
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the smallest recorded value, or 0 if there are no values.
+     */
+    public long getMinValue() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    /**
+     * @return the largest recorded value, or 0 if there are no values.
+     */
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @return the mean of the recorded values, or 0 if there are no values.
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * Finds the value at the given percentile.  The result is the highest value that is equivalent (within the
+     * configured precision) to the recorded value at that percentile.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     *
+     * @return the value at the percentile, or 0 if there are no values.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final double clamped = Math.min(Math.max(percentile, 0), 100);
+        final long countAtPercentile = Math.max(1, (long) Math.ceil(clamped / 100 * totalCount));
+        long cumulative = 0;
+        for (int index = 0; index < counts.length; ++index) {
+            cumulative += counts[index];
+            if (cumulative >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(index), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Writes a human readable summary of the recorded values.
+     *
+     * @param out where to write the summary.
+     * @param unit the unit to report values in.
+     *
+     * @throws IOException if out does.
+     */
+    public void writeReport(Appendable out, TimeUnit unit) throws IOException {
+        final String suffix = unitSuffix(unit);
+        out.append(String.format(Locale.ROOT, "count=%d%n", totalCount));
+        out.append(String.format(Locale.ROOT, "min=%.3f%s mean=%.3f%s max=%.3f%s%n",
+            scale(getMinValue(), unit), suffix, getMean() / unit.toNanos(1), suffix, scale(getMaxValue(), unit), suffix));
+        for (final double percentile : new double[] {50, 90, 99, 99.9, 99.99}) {
+            out.append(String.format(Locale.ROOT, "p%s=%.3f%s%n",
+                formatPercentile(percentile), scale(getValueAtPercentile(percentile), unit), suffix));
+        }
+    }
+
+    /**
+     * Writes the percentile distribution as CSV, with the columns <code>Value,Percentile,TotalCount,1/(1-Percentile)</code>.
+     * The percentile steps halve the distance to 100% on each step, with the given number of ticks per half.
+     *
+     * @param out where to write the distribution.
+     * @param unit the unit to report values in.
+     * @param ticksPerHalfDistance the number of rows for each halving of the distance to 100%.
+     *
+     * @throws IOException if out does.
+     */
+    public void writeCsv(Appendable out, TimeUnit unit, int ticksPerHalfDistance) throws IOException {
+        out.append("Value,Percentile,TotalCount,1/(1-Percentile)\n");
+        if (totalCount == 0) {
+            return;
+        }
+        double percentile = 0;
+        while (true) {
+            final long value = getValueAtPercentile(percentile);
+            final long countAtValue = countAtOrBelow(value);
+            final double fraction = percentile / 100;
+            out.append(String.format(Locale.ROOT, "%.3f,%.12f,%d,%s%n", scale(value, unit), fraction, countAtValue,
+                fraction < 1 ? String.format(Locale.ROOT, "%.2f", 1 / (1 - fraction)) : "Infinity"));
+            if (percentile >= 100 || countAtValue >= totalCount) {
+                if (percentile < 100) {
+                    out.append(String.format(Locale.ROOT, "%.3f,%.12f,%d,Infinity%n", scale(maxValue, unit), 1.0, totalCount));
+                }
+                return;
+            }
+            final double halfDistance = Math.pow(2, Math.floor(Math.log(100 / (100 - percentile)) / Math.log(2)) + 1);
+            percentile += 100 / (halfDistance * ticksPerHalfDistance);
+        }
+    }
+
+    private long countAtOrBelow(long value) {
+        final int lastIndex = indexOf(Math.min(value, highestTrackableValue));
+        long cumulative = 0;
+        for (int index = 0; index <= lastIndex; ++index) {
+            cumulative += counts[index];
+        }
+        return cumulative;
+    }
+
+    private int indexOf(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - (subBucketBits - 1);
+        final int subBucket = (int) (value >>> shift);
+        return subBucketCount + (shift - 1) * subBucketHalfCount + (subBucket - subBucketHalfCount);
+    }
+
+    private long highestEquivalentValue(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        final int shift = (index - subBucketCount) / subBucketHalfCount + 1;
+        final long subBucket = (index - subBucketCount) % subBucketHalfCount + subBucketHalfCount;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static double scale(long value, TimeUnit unit) {
+        return (double) value / unit.toNanos(1);
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    private static String unitSuffix(TimeUnit unit) {
+        switch (unit) {
+            case NANOSECONDS: return "ns";
+            case MICROSECONDS: return "us";
+            case MILLISECONDS: return "ms";
+            case SECONDS: return "s";
+            default: return " " + unit.name().toLowerCase(Locale.ROOT);
+        }
+    }
+}
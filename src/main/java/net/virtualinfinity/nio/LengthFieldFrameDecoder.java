@@ -0,0 +1,61 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a byte stream into frames which are prefixed by a big-endian, unsigned length field.  The length field
+ * holds the length of the frame body, not including the length field itself.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class LengthFieldFrameDecoder extends FrameDecoder {
+    private final int lengthFieldSize;
+    private final boolean stripLengthField;
+
+    /**
+     * @param frameConsumer The consumer of complete frames.
+     * @param lengthFieldSize The size of the length field in bytes, which must be 1, 2, 4, or 8.
+     * @param maximumFrameLength The maximum length of a frame, including the length field.
+     * @param stripLengthField Whether or not to remove the length field from frames passed to the frame consumer.
+     * @param pool The pool for cumulative buffers.
+     */
+    public LengthFieldFrameDecoder(ByteBufferConsumer frameConsumer, int lengthFieldSize, int maximumFrameLength, boolean stripLengthField, BufferPool pool) {
+        super(frameConsumer, maximumFrameLength, pool);
+        if (lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4 && lengthFieldSize != 8) {
+            throw new IllegalArgumentException("lengthFieldSize must be 1, 2, 4 or 8: " + lengthFieldSize);
+        }
+        if (maximumFrameLength < lengthFieldSize) {
+            throw new IllegalArgumentException("maximumFrameLength must be at least lengthFieldSize");
+        }
+        this.lengthFieldSize = lengthFieldSize;
+        this.stripLengthField = stripLengthField;
+    }
+
+    @Override
+    protected int frameLength(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < lengthFieldSize) {
+            return -1;
+        }
+        long bodyLength = 0;
+        for (int i = 0; i < lengthFieldSize; ++i) {
+            bodyLength = (bodyLength << 8) | (buffer.get(buffer.position() + i) & 0xFF);
+        }
+        if (bodyLength < 0 || bodyLength > maximumFrameLength() - lengthFieldSize) {
+            throw new IOException("Frame length exceeds maximum of " + maximumFrameLength());
+        }
+        return (int) bodyLength + lengthFieldSize;
+    }
+
+    @Override
+    protected void stripFraming(ByteBuffer frame) {
+        if (stripLengthField) {
+            frame.position(frame.position() + lengthFieldSize);
+        }
+    }
+
+    @Override
+    protected int lookahead(ByteBuffer cumulation, ByteBuffer src) {
+        return Math.min(lengthFieldSize - cumulation.remaining(), src.remaining());
+    }
+}
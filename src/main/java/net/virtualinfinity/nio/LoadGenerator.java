@@ -0,0 +1,475 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A load generating client, which opens a number of connections and drives a {@link Workload} over them at a target
+ * request rate, recording the latency of every request in a {@link LatencyHistogram}.
+ *
+ * <p>
+ * The load is open-loop: each connection has a fixed schedule of intended send times, which is independent of how
+ * quickly the server responds.  Latency is measured from the <em>intended</em> send time, rather than the time the
+ * request was actually written, so that stalls in the server (or in this client) are fully accounted for instead of
+ * being hidden by "coordinated omission".
+ *
+ * <p>
+ * The generator uses its own {@link EventLoop}, which is run on the thread that calls {@link #run(long, TimeUnit)}.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class LoadGenerator {
+    private static final int INPUT_BUFFER_SIZE = 8192;
+    private final ConnectionInitiator connectionInitiator;
+    private final SocketAddress address;
+    private final Workload workload;
+    private final int connections;
+    private final double requestsPerSecond;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final List<Connection> openedConnections = new ArrayList<>();
+    private long drainTimeoutNanos = TimeUnit.SECONDS.toNanos(5);
+    private EventLoop eventLoop;
+    private long endTimeNanos;
+    private int finishedConnections;
+    private int failedConnections;
+    private long requestsSent;
+    private long requestsCompleted;
+
+    /**
+     * Constructs a load generator.
+     *
+     * @param connectionInitiator the connection initiator used to open the connections.
+     * @param hostname The host name to connect to.
+     * @param port The port to connect to.
+     * @param workload The workload to drive over each connection.
+     * @param connections The number of connections to open.
+     * @param requestsPerSecond The total rate of requests, across all connections.
+     */
+    public LoadGenerator(ConnectionInitiator connectionInitiator, String hostname, int port, Workload workload, int connections, double requestsPerSecond) {
+        this(connectionInitiator, InetSocketAddress.createUnresolved(hostname, port), workload, connections, requestsPerSecond);
+    }
+
+    /**
+     * Constructs a load generator.
+     *
+     * @param connectionInitiator the connection initiator used to open the connections.
+     * @param address The address to connect to, which may be an unresolved InetSocketAddress, or the address of a Unix
+     *                domain socket.
+     * @param workload The workload to drive over each connection.
+     * @param connections The number of connections to open.
+     * @param requestsPerSecond The total rate of requests, across all connections.
+     */
+    public LoadGenerator(ConnectionInitiator connectionInitiator, SocketAddress address, Workload workload, int connections, double requestsPerSecond) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections must be positive");
+        }
+        if (!(requestsPerSecond > 0)) {
+            throw new IllegalArgumentException("requestsPerSecond must be positive");
+        }
+        this.connectionInitiator = connectionInitiator;
+        this.address = address;
+        this.workload = workload;
+        this.connections = connections;
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * Sets how long to wait for outstanding responses after the run duration has elapsed.  Defaults to 5 seconds.
+     *
+     * @param drainTimeout the amount of time.
+     * @param unit the unit of drainTimeout.
+     */
+    public void setDrainTimeout(long drainTimeout, TimeUnit unit) {
+        this.drainTimeoutNanos = unit.toNanos(drainTimeout);
+    }
+
+    /**
+     * Opens the connections, and drives the workload for the given duration.  This method blocks until the duration
+     * has elapsed, and all outstanding requests have completed or the drain timeout has passed.  The connections are
+     * closed before it returns.
+     *
+     * @param duration how long to generate load.
+     * @param unit the unit of duration.
+     *
+     * @return the histogram of request latencies, in nanoseconds.
+     *
+     * @throws IOException if the event loop can not be opened, or the event loop throws.
+     */
+    public LatencyHistogram run(long duration, TimeUnit unit) throws IOException {
+        eventLoop = new EventLoop(this::handleException);
+        final long startTime = System.nanoTime();
+        endTimeNanos = startTime + unit.toNanos(duration);
+        final long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) * connections / requestsPerSecond);
+        for (int i = 0; i < connections; ++i) {
+            final Connection connection = new Connection(Math.max(1, intervalNanos), intervalNanos * i / connections);
+            openedConnections.add(connection);
+            connectionInitiator.connect(eventLoop, address, connection, connection::initiated);
+        }
+        eventLoop.invokeAfter(this::stop, endTimeNanos + drainTimeoutNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        eventLoop.run();
+        return histogram;
+    }
+
+    /**
+     * @return the number of connections that could not be established, or were lost before completing.
+     */
+    public int getFailedConnections() {
+        return failedConnections;
+    }
+
+    /**
+     * @return the number of requests written to the output buffers.
+     */
+    public long getRequestsSent() {
+        return requestsSent;
+    }
+
+    /**
+     * @return the number of requests for which a latency was recorded.
+     */
+    public long getRequestsCompleted() {
+        return requestsCompleted;
+    }
+
+    /**
+     * @return the latency histogram, in nanoseconds.
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    private void handleException(SelectionKey key, IOException e) {
+        if (key == null) {
+            stop();
+            return;
+        }
+        // The connection will be counted as finished when the drain timeout stops the run.
+        key.cancel();
+        closeQuietly(key.channel());
+    }
+
+    private void connectionFinished(boolean failed) {
+        if (failed) {
+            ++failedConnections;
+        }
+        if (++finishedConnections == connections) {
+            // Don't close the selector out from under the handler that is currently running.
+            eventLoop.invokeLater(this::stop);
+        }
+    }
+
+    private void stop() {
+        for (final Connection connection : openedConnections) {
+            connection.close();
+        }
+        try {
+            eventLoop.close();
+        } catch (final IOException ignored) {
+        }
+    }
+
+    private static void closeQuietly(SelectableChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException ignored) {
+        }
+    }
+
+    /**
+     * Describes the traffic driven over each connection.
+     */
+    public static final class Workload {
+        private final ByteBuffer request;
+        private final int responseLength;
+
+        private Workload(ByteBuffer request, int responseLength) {
+            if (!request.hasRemaining()) {
+                throw new IllegalArgumentException("request must not be empty");
+            }
+            this.request = request.asReadOnlyBuffer();
+            this.responseLength = responseLength;
+        }
+
+        /**
+         * A request/response workload.  Each request is expected to produce a response of exactly responseLength bytes,
+         * and responses are expected in the same order as requests.  Latency is the time from the intended send time of
+         * the request until the last byte of its response is received.
+         *
+         * @param request the bytes of each request.
+         * @param responseLength the length of each response.
+         *
+         * @return the workload.
+         */
+        public static Workload requestResponse(ByteBuffer request, int responseLength) {
+            if (responseLength < 1) {
+                throw new IllegalArgumentException("responseLength must be positive");
+            }
+            return new Workload(request, responseLength);
+        }
+
+        /**
+         * A streaming workload.  Messages are sent without expecting any response, and any data received is discarded.
+         * Latency is the time from the intended send time of the message until its last byte is written to the socket.
+         *
+         * @param message the bytes of each message.
+         *
+         * @return the workload.
+         */
+        public static Workload streaming(ByteBuffer message) {
+            return new Workload(message, 0);
+        }
+
+        boolean isStreaming() {
+            return responseLength == 0;
+        }
+    }
+
+    /**
+     * The state of a single connection.
+     */
+    private final class Connection implements ConnectionListener, ByteBufferConsumer, Runnable {
+        private final OutputBuffer outputBuffer = new OutputBuffer();
+        private final LongQueue intendedTimes = new LongQueue();
+        private final LongQueue completionOffsets = new LongQueue();
+        private final long intervalNanos;
+        private final long offsetNanos;
+        private long nextIntendedTime;
+        private long bytesAppended;
+        private long bytesWritten;
+        private long partialResponse;
+        private boolean finished;
+        private SocketChannelInterface channel;
+
+        Connection(long intervalNanos, long offsetNanos) {
+            this.intervalNanos = intervalNanos;
+            this.offsetNanos = offsetNanos;
+        }
+
+        void initiated(SocketChannelInterface channel) {
+            this.channel = channel;
+            try {
+                new SocketSelectionActions(new CountingChannel(channel, this), this, this, outputBuffer, INPUT_BUFFER_SIZE, false)
+                    .register(eventLoop);
+            } catch (final IOException e) {
+                connectionFailed(e);
+            }
+        }
+
+        @Override
+        public void connecting() {
+        }
+
+        @Override
+        public void connected() {
+            nextIntendedTime = System.nanoTime() + offsetNanos;
+            run();
+        }
+
+        @Override
+        public void connectionFailed(IOException e) {
+            finish(true);
+        }
+
+        @Override
+        public void disconnected() {
+            finish(!intendedTimes.isEmpty() || System.nanoTime() < endTimeNanos);
+        }
+
+        /**
+         * Sends every request whose intended time has passed, and schedules the next one.
+         */
+        @Override
+        public void run() {
+            if (finished) {
+                return;
+            }
+            final long now = System.nanoTime();
+            while (nextIntendedTime <= now && nextIntendedTime < endTimeNanos) {
+                send(nextIntendedTime);
+                nextIntendedTime += intervalNanos;
+            }
+            if (nextIntendedTime < endTimeNanos) {
+                eventLoop.invokeAfter(this, nextIntendedTime - now, TimeUnit.NANOSECONDS);
+            } else {
+                checkDone();
+            }
+        }
+
+        private void send(long intendedTime) {
+            bytesAppended += outputBuffer.append(workload.request.duplicate());
+            intendedTimes.add(intendedTime);
+            completionOffsets.add(bytesAppended);
+            ++requestsSent;
+        }
+
+        @Override
+        public void accept(ByteBuffer src) {
+            int received = src.remaining();
+            src.position(src.limit());
+            if (workload.isStreaming()) {
+                return;
+            }
+            final long now = System.nanoTime();
+            while (received > 0 && !intendedTimes.isEmpty()) {
+                final int toComplete = (int) Math.min(received, workload.responseLength - partialResponse);
+                partialResponse += toComplete;
+                received -= toComplete;
+                if (partialResponse == workload.responseLength) {
+                    partialResponse = 0;
+                    completionOffsets.poll();
+                    record(now, intendedTimes.poll());
+                }
+            }
+            checkDone();
+        }
+
+        void written(int count) {
+            bytesWritten += count;
+            if (!workload.isStreaming()) {
+                return;
+            }
+            final long now = System.nanoTime();
+            while (!completionOffsets.isEmpty() && completionOffsets.peek() <= bytesWritten) {
+                completionOffsets.poll();
+                record(now, intendedTimes.poll());
+            }
+            checkDone();
+        }
+
+        private void record(long now, long intendedTime) {
+            histogram.recordValue(Math.max(0, now - intendedTime));
+            ++requestsCompleted;
+        }
+
+        private void checkDone() {
+            if (intendedTimes.isEmpty() && nextIntendedTime >= endTimeNanos) {
+                finish(false);
+            }
+        }
+
+        void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (final IOException ignored) {
+            }
+        }
+
+        private void finish(boolean failed) {
+            if (!finished) {
+                finished = true;
+                connectionFinished(failed);
+            }
+        }
+    }
+
+    /**
+     * Tracks how many bytes of each request have been written to the socket.
+     */
+    private static final class CountingChannel implements SocketChannelInterface {
+        private final SocketChannelInterface delegate;
+        private final Connection connection;
+
+        CountingChannel(SocketChannelInterface delegate, Connection connection) {
+            this.delegate = delegate;
+            this.connection = connection;
+        }
+
+        @Override
+        public SelectableChannel selectableChannel() {
+            return delegate.selectableChannel();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public boolean isConnectionPending() {
+            return delegate.isConnectionPending();
+        }
+
+        @Override
+        public boolean finishConnect() throws IOException {
+            return delegate.finishConnect();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return delegate.isConnected();
+        }
+
+        @Override
+        public int write(ByteBuffer byteBuffer) throws IOException {
+            final int written = delegate.write(byteBuffer);
+            connection.written(written);
+            return written;
+        }
+
+        @Override
+        public int read(ByteBuffer inputBuffer) throws IOException {
+            return delegate.read(inputBuffer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public void configureBlocking(boolean blocking) throws IOException {
+            delegate.configureBlocking(blocking);
+        }
+
+        @Override
+        public boolean connect(SocketAddress address) throws IOException {
+            return delegate.connect(address);
+        }
+    }
+
+    /**
+     * A growable FIFO queue of primitive longs, to avoid boxing on the request path.
+     */
+    private static final class LongQueue {
+        private long[] values = new long[64];
+        private int head;
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(long value) {
+            if (size == values.length) {
+                final long[] grown = new long[values.length * 2];
+                for (int i = 0; i < size; ++i) {
+                    grown[i] = values[(head + i) % values.length];
+                }
+                values = grown;
+                head = 0;
+            }
+            values[(head + size++) % values.length] = value;
+        }
+
+        long peek() {
+            return values[head];
+        }
+
+        long poll() {
+            final long value = values[head];
+            head = (head + 1) % values.length;
+            --size;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package net.virtualinfinity.nio;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, lock-free channel which delivers messages from any number of threads (typically other event loops) to a
+ * consumer on a receiving event loop.
+ *
+ * <p>
+ * Messages are held in a ring buffer, so sending never allocates or takes a lock.  The receiving loop drains the
+ * channel in a batch on every iteration, and is only woken when the channel goes from empty to non-empty, so a busy
+ * channel costs one selector wakeup per batch rather than one per message.
+ *
+ * <p>
+ * The channel never blocks the sender.  When it is full, {@link #offer(Object)} returns false, and the sender decides
+ * whether to retry later, drop the message, or stop reading from its own connections until the receiver catches up.
+ *
+ * <p>
+ * Messages still in the channel when the receiving loop terminates are not delivered.
+ *
+ * @param <T> the type of message.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class LoopChannel<T> implements Closeable {
+    private final EventLoop receiver;
+    private final Consumer<? super T> consumer;
+    private final int mask;
+    private final Object[] messages;
+    /**
+     * For each slot, the position at which it can next be written, or that position plus one once it holds a message.
+     */
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * The next position to consume.  Only written from the receiving event loop.
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * True once the receiver has drained the channel, until a sender claims the wakeup.
+     */
+    private final AtomicBoolean idle = new AtomicBoolean(true);
+    private final Runnable drain = this::drain;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a channel, and starts draining it on the receiving loop.
+     *
+     * @param receiver the event loop which consumes the messages.
+     * @param capacity the maximum number of undelivered messages, rounded up to a power of two.
+     * @param consumer called on the receiving event loop with each message, in the order each sender sent them.
+     */
+    public LoopChannel(EventLoop receiver, int capacity, Consumer<? super T> consumer) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.receiver = receiver;
+        this.consumer = consumer;
+        this.mask = size - 1;
+        this.messages = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            sequences.set(i, i);
+        }
+        receiver.addIterationHook(drain);
+    }
+
+    /**
+     * Sends a message to the receiving loop.  May be called from any thread.
+     *
+     * @param message the message.
+     *
+     * @return true if the message was queued, or false if the channel is full or closed.
+     */
+    public boolean offer(T message) {
+        if (message == null) {
+            throw new NullPointerException("message");
+        }
+        if (closed) {
+            return false;
+        }
+        long position = tail.get();
+        while (true) {
+            final long available = sequences.get(index(position)) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                // The slot still holds the message from the previous lap.
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        final int index = index(position);
+        messages[index] = message;
+        // A full volatile write, so that it can't be reordered with the read of idle below.
+        sequences.set(index, position + 1);
+        if (idle.get() && idle.compareAndSet(true, false)) {
+            receiver.wakeup();
+        }
+        return true;
+    }
+
+    /**
+     * @return the approximate number of undelivered messages.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(messages.length, tail.get() - head.get()));
+    }
+
+    /**
+     * @return the maximum number of undelivered messages.
+     */
+    public int capacity() {
+        return messages.length;
+    }
+
+    /**
+     * Stops draining the channel.  Undelivered messages are discarded, and later offers fail.  A message offered at the
+     * same time as the channel is closed may be accepted, but is never delivered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        receiver.removeIterationHook(drain);
+    }
+
+    /**
+     * @return true once the channel has been closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Delivers the queued messages.  Runs on the receiving loop each iteration.  At most one lap of the ring is
+     * delivered per call, so that senders which keep up with the consumer can't starve the selector.
+     */
+    private void drain() {
+        for (int count = messages.length; count > 0; --count) {
+            final T message = poll();
+            if (message == null) {
+                break;
+            }
+            consumer.accept(message);
+        }
+        idle.set(true);
+        // A sender may have seen the channel as not idle just before it was marked idle, so look again.
+        if (!isEmpty() && idle.compareAndSet(true, false)) {
+            receiver.wakeup();
+        }
+    }
+
+    private T poll() {
+        final long position = head.get();
+        final int index = index(position);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        final T message = (T) messages[index];
+        messages[index] = null;
+        sequences.lazySet(index, position + messages.length);
+        head.lazySet(position + 1);
+        return message;
+    }
+
+    private boolean isEmpty() {
+        final long position = head.get();
+        return sequences.get(index(position)) != position + 1;
+    }
+
+    private int index(long position) {
+        return (int) position & mask;
+    }
+}
@@ -0,0 +1,25 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Processes received data on a worker thread, for an {@link OffloadingReceiver}.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface OffloadedProcessor {
+    /**
+     * Processes a block of received data.  Blocks from the same connection are processed one at a time, in the order
+     * they were received, but not necessarily on the same thread.
+     *
+     * @param data the received data.  The processor owns this buffer.
+     *
+     * @return data to send back over the connection, or null if there is none.  Sent from the event loop thread,
+     *         after the results of all earlier blocks.
+     *
+     * @throws IOException if the data is invalid.  No further data from the connection is processed.
+     */
+    ByteBuffer process(ByteBuffer data) throws IOException;
+}
@@ -0,0 +1,133 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * A receiver which hands received data to a worker pool, so that expensive decoding or validation doesn't hold up the
+ * event loop and every other connection on it.
+ *
+ * <p>
+ * Data for the connection is processed in the order it was received, by a {@link SerialExecutor} on the workers.
+ * Results are appended to the connection's output buffer on the event loop thread, in the same order.  When the
+ * received data waiting to be processed reaches the pending limit, reading from the connection is suspended until
+ * the backlog drops to half of the limit.
+ *
+ * <p>
+ * <strong>Warning:</strong> Apart from the offloaded processing, this class must only be used from the event loop
+ * thread.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class OffloadingReceiver implements ByteBufferConsumer {
+    private final EventLoop eventLoop;
+    private final SerialExecutor worker;
+    private final OffloadedProcessor processor;
+    private final OutputBuffer outputBuffer;
+    private final long maximumPendingBytes;
+    private final Consumer<IOException> failureListener;
+    private SocketSelectionActions flowControl;
+    private long pendingBytes;
+    private volatile boolean failed;
+
+    /**
+     * Creates an offloading receiver.
+     *
+     * @param eventLoop the event loop which owns the connection.
+     * @param workers the executor which processes the data.  Usually shared by many connections.
+     * @param processor processes the received data.
+     * @param outputBuffer the connection's output buffer, which processing results are appended to.
+     * @param maximumPendingBytes the number of received bytes waiting to be processed that causes reading to be
+     *                            suspended.
+     * @param failureListener notified on the event loop thread if processing fails.  Typically closes the connection.
+     */
+    public OffloadingReceiver(EventLoop eventLoop, Executor workers, OffloadedProcessor processor, OutputBuffer outputBuffer, long maximumPendingBytes, Consumer<IOException> failureListener) {
+        if (maximumPendingBytes <= 0) {
+            throw new IllegalArgumentException("maximumPendingBytes must be positive");
+        }
+        this.eventLoop = eventLoop;
+        this.worker = new SerialExecutor(workers);
+        this.processor = processor;
+        this.outputBuffer = outputBuffer;
+        this.maximumPendingBytes = maximumPendingBytes;
+        this.failureListener = failureListener;
+    }
+
+    /**
+     * Sets the actions whose reading is suspended while too much data is pending.  Without them, the backlog is
+     * unbounded.
+     *
+     * @param actions the actions for the connection this receiver is reading from.
+     */
+    public void setFlowControl(SocketSelectionActions actions) {
+        this.flowControl = actions;
+    }
+
+    /**
+     * Copies the data and queues it for processing.
+     *
+     * @param src the received data, which is fully consumed.
+     */
+    @Override
+    public void accept(ByteBuffer src) {
+        final int count = src.remaining();
+        if (count == 0) {
+            return;
+        }
+        if (failed) {
+            src.position(src.limit());
+            return;
+        }
+        final ByteBuffer data = ByteBuffer.allocate(count);
+        data.put(src).flip();
+        pendingBytes += count;
+        if (pendingBytes >= maximumPendingBytes && flowControl != null && !flowControl.isReadingSuspended()) {
+            flowControl.suspendReading();
+        }
+        worker.execute(() -> process(data, count));
+    }
+
+    /**
+     * @return the number of received bytes which have not finished processing.
+     */
+    public long pendingBytes() {
+        return pendingBytes;
+    }
+
+    private void process(ByteBuffer data, int count) {
+        ByteBuffer result = null;
+        IOException failure = null;
+        if (!failed) {
+            try {
+                result = processor.process(data);
+            } catch (final IOException e) {
+                failure = e;
+            } catch (final RuntimeException e) {
+                failure = new IOException(e);
+            }
+        }
+        final ByteBuffer processed = result;
+        final IOException processingFailure = failure;
+        eventLoop.invokeLater(() -> completed(count, processed, processingFailure));
+    }
+
+    private void completed(int count, ByteBuffer result, IOException failure) {
+        pendingBytes -= count;
+        if (failed) {
+            return;
+        }
+        if (failure != null) {
+            failed = true;
+            failureListener.accept(failure);
+            return;
+        }
+        if (result != null && result.hasRemaining()) {
+            outputBuffer.append(result);
+        }
+        if (flowControl != null && flowControl.isReadingSuspended() && pendingBytes <= maximumPendingBytes / 2) {
+            flowControl.resumeReading();
+        }
+    }
+}
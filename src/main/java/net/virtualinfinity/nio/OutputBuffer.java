@@ -1,7 +1,13 @@
 package net.virtualinfinity.nio;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -14,7 +20,14 @@ import java.util.*;
  * bytes currently being appended.
  *
  * <p>
- * This buffer can grow unbounded.
+ * By default, this buffer can grow unbounded.  When constructed with a memory limit and spill directory, data
+ * appended past the memory limit is written to memory-mapped segment files in the spill directory instead, and
+ * streamed back out in order by {@link #send(ByteBufferConsumer)}.  Segments are deleted once fully sent, so a
+ * backlog is bounded by disk space rather than memory.
+ *
+ * <p>
+ * Messages can also be encoded directly into the buffer's chunks with its {@link #writer() writer}, rather than being
+ * encoded into a temporary buffer and then copied by {@link #append(ByteBuffer)}.
  *
  * <p>
  * <strong>Warning:</strong> This class is not thread-safe.
@@ -25,10 +38,23 @@ import java.util.*;
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
 public final class OutputBuffer {
+    /**
+     * The most buffers passed to a single gathering write.  Operating systems limit this (IOV_MAX).
+     */
+    private static final int MAXIMUM_GATHER = 64;
     private final List<Runnable> newDataListeners = new ArrayList<>();
+    private final List<Runnable> appendListeners = new ArrayList<>();
+    private final List<Runnable> clearListeners = new ArrayList<>();
     private final int minimumBufferSize;
-    private final Deque<ByteBuffer> buffers = new LinkedList<>();
+    private final Deque<Chunk> buffers = new LinkedList<>();
+    private final long memoryLimit;
+    private final Path spillDirectory;
+    private final int segmentSize;
+    private final Deque<SpillSegment> segments = new ArrayDeque<>();
+    private final BufferPool bufferPool;
     private long remaining;
+    private long spilled;
+    private Writer writer;
 
     /**
      * Constructs an OutputBuffer with minimumBufferSize of 512.
@@ -44,6 +70,50 @@ public final class OutputBuffer {
      */
     public OutputBuffer(int minimumBufferSize) {
         this.minimumBufferSize = minimumBufferSize;
+        this.memoryLimit = Long.MAX_VALUE;
+        this.spillDirectory = null;
+        this.segmentSize = 0;
+        this.bufferPool = null;
+    }
+
+    /**
+     * Constructs an OutputBuffer which acquires its buffers from a pool, and releases them back to the pool once they
+     * have been sent.  The minimum buffer size is the pool's buffer size, and data larger than that is split across
+     * several pooled buffers.
+     *
+     * @param bufferPool the pool.
+     */
+    public OutputBuffer(BufferPool bufferPool) {
+        this.minimumBufferSize = bufferPool.bufferSize();
+        this.memoryLimit = Long.MAX_VALUE;
+        this.spillDirectory = null;
+        this.segmentSize = 0;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Constructs an OutputBuffer which spills to disk once more than memoryLimit bytes are waiting in memory.
+     * <p>
+     * Once data has spilled, all appended data goes to disk until the spilled data has been sent, so that the order of
+     * the data is preserved.
+     *
+     * @param minimumBufferSize The minimum buffer size to be allocated when a new buffer is needed.
+     * @param memoryLimit The maximum number of bytes to hold in memory.
+     * @param spillDirectory The directory to create segment files in.
+     * @param segmentSize The size of each segment file.
+     */
+    public OutputBuffer(int minimumBufferSize, long memoryLimit, Path spillDirectory, int segmentSize) {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("memoryLimit must not be negative");
+        }
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segmentSize must be positive");
+        }
+        this.minimumBufferSize = minimumBufferSize;
+        this.memoryLimit = memoryLimit;
+        this.spillDirectory = Objects.requireNonNull(spillDirectory, "spillDirectory");
+        this.segmentSize = segmentSize;
+        this.bufferPool = null;
     }
 
     /**
@@ -51,10 +121,12 @@ public final class OutputBuffer {
      * <p>
      * First, an attempt is made to fill the last buffer in the queue.  If there is still data remaining, a new
      * direct buffer is allocated that is large enough to fit the remaining data, and at least minimumBufferSize.
+     * If this buffer spills to disk, data that would exceed the memory limit is written to a segment file instead.
      *
      * @param data the data to append to the output buffer.
      *
      * @throws NullPointerException if data is null.
+     * @throws UncheckedIOException if a segment file can not be created.
      *
      * @return The amount of data copied, which is always the full amount of <code>data.remaining()</code> when the
      *         method is invoked.
@@ -63,15 +135,86 @@ public final class OutputBuffer {
         if (data == null) {
             throw new NullPointerException("data");
         }
+        final int count = appendWithoutNotifying(data);
+        dataAppended(count);
+        return count;
+    }
+
+    private int appendWithoutNotifying(ByteBuffer data) {
         final int count = data.remaining();
+        if (segments.isEmpty()) {
+            appendToMemory(data);
+        }
+        if (data.hasRemaining()) {
+            spill(data);
+        }
         remaining += count;
-        if (!buffers.isEmpty()) {
-            BufferUtils.putWhatFits(buffers.getLast(), data);
+        return count;
+    }
+
+    /**
+     * Enqueue the data in the buffer to be sent at a later time, without copying it.  The output buffer takes
+     * ownership of the data between its position and limit, and the position is advanced to the limit.  The caller
+     * must not modify that data until release is called, which happens once it has been fully sent, or it is discarded
+     * by {@link #clear()}.
+     * <p>
+     * Small buffers (less than the minimum buffer size) are copied into the last buffer instead, as {@link #append(ByteBuffer)}
+     * would, so that many small writes are still sent together.  Data which would exceed the memory limit is also
+     * copied, to a segment file.  In either case, release is called before this method returns.
+     *
+     * @param data the data to append to the output buffer.
+     * @param release called once the output buffer no longer needs the data. May be null.
+     *
+     * @throws NullPointerException if data is null.
+     *
+     * @return The amount of data appended, which is always the full amount of <code>data.remaining()</code> when the
+     *         method is invoked.
+     */
+    public int appendOwned(ByteBuffer data, Runnable release) {
+        return appendByReference(data, release, minimumBufferSize);
+    }
+
+    /**
+     * Enqueue data by reference, like {@link #appendOwned(ByteBuffer, Runnable)}, but never copies small buffers into
+     * the last buffer.  This suits data shared by many output buffers, such as a broadcast message, where copying it
+     * into each of them would cost more than sending it as a separate buffer.
+     * <p>
+     * Data which would exceed the memory limit is still copied to a segment file, and release is then called before
+     * this method returns.
+     *
+     * @param data the data to append to the output buffer.
+     * @param release called once the output buffer no longer needs the data. May be null.
+     *
+     * @throws NullPointerException if data is null.
+     *
+     * @return The amount of data appended, which is always the full amount of <code>data.remaining()</code> when the
+     *         method is invoked.
+     *
+     * @see SharedPayload
+     */
+    public int appendShared(ByteBuffer data, Runnable release) {
+        return appendByReference(data, release, 0);
+    }
+
+    /**
+     * @param copyBelow data smaller than this is copied rather than referenced.
+     */
+    private int appendByReference(ByteBuffer data, Runnable release, int copyBelow) {
+        if (data == null) {
+            throw new NullPointerException("data");
         }
-        appendRemaining(data);
-        if (remaining == count) {
-            newDataListeners.forEach(Runnable::run);
+        final int count = data.remaining();
+        if (count < copyBelow || !segments.isEmpty() || memoryLimit - (remaining - spilled) < count) {
+            append(data);
+            if (release != null) {
+                release.run();
+            }
+            return count;
         }
+        buffers.add(new Chunk(data.slice(), true, release));
+        data.position(data.limit());
+        remaining += count;
+        dataAppended(count);
         return count;
     }
 
@@ -88,8 +231,9 @@ public final class OutputBuffer {
      * @param recipient
      *        the consumer that will process the data.
      *
-     * @throws IOException if the recipient method does.
+     * @throws IOException if the recipient method does, or a fully sent segment file can not be deleted.
      * @throws NullPointerException if recipient is null
+     * @throws IllegalStateException if the {@link #writer()} has a reservation which hasn't been filled.
      *
      * @return this
      *
@@ -98,22 +242,127 @@ public final class OutputBuffer {
         if (recipient == null) {
             throw new NullPointerException("recipient");
         }
-        for (final Iterator<ByteBuffer> iterator = buffers.iterator(); iterator.hasNext(); ) {
-            final ByteBuffer buffer = iterator.next();
-            buffer.flip();
-            remaining -= buffer.remaining();
-            recipient.accept(buffer);
-            remaining += buffer.remaining();
-            if (buffer.hasRemaining()) {
-                buffer.compact();
-                break;
+        checkNoUnfilledReservations();
+        for (final Iterator<Chunk> iterator = buffers.iterator(); iterator.hasNext(); ) {
+            final Chunk chunk = iterator.next();
+            final long before = chunk.remaining();
+            final boolean sent = chunk.send(recipient);
+            remaining -= before - chunk.remaining();
+            if (!sent) {
+                return this;
             }
             iterator.remove();
+            chunk.release();
+        }
+        while (!segments.isEmpty()) {
+            final SpillSegment segment = segments.getFirst();
+            final ByteBuffer pending = segment.pending();
+            final int before = pending.remaining();
+            recipient.accept(pending);
+            final int sent = before - pending.remaining();
+            segment.sent(sent);
+            remaining -= sent;
+            spilled -= sent;
+            if (pending.hasRemaining()) {
+                break;
+            }
+            segments.removeFirst().delete();
         }
 
         return this;
     }
 
+    /**
+     * Sends as much of the remaining data as is available to the recipient, passing several buffers to each call,
+     * until the recipient doesn't accept all the buffers it was given.  This allows many small appends to be sent with
+     * a single gathering write.
+     *
+     * @param recipient the consumer that will process the data.
+     *
+     * @throws IOException if the recipient method does, or a fully sent segment file can not be deleted.
+     * @throws NullPointerException if recipient is null
+     * @throws IllegalStateException if the {@link #writer()} has a reservation which hasn't been filled.
+     *
+     * @return this
+     *
+     * @see #send(ByteBufferConsumer)
+     */
+    public OutputBuffer sendGathering(GatheringByteBufferConsumer recipient) throws IOException {
+        if (recipient == null) {
+            throw new NullPointerException("recipient");
+        }
+        checkNoUnfilledReservations();
+        while (!buffers.isEmpty()) {
+            final Chunk[] chunks = new Chunk[Math.min(buffers.size(), MAXIMUM_GATHER)];
+            final ByteBuffer[] srcs = new ByteBuffer[chunks.length];
+            final Iterator<Chunk> iterator = buffers.iterator();
+            long before = 0;
+            for (int i = 0; i < chunks.length; ++i) {
+                chunks[i] = iterator.next();
+                before += chunks[i].remaining();
+                srcs[i] = chunks[i].readable();
+            }
+            try {
+                recipient.accept(srcs, 0, srcs.length);
+            } finally {
+                long after = 0;
+                for (final Chunk chunk : chunks) {
+                    chunk.writable();
+                    after += chunk.remaining();
+                }
+                remaining -= before - after;
+            }
+            for (final Chunk chunk : chunks) {
+                if (chunk.remaining() != 0) {
+                    return this;
+                }
+                buffers.removeFirst();
+                chunk.release();
+            }
+        }
+        return send(src -> recipient.accept(new ByteBuffer[] {src}, 0, 1));
+    }
+
+    /**
+     * A reserved placeholder would be sent as zeros, and the chunk holding it may be compacted or recycled before the
+     * reservation is filled, so nothing may be sent until every reservation is filled.
+     */
+    private void checkNoUnfilledReservations() {
+        if (writer != null && writer.unfilled != 0) {
+            throw new IllegalStateException("Can not send while " + writer.unfilled + " reservations have not been filled");
+        }
+    }
+
+    /**
+     * Discards all data waiting to be sent, releases any owned buffers, and deletes any segment files.  Anything
+     * written with the {@link #writer()} which hasn't been committed is discarded too, including its reservations.
+     * Clear listeners are notified before the owned buffers are released.
+     *
+     * @throws IOException if a segment file can not be deleted.
+     */
+    public void clear() throws IOException {
+        if (writer != null) {
+            writer.discard();
+        }
+        // Copied, so that listeners can remove themselves.
+        new ArrayList<>(clearListeners).forEach(Runnable::run);
+        buffers.forEach(Chunk::release);
+        buffers.clear();
+        remaining = 0;
+        spilled = 0;
+        IOException failure = null;
+        while (!segments.isEmpty()) {
+            try {
+                segments.removeFirst().delete();
+            } catch (final IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     /**
      * Test whether or not more data is available for the {@link #send(ByteBufferConsumer)} method.
      *
@@ -130,6 +379,58 @@ public final class OutputBuffer {
         return remaining;
     }
 
+    /**
+     * @return the number of bytes remaining to be sent which are held in segment files.
+     */
+    public long spilled() {
+        return spilled;
+    }
+
+    /**
+     * Appends as much of the data to the in memory buffers as the memory limit allows.
+     *
+     * @param data the data
+     */
+    private void appendToMemory(ByteBuffer data) {
+        final long available = memoryLimit - (remaining - spilled);
+        if (available >= data.remaining()) {
+            if (!buffers.isEmpty() && !buffers.getLast().isOwned()) {
+                BufferUtils.putWhatFits(buffers.getLast().buffer, data);
+            }
+            appendRemaining(data);
+            return;
+        }
+        final int limit = data.limit();
+        data.limit(data.position() + (int) Math.max(0, available));
+        try {
+            appendToMemory(data);
+        } finally {
+            data.limit(limit);
+        }
+    }
+
+    /**
+     * Writes the data to the end of the last segment file, creating new segments as needed.
+     *
+     * @param data the data
+     */
+    private void spill(ByteBuffer data) {
+        if (spillDirectory == null) {
+            throw new IllegalStateException("Memory limit reached without a spill directory");
+        }
+        spilled += data.remaining();
+        while (data.hasRemaining()) {
+            if (segments.isEmpty() || segments.getLast().isFull()) {
+                try {
+                    segments.add(new SpillSegment(spillDirectory, segmentSize));
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            segments.getLast().append(data);
+        }
+    }
+
     /**
      * Appends a new buffer that contains a copy of the data.
      * <p>
@@ -140,10 +441,326 @@ public final class OutputBuffer {
      * @param data the data
      */
     private void appendRemaining(ByteBuffer data) {
+        if (bufferPool != null) {
+            while (data.hasRemaining()) {
+                BufferUtils.putWhatFits(addChunk(minimumBufferSize), data);
+            }
+            return;
+        }
         if (!data.hasRemaining()) {
             return;
         }
-        buffers.add(copyOf(data, Math.max(minimumBufferSize, data.remaining())));
+        buffers.add(new Chunk(copyOf(data, Math.max(minimumBufferSize, data.remaining())), false, null));
+    }
+
+    /**
+     * Adds an empty chunk to the end of the queue.
+     *
+     * @param size the minimum size of the chunk.
+     *
+     * @return the chunk's buffer, in write mode.
+     */
+    private ByteBuffer addChunk(int size) {
+        if (bufferPool != null && size <= bufferPool.bufferSize()) {
+            final ByteBuffer buffer = bufferPool.acquire();
+            buffers.add(new Chunk(buffer, false, () -> bufferPool.release(buffer)));
+            return buffer;
+        }
+        final ByteBuffer buffer = doAllocate(Math.max(minimumBufferSize, size));
+        buffers.add(new Chunk(buffer, false, null));
+        return buffer;
+    }
+
+    /**
+     * Finds room to encode data directly into the last chunk.
+     *
+     * @param size the number of bytes needed.
+     *
+     * @return a buffer in write mode with at least size bytes remaining, or null if the data must be spilled.
+     */
+    private ByteBuffer writableTail(int size) {
+        if (!segments.isEmpty() || memoryLimit - (remaining - spilled) < size) {
+            return null;
+        }
+        final Chunk last = buffers.peekLast();
+        if (last != null && !last.isOwned() && last.buffer.remaining() >= size) {
+            return last.buffer;
+        }
+        return addChunk(size);
+    }
+
+    /**
+     * Returns the writer for this buffer.  The same writer is returned each time.
+     *
+     * @return the writer.
+     */
+    public Writer writer() {
+        if (writer == null) {
+            writer = new Writer();
+        }
+        return writer;
+    }
+
+    /**
+     * Encodes data directly into the output buffer's chunks, without any intermediate buffer.  Values are written
+     * big-endian.  When the last chunk is full, a new one is added, from the buffer pool if there is one.
+     *
+     * <p>
+     * Written data counts towards {@link #remaining()} immediately, but listeners aren't notified until
+     * {@link #commit()} is called, so that a message being written isn't sent a piece at a time.  A message must be
+     * committed before control returns to the event loop.
+     *
+     * <p>
+     * Space for a length prefix can be reserved with {@link #reserveInt()}, and filled in once the rest of the message
+     * has been written.  Every reservation must be filled before the message is committed, and before the output
+     * buffer is sent.  Reservations are not available while the output buffer is spilling to disk, or has reached its
+     * memory limit.
+     */
+    public final class Writer {
+        private final ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES + 2);
+        private int uncommitted;
+        private ByteBuffer[] reservedBuffers = new ByteBuffer[4];
+        private int[] reservedPositions = new int[4];
+        private long[] reservedAt = new long[4];
+        private int reservations;
+        private int unfilled;
+        private long written;
+
+        private Writer() {
+        }
+
+        public Writer putByte(int value) {
+            final ByteBuffer tail = writableTail(1);
+            if (tail == null) {
+                scratch.clear();
+                return putScratch(scratch.put((byte) value));
+            }
+            tail.put((byte) value);
+            return wrote(1);
+        }
+
+        public Writer putShort(int value) {
+            final ByteBuffer tail = writableTail(Short.BYTES);
+            if (tail == null) {
+                scratch.clear();
+                return putScratch(scratch.putShort((short) value));
+            }
+            tail.putShort((short) value);
+            return wrote(Short.BYTES);
+        }
+
+        public Writer putInt(int value) {
+            final ByteBuffer tail = writableTail(Integer.BYTES);
+            if (tail == null) {
+                scratch.clear();
+                return putScratch(scratch.putInt(value));
+            }
+            tail.putInt(value);
+            return wrote(Integer.BYTES);
+        }
+
+        public Writer putLong(long value) {
+            final ByteBuffer tail = writableTail(Long.BYTES);
+            if (tail == null) {
+                scratch.clear();
+                return putScratch(scratch.putLong(value));
+            }
+            tail.putLong(value);
+            return wrote(Long.BYTES);
+        }
+
+        /**
+         * Writes an unsigned variable length integer, 7 bits per byte, least significant group first, with the high
+         * bit set on every byte except the last.  Negative values take 10 bytes.
+         *
+         * @param value the value.
+         *
+         * @return this
+         */
+        public Writer putVarint(long value) {
+            ByteBuffer tail = writableTail(varintSize(value));
+            if (tail == null) {
+                scratch.clear();
+                tail = scratch;
+            }
+            final int start = tail.position();
+            while ((value & ~0x7FL) != 0) {
+                tail.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            tail.put((byte) value);
+            return tail == scratch ? putScratch(scratch) : wrote(tail.position() - start);
+        }
+
+        /**
+         * Writes the characters encoded as UTF-8, without any length prefix.  Unpaired surrogates are written as '?'.
+         *
+         * @param text the text.
+         *
+         * @return this
+         */
+        public Writer putUtf8(CharSequence text) {
+            final int length = text.length();
+            for (int index = 0; index < length; ++index) {
+                final char c = text.charAt(index);
+                if (c < 0x80) {
+                    putByte(c);
+                } else if (c < 0x800) {
+                    putCodePoint(c, 2);
+                } else if (!Character.isSurrogate(c)) {
+                    putCodePoint(c, 3);
+                } else if (Character.isHighSurrogate(c) && index + 1 < length && Character.isLowSurrogate(text.charAt(index + 1))) {
+                    putCodePoint(Character.toCodePoint(c, text.charAt(++index)), 4);
+                } else {
+                    putByte('?');
+                }
+            }
+            return this;
+        }
+
+        private void putCodePoint(int codePoint, int size) {
+            ByteBuffer tail = writableTail(size);
+            if (tail == null) {
+                scratch.clear();
+                tail = scratch;
+            }
+            switch (size) {
+                case 2:
+                    tail.put((byte) (0xC0 | (codePoint >> 6)));
+                    break;
+                case 3:
+                    tail.put((byte) (0xE0 | (codePoint >> 12)));
+                    tail.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    break;
+                default:
+                    tail.put((byte) (0xF0 | (codePoint >> 18)));
+                    tail.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    tail.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    break;
+            }
+            tail.put((byte) (0x80 | (codePoint & 0x3F)));
+            if (tail == scratch) {
+                putScratch(scratch);
+            } else {
+                wrote(size);
+            }
+        }
+
+        /**
+         * Copies the data into the output buffer, filling the last chunk before adding new ones.
+         *
+         * @param data the data, which is fully consumed.
+         *
+         * @return this
+         */
+        public Writer putBytes(ByteBuffer data) {
+            final int count = appendWithoutNotifying(data);
+            written += count;
+            uncommitted += count;
+            return this;
+        }
+
+        public Writer putBytes(byte[] data, int offset, int length) {
+            return putBytes(ByteBuffer.wrap(data, offset, length));
+        }
+
+        /**
+         * Reserves four bytes, to be filled in later with {@link #fillInt(int, int)}.
+         *
+         * @return the reservation.
+         *
+         * @throws IllegalStateException if the output buffer is spilling to disk, or has reached its memory limit.
+         */
+        public int reserveInt() {
+            final ByteBuffer tail = writableTail(Integer.BYTES);
+            if (tail == null) {
+                throw new IllegalStateException("Can not reserve space while the output buffer is spilling, or at its memory limit");
+            }
+            if (reservations == reservedBuffers.length) {
+                reservedBuffers = Arrays.copyOf(reservedBuffers, reservations * 2);
+                reservedPositions = Arrays.copyOf(reservedPositions, reservations * 2);
+                reservedAt = Arrays.copyOf(reservedAt, reservations * 2);
+            }
+            reservedBuffers[reservations] = tail;
+            reservedPositions[reservations] = tail.position();
+            tail.putInt(0);
+            wrote(Integer.BYTES);
+            reservedAt[reservations] = written;
+            ++unfilled;
+            return reservations++;
+        }
+
+        /**
+         * Fills in reserved space.
+         *
+         * @param reservation the reservation returned by {@link #reserveInt()}.
+         * @param value the value to fill in.
+         *
+         * @return this
+         *
+         * @throws IllegalStateException if the reservation has already been filled, or was committed.
+         */
+        public Writer fillInt(int reservation, int value) {
+            if (reservation < 0 || reservation >= reservations || reservedBuffers[reservation] == null) {
+                throw new IllegalStateException("Not an unfilled reservation: " + reservation);
+            }
+            reservedBuffers[reservation].putInt(reservedPositions[reservation], value);
+            reservedBuffers[reservation] = null;
+            --unfilled;
+            return this;
+        }
+
+        /**
+         * @param reservation the reservation returned by {@link #reserveInt()}.
+         *
+         * @return the number of bytes written after the reserved space, which is usually the value of a length prefix.
+         */
+        public int writtenSince(int reservation) {
+            return (int) (written - reservedAt[reservation]);
+        }
+
+        /**
+         * Notifies the output buffer's listeners of the data written since the last commit.
+         *
+         * @throws IllegalStateException if a reservation hasn't been filled.
+         */
+        public void commit() {
+            if (unfilled != 0) {
+                throw new IllegalStateException(unfilled + " reservations have not been filled");
+            }
+            reservations = 0;
+            final int count = uncommitted;
+            uncommitted = 0;
+            if (count != 0) {
+                dataAppended(count);
+            }
+        }
+
+        /**
+         * Forgets the uncommitted data and reservations, which the output buffer is discarding.
+         */
+        private void discard() {
+            Arrays.fill(reservedBuffers, 0, reservations, null);
+            reservations = 0;
+            unfilled = 0;
+            uncommitted = 0;
+        }
+
+        private Writer putScratch(ByteBuffer data) {
+            data.flip();
+            return putBytes(data);
+        }
+
+        private Writer wrote(int count) {
+            remaining += count;
+            written += count;
+            uncommitted += count;
+            return this;
+        }
+    }
+
+    private static int varintSize(long value) {
+        return value == 0 ? 1 : (64 - Long.numberOfLeadingZeros(value) + 6) / 7;
     }
 
     /**
@@ -169,6 +786,40 @@ public final class OutputBuffer {
         return ByteBuffer.allocateDirect(size);
     }
 
+    private void dataAppended(int count) {
+        if (remaining == count) {
+            newDataListeners.forEach(Runnable::run);
+        }
+        appendListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Adds a listener which is called after every append, after any new data listeners.
+     *
+     * @param listener the listener.
+     */
+    public void addAppendListener(Runnable listener) {
+        appendListeners.add(listener);
+    }
+
+    public void removeAppendListener(Runnable listener) {
+        appendListeners.remove(listener);
+    }
+
+    /**
+     * Adds a listener which is called when the buffer is {@link #clear() cleared}, before any owned buffers are
+     * released, so that the owner of those buffers can tell they were discarded rather than sent.
+     *
+     * @param listener the listener.
+     */
+    public void addClearListener(Runnable listener) {
+        clearListeners.add(listener);
+    }
+
+    public void removeClearListener(Runnable listener) {
+        clearListeners.remove(listener);
+    }
+
     public void removeNewDataListener(Runnable listener) {
         newDataListeners.remove(listener);
     }
@@ -176,4 +827,120 @@ public final class OutputBuffer {
         newDataListeners.add(listener);
 
     }
+
+    /**
+     * A memory-mapped file holding spilled data.  The file is opened with {@link StandardOpenOption#DELETE_ON_CLOSE},
+     * and the channel is closed once the segment is fully sent.  The mapping itself is released when it is garbage
+     * collected.
+     */
+    private static final class SpillSegment {
+        private final FileChannel channel;
+        private final MappedByteBuffer map;
+        private int readPosition;
+
+        SpillSegment(Path directory, int size) throws IOException {
+            final Path file = Files.createTempFile(directory, "output", ".spill");
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            } catch (final IOException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            try {
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (final IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        boolean isFull() {
+            return !map.hasRemaining();
+        }
+
+        void append(ByteBuffer data) {
+            BufferUtils.putWhatFits(map, data);
+        }
+
+        ByteBuffer pending() {
+            final ByteBuffer pending = map.duplicate();
+            pending.flip();
+            pending.position(readPosition);
+            return pending;
+        }
+
+        void sent(int count) {
+            readPosition += count;
+        }
+
+        void delete() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * A buffer held in memory.  Chunks allocated by the output buffer are kept in write mode, so they can be appended
+     * to, while owned chunks are kept in read mode, and never modified.
+     */
+    private static final class Chunk {
+        private final ByteBuffer buffer;
+        private final boolean owned;
+        private final Runnable release;
+
+        Chunk(ByteBuffer buffer, boolean owned, Runnable release) {
+            this.buffer = buffer;
+            this.owned = owned;
+            this.release = release;
+        }
+
+        boolean isOwned() {
+            return owned;
+        }
+
+        long remaining() {
+            return owned ? buffer.remaining() : buffer.position();
+        }
+
+        /**
+         * Prepares the buffer to be read from.  {@link #writable()} must be called afterwards.
+         *
+         * @return the buffer.
+         */
+        ByteBuffer readable() {
+            if (!owned) {
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        /**
+         * Restores the buffer after {@link #readable()}.
+         */
+        void writable() {
+            if (!owned) {
+                buffer.compact();
+            }
+        }
+
+        /**
+         * Sends this chunk to the recipient.
+         *
+         * @return true if the chunk was fully sent.
+         */
+        boolean send(ByteBufferConsumer recipient) throws IOException {
+            final ByteBuffer readable = readable();
+            try {
+                recipient.accept(readable);
+                return !readable.hasRemaining();
+            } finally {
+                writable();
+            }
+        }
+
+        void release() {
+            if (release != null) {
+                release.run();
+            }
+        }
+    }
 }
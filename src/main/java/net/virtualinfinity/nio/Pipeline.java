@@ -0,0 +1,200 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A chain of {@link PipelineStage}s between a socket and the application.
+ *
+ * <p>
+ * Stages are ordered from the socket to the application.  Data received from the socket is passed to
+ * {@link #accept(ByteBuffer)}, and flows through each stage's {@link PipelineStage#inbound(ByteBuffer, ByteBufferConsumer)}
+ * from first to last, and then to the receiver.  Data written by the application with {@link #write(ByteBuffer)}
+ * flows through each stage's {@link PipelineStage#outbound(ByteBuffer, ByteBufferConsumer)} from last to first, and
+ * then is appended to the output buffer.
+ *
+ * <p>
+ * Stages may be added and removed at any time, including from within a stage.  A change takes effect for the next
+ * buffer that enters a stage.
+ *
+ * <p>
+ * <strong>Warning:</strong> This class is not thread-safe.
+ *
+ * @see SocketSelectionActions#SocketSelectionActions(SocketChannelInterface, ConnectionListener, Pipeline, int, boolean)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class Pipeline implements ByteBufferConsumer {
+    private final List<PipelineStage> stages = new ArrayList<>();
+    private final ByteBufferConsumer receiver;
+    private final OutputBuffer outputBuffer;
+    private final ByteBufferConsumer outputSink;
+    private ByteBufferConsumer inboundHead;
+    private ByteBufferConsumer outboundHead;
+
+    /**
+     * Constructs an empty pipeline.
+     *
+     * @param receiver The object that will receive data after it has passed through all of the stages.
+     * @param outputBuffer The output buffer that written data is appended to after it has passed through all of the stages.
+     */
+    public Pipeline(ByteBufferConsumer receiver, OutputBuffer outputBuffer) {
+        this.receiver = receiver;
+        this.outputBuffer = outputBuffer;
+        this.outputSink = outputBuffer::append;
+        link();
+    }
+
+    /**
+     * Adds a stage closest to the socket.
+     *
+     * @param stage the stage.
+     *
+     * @return this
+     */
+    public Pipeline addFirst(PipelineStage stage) {
+        return add(0, stage);
+    }
+
+    /**
+     * Adds a stage closest to the application.
+     *
+     * @param stage the stage.
+     *
+     * @return this
+     */
+    public Pipeline addLast(PipelineStage stage) {
+        return add(stages.size(), stage);
+    }
+
+    /**
+     * Adds a stage immediately on the application side of another stage.
+     *
+     * @param existing the stage to add after.
+     * @param stage the stage to add.
+     *
+     * @return this
+     *
+     * @throws IllegalArgumentException if existing is not in this pipeline.
+     */
+    public Pipeline addAfter(PipelineStage existing, PipelineStage stage) {
+        final int index = stages.indexOf(existing);
+        if (index < 0) {
+            throw new IllegalArgumentException("Stage is not in this pipeline");
+        }
+        return add(index + 1, stage);
+    }
+
+    private Pipeline add(int index, PipelineStage stage) {
+        if (stage == null) {
+            throw new NullPointerException("stage");
+        }
+        stages.add(index, stage);
+        link();
+        stage.added(this);
+        return this;
+    }
+
+    /**
+     * Removes a stage from this pipeline.
+     *
+     * @param stage the stage to remove.
+     *
+     * @return true if the stage was removed, false if it was not in this pipeline.
+     */
+    public boolean remove(PipelineStage stage) {
+        if (!stages.remove(stage)) {
+            return false;
+        }
+        link();
+        stage.removed(this);
+        return true;
+    }
+
+    /**
+     * @return the stages, from the socket to the application.
+     */
+    public List<PipelineStage> stages() {
+        return Collections.unmodifiableList(new ArrayList<>(stages));
+    }
+
+    /**
+     * @return the output buffer at the socket end of the pipeline.
+     */
+    public OutputBuffer outputBuffer() {
+        return outputBuffer;
+    }
+
+    /**
+     * Passes data received from the socket through the inbound stages to the receiver.
+     *
+     * @param src the received data.
+     *
+     * @throws IOException if a stage or the receiver does.
+     */
+    @Override
+    public void accept(ByteBuffer src) throws IOException {
+        inboundHead.accept(src);
+    }
+
+    /**
+     * Passes data from the application through the outbound stages to the output buffer.
+     *
+     * @param data the data to write.
+     *
+     * @throws IOException if a stage does.
+     */
+    public void write(ByteBuffer data) throws IOException {
+        outboundHead.accept(data);
+    }
+
+    /**
+     * Rebuilds the links between stages.  Each stage gets a node which knows the next node in each direction, so
+     * passing data along doesn't require any lookup or allocation.
+     */
+    private void link() {
+        ByteBufferConsumer inbound = receiver;
+        for (int index = stages.size() - 1; index >= 0; --index) {
+            inbound = new InboundNode(stages.get(index), inbound);
+        }
+        ByteBufferConsumer outbound = outputSink;
+        for (final PipelineStage stage : stages) {
+            outbound = new OutboundNode(stage, outbound);
+        }
+        inboundHead = inbound;
+        outboundHead = outbound;
+    }
+
+    private static final class InboundNode implements ByteBufferConsumer {
+        private final PipelineStage stage;
+        private final ByteBufferConsumer next;
+
+        InboundNode(PipelineStage stage, ByteBufferConsumer next) {
+            this.stage = stage;
+            this.next = next;
+        }
+
+        @Override
+        public void accept(ByteBuffer src) throws IOException {
+            stage.inbound(src, next);
+        }
+    }
+
+    private static final class OutboundNode implements ByteBufferConsumer {
+        private final PipelineStage stage;
+        private final ByteBufferConsumer next;
+
+        OutboundNode(PipelineStage stage, ByteBufferConsumer next) {
+            this.stage = stage;
+            this.next = next;
+        }
+
+        @Override
+        public void accept(ByteBuffer src) throws IOException {
+            stage.outbound(src, next);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A stage of a {@link Pipeline}, which can inspect or transform data as it passes between the socket and the
+ * application.
+ *
+ * <p>
+ * Buffers are passed through the pipeline by reference.  A stage which doesn't change the data should pass the same
+ * buffer on to the next stage.  A buffer is only valid for the duration of the call, so a stage that needs to keep
+ * data for later must copy it.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public interface PipelineStage {
+    /**
+     * Handles data received from the socket, on its way to the application.  The default implementation passes the
+     * data on unchanged.
+     *
+     * @param data the data.
+     * @param next the next stage towards the application.
+     *
+     * @throws IOException if there is an error processing the data.
+     */
+    default void inbound(ByteBuffer data, ByteBufferConsumer next) throws IOException {
+        next.accept(data);
+    }
+
+    /**
+     * Handles data written by the application, on its way to the socket.  The default implementation passes the
+     * data on unchanged.
+     *
+     * @param data the data.
+     * @param next the next stage towards the socket.
+     *
+     * @throws IOException if there is an error processing the data.
+     */
+    default void outbound(ByteBuffer data, ByteBufferConsumer next) throws IOException {
+        next.accept(data);
+    }
+
+    /**
+     * Called when this stage is added to a pipeline.
+     *
+     * @param pipeline the pipeline.
+     */
+    default void added(Pipeline pipeline) {
+    }
+
+    /**
+     * Called when this stage is removed from a pipeline.
+     *
+     * @param pipeline the pipeline.
+     */
+    default void removed(Pipeline pipeline) {
+    }
+}
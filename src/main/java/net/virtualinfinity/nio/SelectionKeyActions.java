@@ -18,7 +18,8 @@ public interface SelectionKeyActions extends SelectionKeyHandler {
     int interestOps();
 
     /**
-     * Called to inform the handler of the the selection key.
+     * Called to inform the handler of the the selection key.  This may be called again with a new key if the event
+     * loop rebuilds its selector.
      *
      * @param selectionKey the selection key.
      */
@@ -9,6 +9,16 @@ public interface SelectionKeyInterface {
     boolean isAcceptable();
     boolean isReadable();
     boolean isValid();
+    /**
+     * @return the interest set most recently given to {@link #interestOps(int)}, which may not have been applied to
+     *         the underlying key yet.
+     *
+     * @throws UnsupportedOperationException if this implementation doesn't track its interest set.  This is the
+     *         default, so that implementations written before this method was added still compile.
+     */
+    default int interestOps() {
+        throw new UnsupportedOperationException("interestOps");
+    }
     void interestOps(int ops);
     void cancel();
 }
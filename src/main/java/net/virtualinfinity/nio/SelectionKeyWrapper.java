@@ -1,15 +1,48 @@
 package net.virtualinfinity.nio;
 
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 
 /**
+ * Wraps a {@link SelectionKey}, keeping track of the interest set so that updates that don't change anything are
+ * skipped.  On Linux, each change to a key's interest set can cost an <code>epoll_ctl</code> system call.
+ *
+ * <p>
+ * When the key belongs to an {@link EventLoop}, changes made from the event loop thread are accumulated, and applied
+ * once per loop iteration, just before the selector is next blocked on.  A key which changes several times while
+ * handling a single iteration (or changes and then changes back) is then updated at most once.  Changes made from
+ * other threads are applied immediately.
+ *
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
 public class SelectionKeyWrapper implements SelectionKeyInterface {
     private final SelectionKey selectionKey;
+    private final EventLoop eventLoop;
+    private final Runnable applyInterestOps = this::applyInterestOps;
+    /**
+     * The interest set most recently requested.  Written from any thread, and only ever applied to the key while
+     * holding this wrapper's lock, so that the key ends up with the last value written.
+     */
+    private volatile int interestOps;
+    /**
+     * Only accessed from the event loop thread.
+     */
+    private boolean updateQueued;
 
     public SelectionKeyWrapper(SelectionKey selectionKey) {
+        this(selectionKey, null);
+    }
+
+    /**
+     * Creates a wrapper which defers interest updates made from the event loop thread until the end of the iteration.
+     *
+     * @param selectionKey the key.
+     * @param eventLoop the event loop whose selector the key belongs to.  May be null to apply changes immediately.
+     */
+    SelectionKeyWrapper(SelectionKey selectionKey, EventLoop eventLoop) {
         this.selectionKey = selectionKey;
+        this.eventLoop = eventLoop;
+        this.interestOps = selectionKey.interestOps();
     }
 
     @Override
@@ -37,9 +70,44 @@ public class SelectionKeyWrapper implements SelectionKeyInterface {
         return selectionKey.isValid();
     }
 
+    @Override
+    public int interestOps() {
+        return interestOps;
+    }
+
     @Override
     public void interestOps(int ops) {
-        selectionKey.interestOps(ops);
+        if (ops == interestOps) {
+            return;
+        }
+        if (eventLoop != null && eventLoop.inEventLoop()) {
+            interestOps = ops;
+            if (!updateQueued) {
+                updateQueued = true;
+                eventLoop.invokeBeforeSelect(applyInterestOps);
+            }
+        } else {
+            synchronized (this) {
+                interestOps = ops;
+                //noinspection MagicConstant
+                selectionKey.interestOps(ops);
+            }
+        }
+    }
+
+    private void applyInterestOps() {
+        updateQueued = false;
+        try {
+            synchronized (this) {
+                final int ops = interestOps;
+                if (selectionKey.isValid() && selectionKey.interestOps() != ops) {
+                    //noinspection MagicConstant
+                    selectionKey.interestOps(ops);
+                }
+            }
+        } catch (final CancelledKeyException e) {
+            // Cancelled since the update was queued, so there is nothing to update.
+        }
     }
 
     @Override
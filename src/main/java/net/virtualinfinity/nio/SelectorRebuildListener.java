@@ -0,0 +1,20 @@
+package net.virtualinfinity.nio;
+
+/**
+ * Notified when an {@link EventLoop} replaces its selector, after detecting that it was repeatedly returning from
+ * select early without any selected keys.
+ *
+ * @see EventLoop#setSelectorRebuildListener(SelectorRebuildListener)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface SelectorRebuildListener {
+    /**
+     * Called from the event loop thread after the selector has been rebuilt.
+     *
+     * @param prematureSelects the number of consecutive premature returns that triggered the rebuild.
+     * @param channels the number of channels that were registered with the new selector.
+     */
+    void selectorRebuilt(int prematureSelects, int channels);
+}
@@ -0,0 +1,81 @@
+package net.virtualinfinity.nio;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An executor which runs its tasks one at a time, in the order they were submitted, on a shared delegate executor.
+ * This gives per-connection ordering on a worker pool, without dedicating a thread to each connection.
+ *
+ * <p>
+ * Each task happens-before the next task starts, so tasks may share state without further synchronization.  At most
+ * {@value #MAXIMUM_BATCH} tasks are run per delegate task, so that a busy executor doesn't monopolize a worker thread.
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class SerialExecutor implements Executor {
+    private static final int MAXIMUM_BATCH = 16;
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drain = this::drain;
+
+    /**
+     * Creates a serial executor.
+     *
+     * @param delegate the executor which runs the tasks.
+     */
+    public SerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Queues the command, to be run after all previously submitted commands.
+     *
+     * @param command the command.
+     *
+     * @throws RejectedExecutionException if the delegate rejects the task.  The command remains queued, and runs
+     *         with the next command that is accepted.
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("command");
+        }
+        tasks.add(command);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                delegate.execute(drain);
+            } catch (final RejectedExecutionException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int count = 0; count < MAXIMUM_BATCH; ++count) {
+                final Runnable task = tasks.poll();
+                if (task == null) {
+                    return;
+                }
+                task.run();
+            }
+        } finally {
+            scheduled.set(false);
+            // Catches tasks added after the last poll, and the remainder of a full batch.
+            schedule();
+        }
+    }
+}
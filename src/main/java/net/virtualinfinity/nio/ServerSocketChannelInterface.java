@@ -1,15 +1,51 @@
 package net.virtualinfinity.nio;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.NetworkChannel;
 import java.nio.channels.SelectableChannel;
-import java.nio.channels.SocketChannel;
 
 /**
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
-public interface ServerSocketChannelInterface {
+public interface ServerSocketChannelInterface extends Closeable {
     void bind(InetSocketAddress address, int backlog) throws IOException;
+
+    /**
+     * Binds to any kind of socket address, such as a Unix domain socket address.  The default implementation only
+     * supports {@link InetSocketAddress}.
+     *
+     * @param address the address.
+     * @param backlog the maximum number of pending connections.
+     *
+     * @throws IOException if the address can't be bound, or its type isn't supported.
+     */
+    default void bind(SocketAddress address, int backlog) throws IOException {
+        if (!(address instanceof InetSocketAddress)) {
+            throw new IOException("Unsupported address type: " + address.getClass().getName());
+        }
+        bind((InetSocketAddress) address, backlog);
+    }
+
+    default void configureBlocking(boolean blocking) throws IOException {
+        selectableChannel().configureBlocking(blocking);
+    }
+
+    default SocketAddress getLocalAddress() throws IOException {
+        final SelectableChannel channel = selectableChannel();
+        if (!(channel instanceof NetworkChannel)) {
+            throw new IOException("Channel has no local address");
+        }
+        return ((NetworkChannel) channel).getLocalAddress();
+    }
+
     SocketChannelInterface accept() throws IOException;
     SelectableChannel selectableChannel();
+
+    @Override
+    default void close() throws IOException {
+        selectableChannel().close();
+    }
 }
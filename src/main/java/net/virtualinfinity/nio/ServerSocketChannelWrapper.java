@@ -2,6 +2,8 @@ package net.virtualinfinity.nio;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
@@ -11,17 +13,53 @@ import java.nio.channels.SocketChannel;
  */
 public class ServerSocketChannelWrapper implements ServerSocketChannelInterface {
     public static final ChannelProvider<ServerSocketChannelInterface> PROVIDER = () -> new ServerSocketChannelWrapper(ServerSocketChannel.open());
+    /**
+     * Provides Unix domain server socket channels.
+     * @see UnixDomainSockets
+     */
+    public static final ChannelProvider<ServerSocketChannelInterface> UNIX_PROVIDER = () -> provider(UnixDomainSockets.protocolFamily()).open();
     private final ServerSocketChannel channel;
 
     public ServerSocketChannelWrapper(ServerSocketChannel channel) {
         this.channel = channel;
     }
 
+    /**
+     * Creates a provider of channels for the given protocol family.
+     *
+     * @param family the protocol family.
+     *
+     * @return the provider.
+     */
+    public static ChannelProvider<ServerSocketChannelInterface> provider(ProtocolFamily family) {
+        return () -> new ServerSocketChannelWrapper(UnixDomainSockets.openServerSocketChannel(family));
+    }
+
     @Override
     public void bind(InetSocketAddress address, int backlog) throws IOException {
         channel.bind(address, backlog);
     }
 
+    @Override
+    public void bind(SocketAddress address, int backlog) throws IOException {
+        channel.bind(address, backlog);
+    }
+
+    @Override
+    public void configureBlocking(boolean blocking) throws IOException {
+        channel.configureBlocking(blocking);
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
     @Override
     public SocketChannelInterface accept() throws IOException {
         final SocketChannel accept = channel.accept();
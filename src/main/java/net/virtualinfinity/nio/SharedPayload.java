@@ -0,0 +1,98 @@
+package net.virtualinfinity.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable, reference counted payload which can be appended to many {@link OutputBuffer}s without copying.
+ * Each output buffer gets its own read-only view of the same memory, and holds a reference until it has written
+ * the payload, or discarded it.
+ *
+ * <p>
+ * The creator holds the first reference, and must call {@link #release()} once it has finished appending the payload.
+ * Once every reference has been released, the release callback is called, for example to return the buffer to a
+ * {@link BufferPool}.
+ *
+ * <p>
+ * This class is thread safe, so the same payload can be appended to output buffers on different event loops.
+ *
+ * @see BroadcastGroup
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class SharedPayload {
+    private final ByteBuffer data;
+    private final Runnable release;
+    private final Runnable releaseReference = this::release;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * Creates a shared payload.  The data between its position and limit must not be modified until release is called.
+     *
+     * @param data the payload.
+     * @param release called once the payload is no longer referenced.  May be null.
+     */
+    public SharedPayload(ByteBuffer data, Runnable release) {
+        this.data = data.asReadOnlyBuffer();
+        this.release = release;
+    }
+
+    /**
+     * @return the size of the payload in bytes.
+     */
+    public int size() {
+        return data.remaining();
+    }
+
+    /**
+     * Appends the payload to the output buffer, which takes a reference until it no longer needs the payload.
+     *
+     * @param outputBuffer the output buffer.
+     *
+     * @throws IllegalStateException if the payload has already been fully released.
+     *
+     * @see OutputBuffer#appendShared(ByteBuffer, Runnable)
+     */
+    public void appendTo(OutputBuffer outputBuffer) {
+        retain();
+        outputBuffer.appendShared(data.duplicate(), releaseReference);
+    }
+
+    /**
+     * Takes an additional reference to the payload.
+     *
+     * @throws IllegalStateException if the payload has already been fully released.
+     */
+    public void retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Payload has been released");
+            }
+        } while (!references.compareAndSet(count, count + 1));
+    }
+
+    /**
+     * Releases a reference to the payload.
+     *
+     * @throws IllegalStateException if the payload has already been fully released.
+     */
+    public void release() {
+        final int count = references.decrementAndGet();
+        if (count == 0) {
+            if (release != null) {
+                release.run();
+            }
+        } else if (count < 0) {
+            throw new IllegalStateException("Payload has been released");
+        }
+    }
+
+    /**
+     * @return the number of references currently held.
+     */
+    public int referenceCount() {
+        return Math.max(0, references.get());
+    }
+}
@@ -16,7 +16,40 @@ public interface SocketChannelInterface extends Closeable{
     boolean finishConnect() throws IOException;
     boolean isConnected();
     int write(ByteBuffer byteBuffer) throws IOException;
+
+    /**
+     * Writes a sequence of buffers, as {@link java.nio.channels.GatheringByteChannel#write(ByteBuffer[], int, int)}.
+     * The default implementation writes each buffer in turn, stopping at the first one which isn't fully written.
+     *
+     * @param srcs the buffers.
+     * @param offset the index of the first buffer to write.
+     * @param length the number of buffers to write.
+     *
+     * @return the number of bytes written.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    default long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long written = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            written += write(srcs[i]);
+            if (srcs[i].hasRemaining()) {
+                break;
+            }
+        }
+        return written;
+    }
     int read(ByteBuffer inputBuffer) throws IOException;
+
+    /**
+     * Shuts down the connection for writing, without closing the channel, as {@link java.nio.channels.SocketChannel#shutdownOutput()}.
+     * The default implementation doesn't support half-closed connections.
+     *
+     * @throws IOException if an I/O error occurs, or the channel can't be half-closed.
+     */
+    default void shutdownOutput() throws IOException {
+        throw new IOException("Half-close is not supported by " + getClass().getName());
+    }
     void close() throws IOException;
     void configureBlocking(boolean blocking) throws IOException;
     boolean connect(SocketAddress address) throws IOException;
@@ -1,6 +1,7 @@
 package net.virtualinfinity.nio;
 
 import java.io.IOException;
+import java.net.ProtocolFamily;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
@@ -11,12 +12,28 @@ import java.nio.channels.SocketChannel;
  */
 public class SocketChannelWrapper implements SocketChannelInterface {
     public static final ChannelProvider<SocketChannelInterface> PROVIDER = () -> new SocketChannelWrapper(java.nio.channels.SocketChannel.open());
+    /**
+     * Provides Unix domain socket channels.
+     * @see UnixDomainSockets
+     */
+    public static final ChannelProvider<SocketChannelInterface> UNIX_PROVIDER = () -> provider(UnixDomainSockets.protocolFamily()).open();
     private final SocketChannel channel;
 
     public SocketChannelWrapper(SocketChannel channel) {
         this.channel = channel;
     }
 
+    /**
+     * Creates a provider of channels for the given protocol family.
+     *
+     * @param family the protocol family.
+     *
+     * @return the provider.
+     */
+    public static ChannelProvider<SocketChannelInterface> provider(ProtocolFamily family) {
+        return () -> new SocketChannelWrapper(UnixDomainSockets.openSocketChannel(family));
+    }
+
     @Override
     public SocketChannel selectableChannel() {
         return channel;
@@ -47,11 +64,21 @@ public class SocketChannelWrapper implements SocketChannelInterface {
         return channel.write(byteBuffer);
     }
 
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return channel.write(srcs, offset, length);
+    }
+
     @Override
     public int read(ByteBuffer inputBuffer) throws IOException {
         return channel.read(inputBuffer);
     }
 
+    @Override
+    public void shutdownOutput() throws IOException {
+        channel.shutdownOutput();
+    }
+
     @Override
     public void close() throws IOException {
         channel.close();
@@ -4,18 +4,40 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
  */
 public class SocketSelectionActions implements SelectionKeyActions {
+    private static final TokenBucket[] UNLIMITED = new TokenBucket[0];
+    /**
+     * The most a throttled read or write waits for, about one TCP segment, so limited traffic trickles out steadily
+     * instead of in bursts the size of the whole backlog.
+     */
+    private static final int THROTTLE_QUANTUM = 1460;
     private final SocketChannelInterface channel;
     private final ConnectionListener connectionListener;
     private final ByteBufferConsumer receiver;
     private final boolean sendAllBeforeReading;
     private final ByteBuffer inputBuffer;
     private final OutputBuffer outputBuffer;
+    private final BufferingSocketChannelInterface bufferingChannel;
+    private final Runnable newDataListener = this::newDataAvailable;
+    private final Runnable appendListener = this::dataAppended;
     private SelectionKeyInterface selectionKey;
+    private EventLoop eventLoop;
+    private boolean eagerWrite;
+    private boolean corking;
+    private long corkFlushThreshold;
+    private boolean corkedFlushScheduled;
+    private boolean readingSuspended;
+    private final LimitedWriter limitedWriter = new LimitedWriter();
+    private TokenBucket[] readLimiters = UNLIMITED;
+    private TokenBucket[] writeLimiters = UNLIMITED;
+    private boolean readThrottled;
+    private boolean writeThrottled;
+    private TrafficTap trafficTap;
 
     /**
      * Construct a new SocketSelectionActions, which will be able to manage finishing connections, and transferring data
@@ -35,10 +57,138 @@ public class SocketSelectionActions implements SelectionKeyActions {
         this.outputBuffer = outputBuffer;
         this.sendAllBeforeReading = sendAllBeforeReading;
         this.inputBuffer = ByteBuffer.allocateDirect(inputBufferSize);
+        this.bufferingChannel = channel instanceof BufferingSocketChannelInterface ? (BufferingSocketChannelInterface) channel : null;
+    }
+
+    /**
+     * Construct a new SocketSelectionActions which passes data through a {@link Pipeline}.  Received data enters the
+     * pipeline's inbound stages, and the pipeline's output buffer is sent over the socket.
+     *
+     * @param channel the channel.
+     * @param connectionListener The connection listener to be notified about connections.
+     * @param pipeline The pipeline which will receive data read from the socket, and provides the output buffer.
+     * @param inputBufferSize The input buffer size.
+     * @param sendAllBeforeReading Whether or not the outputBuffer should be fully flushed before new input is processed.
+     */
+    public SocketSelectionActions(SocketChannelInterface channel, ConnectionListener connectionListener, Pipeline pipeline, int inputBufferSize, boolean sendAllBeforeReading) {
+        this(channel, connectionListener, pipeline, pipeline.outputBuffer(), inputBufferSize, sendAllBeforeReading);
+    }
+
+
+    /**
+     * Sets whether data appended to an empty output buffer should be written to the channel immediately, rather than
+     * waiting for the selector to report the channel as writable.  This saves a loop iteration of latency for
+     * request/response traffic.  Only the data that could not be written is left buffered, with interest in
+     * {@link SelectionKey#OP_WRITE}.
+     *
+     * <p>
+     * If the immediate write fails, the connection listener is told the connection was
+     * {@link ConnectionListener#disconnected() disconnected}, and the channel is closed straight away, just as when a
+     * write fails during selection.
+     *
+     * @param eagerWrite true to write immediately.
+     */
+    public void setEagerWrite(boolean eagerWrite) {
+        this.eagerWrite = eagerWrite;
+    }
+
+    public boolean isEagerWrite() {
+        return eagerWrite;
+    }
+
+    /**
+     * Sets whether output should be corked.  While corked, appended data isn't written as it arrives.  Instead, all
+     * pending output is written with a single gathering write at the end of the event loop iteration, after all
+     * selected keys and events have been handled, so that many small appends are sent together.  Corking takes
+     * precedence over {@link #setEagerWrite(boolean) eager writes}.
+     *
+     * <p>
+     * Corking requires the actions to have been registered with {@link #register(EventLoop)}.
+     *
+     * @param corking true to cork output.
+     * @param flushThreshold the number of pending bytes that causes an immediate flush, rather than waiting for the
+     *                       end of the iteration.
+     */
+    public void setCorking(boolean corking, long flushThreshold) {
+        this.corking = corking;
+        this.corkFlushThreshold = flushThreshold;
+    }
+
+    public boolean isCorking() {
+        return corking;
+    }
+
+    /**
+     * Stops reading from the channel until {@link #resumeReading()} is called.  Data already read is still passed to
+     * the receiver.  Must be called from the event loop thread.
+     */
+    public void suspendReading() {
+        readingSuspended = true;
+        updateInterests();
+    }
+
+    /**
+     * Resumes reading from the channel after {@link #suspendReading()}.  Must be called from the event loop thread.
+     */
+    public void resumeReading() {
+        readingSuspended = false;
+        if (bufferingChannel != null) {
+            // Input the channel buffered while reading was suspended won't be signalled by the selector.
+            readinessChanged();
+        } else {
+            updateInterests();
+        }
+    }
+
+    public boolean isReadingSuspended() {
+        return readingSuspended;
+    }
+
+    /**
+     * Sets the rate limiters consulted before each read.  Each read is limited to the tokens available in every
+     * limiter, so a connection's own limiter can be combined with limiters shared by other connections.  When any
+     * limiter runs out, interest in {@link SelectionKey#OP_READ} is dropped, and restored with
+     * {@link EventLoop#invokeAfter(Runnable, long, TimeUnit)} once tokens are available again.
+     *
+     * <p>
+     * Rate limiting requires the actions to have been registered with {@link #register(EventLoop)}.
+     *
+     * @param limiters the limiters.  None to stop limiting.
+     */
+    public void setReadLimiters(TokenBucket... limiters) {
+        this.readLimiters = limiters.clone();
+    }
+
+    /**
+     * Sets the rate limiters consulted before each write of the output buffer.  When any limiter runs out, interest
+     * in {@link SelectionKey#OP_WRITE} is dropped, and restored with
+     * {@link EventLoop#invokeAfter(Runnable, long, TimeUnit)} once tokens are available again.
+     *
+     * <p>
+     * For a {@link BufferingSocketChannelInterface}, such as TLS, the limit applies to the data before the channel
+     * transforms it.
+     *
+     * @param limiters the limiters.  None to stop limiting.
+     *
+     * @see #setReadLimiters(TokenBucket...)
+     */
+    public void setWriteLimiters(TokenBucket... limiters) {
+        this.writeLimiters = limiters.clone();
     }
 
+    /**
+     * Sets a tap which observes every read from and write to the channel.  Taps are meant to be cheap, such as
+     * {@link TrafficJournal#tap(long)}.  While tapped, output is written one buffer at a time rather than with gathering
+     * writes.
+     *
+     * @param trafficTap the tap, or null to remove it.
+     */
+    public void setTrafficTap(TrafficTap trafficTap) {
+        this.trafficTap = trafficTap;
+    }
 
     public void register(EventLoop loop) throws ClosedChannelException {
+        this.eventLoop = loop;
         loop.registerHandler(channel().selectableChannel(), this);
     }
 
@@ -51,16 +201,24 @@ public class SocketSelectionActions implements SelectionKeyActions {
         if (interestedInRead()) {
             interest |= SelectionKey.OP_READ;
         }
-        return interest;
+        return bufferingChannel != null ? bufferingChannel.adjustInterestOps(interest) : interest;
     }
 
     @Override
     public void setSelectionKey(SelectionKeyInterface selectionKey) {
         if (this.selectionKey != null && selectionKey == null) {
-            outputBuffer.removeNewDataListener(this::updateInterests);
+            outputBuffer.removeNewDataListener(newDataListener);
+            outputBuffer.removeAppendListener(appendListener);
+            if (bufferingChannel != null) {
+                bufferingChannel.setReadinessListener(null);
+            }
         }
         if (this.selectionKey == null && selectionKey != null) {
-            outputBuffer.addNewDataListener(this::updateInterests);
+            outputBuffer.addNewDataListener(newDataListener);
+            outputBuffer.addAppendListener(appendListener);
+            if (bufferingChannel != null) {
+                bufferingChannel.setReadinessListener(this::readinessChanged);
+            }
         }
         this.selectionKey = selectionKey;
     }
@@ -115,16 +273,195 @@ public class SocketSelectionActions implements SelectionKeyActions {
 
     private void doReadWriteActions() throws IOException {
         if (isWritable()) {
-            outputBuffer.send(channel()::write);
+            writeOutput(false);
         }
         if (isReadable()) {
-            if (channel().read(inputBuffer) < 0) {
-                connectionListener.disconnected();
-                channel.close();
+            readAvailableInput();
+        } else if (bufferingChannel != null && selectionKey.isReadable()) {
+            // The channel asked for OP_READ on its own behalf.
+            bufferingChannel.readAhead();
+        }
+    }
+
+    /**
+     * Reads once from the channel, and then for as long as a buffering channel has more input than fit in the input
+     * buffer, since the selector won't signal that input.
+     */
+    private void readAvailableInput() throws IOException {
+        int read;
+        do {
+            read = readInput();
+        } while (read > 0 && channel.isOpen() && interestedInRead() && hasBufferedInput());
+    }
+
+    private int readInput() throws IOException {
+        final int start = inputBuffer.position();
+        final int read = isReadLimited() ? readLimited() : channel().read(inputBuffer);
+        if (read > 0 && trafficTap != null) {
+            capture(true, inputBuffer, start, start + read);
+        }
+        if (read < 0) {
+            connectionListener.disconnected();
+            channel.close();
+        }
+        inputBuffer.flip();
+        receiver.accept(inputBuffer);
+        inputBuffer.compact();
+        return read;
+    }
+
+    private int readLimited() throws IOException {
+        final int limit = inputBuffer.limit();
+        final long granted = TokenBucket.tryAcquire(readLimiters, inputBuffer.remaining());
+        if (granted == 0) {
+            if (inputBuffer.hasRemaining()) {
+                readThrottled = true;
+                eventLoop.invokeAfter(this::readUnthrottled, TokenBucket.nanosUntilAvailable(readLimiters, Math.min(inputBuffer.remaining(), THROTTLE_QUANTUM)), TimeUnit.NANOSECONDS);
+            }
+            return 0;
+        }
+        inputBuffer.limit(inputBuffer.position() + (int) granted);
+        int read = 0;
+        try {
+            read = channel().read(inputBuffer);
+        } finally {
+            inputBuffer.limit(limit);
+            TokenBucket.refund(readLimiters, granted - Math.max(0, read));
+        }
+        return read;
+    }
+
+    private boolean isReadLimited() {
+        return readLimiters.length != 0 && eventLoop != null;
+    }
+
+    private void readUnthrottled() {
+        readThrottled = false;
+        if (bufferingChannel != null) {
+            readinessChanged();
+        } else {
+            updateInterests();
+        }
+    }
+
+    /**
+     * Writes as much of the output buffer as the channel and rate limiters allow.
+     */
+    private void writeOutput(boolean gathering) throws IOException {
+        if (writeLimiters.length != 0 && eventLoop != null) {
+            writeLimited();
+        } else if (gathering && trafficTap == null) {
+            outputBuffer.sendGathering(channel()::write);
+        } else {
+            outputBuffer.send(this::write);
+        }
+        if (bufferingChannel != null) {
+            bufferingChannel.flush();
+        }
+    }
+
+    private void writeLimited() throws IOException {
+        if (writeThrottled) {
+            return;
+        }
+        final long wanted = outputBuffer.remaining();
+        final long granted = TokenBucket.tryAcquire(writeLimiters, wanted);
+        if (granted == 0) {
+            if (wanted != 0) {
+                writeThrottled = true;
+                eventLoop.invokeAfter(this::writeUnthrottled, TokenBucket.nanosUntilAvailable(writeLimiters, Math.min(wanted, THROTTLE_QUANTUM)), TimeUnit.NANOSECONDS);
+            }
+            return;
+        }
+        limitedWriter.allowance = granted;
+        try {
+            outputBuffer.send(limitedWriter);
+        } finally {
+            TokenBucket.refund(writeLimiters, limitedWriter.allowance);
+        }
+    }
+
+    private void writeUnthrottled() {
+        writeThrottled = false;
+        updateInterests();
+    }
+
+    private int write(ByteBuffer src) throws IOException {
+        final int start = src.position();
+        final int written = channel().write(src);
+        if (written > 0 && trafficTap != null) {
+            capture(false, src, start, start + written);
+        }
+        return written;
+    }
+
+    /**
+     * Passes the given range of the buffer to the tap, and then restores the buffer.
+     */
+    private void capture(boolean inbound, ByteBuffer buffer, int start, int end) {
+        final int position = buffer.position();
+        final int limit = buffer.limit();
+        buffer.limit(end);
+        buffer.position(start);
+        try {
+            trafficTap.captured(inbound, buffer);
+        } finally {
+            buffer.limit(limit);
+            buffer.position(position);
+        }
+    }
+
+    /**
+     * Writes to the channel, without writing more than the allowance.
+     */
+    private final class LimitedWriter implements ByteBufferConsumer {
+        private long allowance;
+
+        @Override
+        public void accept(ByteBuffer src) throws IOException {
+            if (allowance == 0) {
+                return;
+            }
+            final int limit = src.limit();
+            if (src.remaining() > allowance) {
+                src.limit(src.position() + (int) allowance);
+            }
+            try {
+                allowance -= write(src);
+            } finally {
+                src.limit(limit);
             }
-            inputBuffer.flip();
-            receiver.accept(inputBuffer);
-            inputBuffer.compact();
+        }
+    }
+
+    /**
+     * Called by a buffering channel when it can make progress outside of a selection, for example when a TLS
+     * handshake task has completed.
+     */
+    private void readinessChanged() {
+        try {
+            if (channel.isOpen() && channel.isConnected()) {
+                bufferingChannel.flush();
+                if (interestedInRead() && hasBufferedInput()) {
+                    readAvailableInput();
+                }
+            }
+        } catch (final IOException e) {
+            failedOutsideSelection();
+        } finally {
+            updateInterests();
+        }
+    }
+
+    /**
+     * Disconnects after an I/O failure outside of a selection, where there is no caller to report the exception to.
+     */
+    private void failedOutsideSelection() {
+        connectionListener.disconnected();
+        try {
+            channel.close();
+        } catch (final IOException ignored) {
+            // Already failed.
         }
     }
 
@@ -132,6 +469,50 @@ public class SocketSelectionActions implements SelectionKeyActions {
         return channel;
     }
 
+    private void newDataAvailable() {
+        if (isCorked()) {
+            return;
+        }
+        if (eagerWrite) {
+            writeEagerly(false);
+        }
+        updateInterests();
+    }
+
+    private void dataAppended() {
+        if (!isCorked()) {
+            return;
+        }
+        if (outputBuffer.remaining() >= corkFlushThreshold) {
+            writeEagerly(true);
+        }
+        if (!corkedFlushScheduled && outputBuffer.hasRemaining()) {
+            corkedFlushScheduled = true;
+            eventLoop.invokeBeforeSelect(this::flushCorked);
+        }
+    }
+
+    private void flushCorked() {
+        corkedFlushScheduled = false;
+        writeEagerly(true);
+        updateInterests();
+    }
+
+    private boolean isCorked() {
+        return corking && eventLoop != null;
+    }
+
+    private void writeEagerly(boolean gathering) {
+        if (selectionKey == null || !selectionKey.isValid() || !channel.isOpen() || channel.isConnectionPending() || !channel.isConnected()) {
+            return;
+        }
+        try {
+            writeOutput(gathering);
+        } catch (final IOException e) {
+            failedOutsideSelection();
+        }
+    }
+
     private void updateInterests() {
         if (selectionKey != null && selectionKey.isValid()) {
             //noinspection MagicConstant
@@ -144,7 +525,11 @@ public class SocketSelectionActions implements SelectionKeyActions {
     }
 
     private boolean isReadable() {
-        return interestedInRead() && selectionKey.isReadable();
+        return interestedInRead() && (selectionKey.isReadable() || hasBufferedInput());
+    }
+
+    private boolean hasBufferedInput() {
+        return bufferingChannel != null && bufferingChannel.hasBufferedInput();
     }
 
     protected boolean interestedInConnect() {
@@ -152,11 +537,12 @@ public class SocketSelectionActions implements SelectionKeyActions {
     }
 
     private boolean interestedInRead() {
-        return !sendAllBeforeReading || !interestedInWrite();
+        return !readingSuspended && !readThrottled && (!sendAllBeforeReading || !interestedInWrite());
     }
 
     private boolean interestedInWrite() {
-        return outputBuffer.hasRemaining();
+        // A corked flush will write first, and only needs OP_WRITE if it couldn't write everything.
+        return outputBuffer.hasRemaining() && !corkedFlushScheduled && !writeThrottled;
     }
 
 }
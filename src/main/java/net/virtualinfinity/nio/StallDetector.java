@@ -0,0 +1,139 @@
+package net.virtualinfinity.nio;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A watchdog which reports event loops that spend too long dispatching a single selected handler, event, or
+ * before-select action, or too long on a single iteration between selects.  A slow handler delays every other channel
+ * on its loop, and so do many handlers which are each fast but together take too long, so this makes those stalls
+ * visible with the stack trace of the loop thread.
+ *
+ * <p>
+ * While a loop is monitored, it records when each iteration and each dispatch starts with a single volatile write, so
+ * monitoring costs nothing extra when handlers are fast.  Loops which aren't monitored don't read the clock at all.
+ * The watchdog thread checks each monitored loop several times per threshold period.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class StallDetector implements Closeable {
+    private final long thresholdNanos;
+    private final StallListener listener;
+    private final List<Monitored> eventLoops = new CopyOnWriteArrayList<>();
+    private final Thread watchdog;
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts a stall detector.
+     *
+     * @param threshold how long a dispatch, or an iteration between selects, may run before it is reported.
+     * @param unit the unit of threshold.
+     * @param listener the listener to report stalls to.
+     */
+    public StallDetector(long threshold, TimeUnit unit, StallListener listener) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.listener = listener;
+        this.watchdog = new Thread(this::watch, "event-loop-stall-detector");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /**
+     * Starts monitoring an event loop.
+     *
+     * @param eventLoop the event loop.
+     */
+    public void monitor(EventLoop eventLoop) {
+        eventLoops.add(new Monitored(eventLoop));
+        eventLoop.stallMonitoringStarted();
+    }
+
+    /**
+     * Stops monitoring an event loop.
+     *
+     * @param eventLoop the event loop.
+     */
+    public void unmonitor(EventLoop eventLoop) {
+        for (final Monitored monitored : eventLoops) {
+            if (monitored.eventLoop == eventLoop && eventLoops.remove(monitored)) {
+                eventLoop.stallMonitoringStopped();
+            }
+        }
+    }
+
+    /**
+     * Stops the watchdog thread, and stops monitoring every event loop.
+     */
+    @Override
+    public void close() {
+        running = false;
+        watchdog.interrupt();
+        for (final Monitored monitored : eventLoops) {
+            unmonitor(monitored.eventLoop);
+        }
+    }
+
+    private void watch() {
+        final long interval = Math.max(TimeUnit.MILLISECONDS.toNanos(1), thresholdNanos / 4);
+        while (running) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(interval);
+            } catch (final InterruptedException e) {
+                continue;
+            }
+            eventLoops.forEach(this::check);
+        }
+    }
+
+    private void check(Monitored monitored) {
+        final EventLoop eventLoop = monitored.eventLoop;
+        final Thread thread = eventLoop.thread();
+        if (thread == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final long dispatchStart = eventLoop.dispatchStartNanos();
+        if (dispatchStart != 0 && dispatchStart != monitored.lastReported && now - dispatchStart >= thresholdNanos) {
+            final StackTraceElement[] stackTrace = thread.getStackTrace();
+            if (eventLoop.dispatchStartNanos() != dispatchStart) {
+                // Finished while the stack trace was captured, so the trace would be misleading.
+                return;
+            }
+            monitored.lastReported = dispatchStart;
+            // The slow dispatch is what made its iteration slow, so the iteration isn't reported as well.
+            monitored.lastIterationReported = eventLoop.iterationStartNanos();
+            listener.stalled(eventLoop, thread, now - dispatchStart, stackTrace);
+            return;
+        }
+        final long iterationStart = eventLoop.iterationStartNanos();
+        if (iterationStart != 0 && iterationStart != monitored.lastIterationReported && now - iterationStart >= thresholdNanos) {
+            final StackTraceElement[] stackTrace = thread.getStackTrace();
+            if (eventLoop.iterationStartNanos() != iterationStart) {
+                return;
+            }
+            monitored.lastIterationReported = iterationStart;
+            listener.iterationStalled(eventLoop, thread, now - iterationStart, stackTrace);
+        }
+    }
+
+    private static final class Monitored {
+        private final EventLoop eventLoop;
+        /**
+         * The dispatch start time that was last reported, so each stall is only reported once.
+         */
+        private long lastReported;
+        /**
+         * The iteration start time that was last reported.
+         */
+        private long lastIterationReported;
+
+        Monitored(EventLoop eventLoop) {
+            this.eventLoop = eventLoop;
+        }
+    }
+}
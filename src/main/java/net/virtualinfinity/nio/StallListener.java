@@ -0,0 +1,34 @@
+package net.virtualinfinity.nio;
+
+/**
+ * Notified by a {@link StallDetector} when an event loop has spent too long in a single handler or event, or in a
+ * single iteration between selects.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface StallListener {
+    /**
+     * Called from the watchdog thread, while the event loop is still stalled.  Each stalled dispatch is reported once.
+     *
+     * @param eventLoop the stalled event loop.
+     * @param thread the event loop's thread.
+     * @param stalledNanos how long the current dispatch had been running when the stack trace was captured.
+     * @param stackTrace the event loop thread's stack trace.
+     */
+    void stalled(EventLoop eventLoop, Thread thread, long stalledNanos, StackTraceElement[] stackTrace);
+
+    /**
+     * Called from the watchdog thread when an iteration has run too long between selects, although none of its
+     * dispatches did on its own.  Each stalled iteration is reported once.  By default, this calls
+     * {@link #stalled(EventLoop, Thread, long, StackTraceElement[])}.
+     *
+     * @param eventLoop the stalled event loop.
+     * @param thread the event loop's thread.
+     * @param stalledNanos how long the current iteration had been running when the stack trace was captured.
+     * @param stackTrace the event loop thread's stack trace, which shows whatever is running at the moment.
+     */
+    default void iterationStalled(EventLoop eventLoop, Thread thread, long stalledNanos, StackTraceElement[] stackTrace) {
+        stalled(eventLoop, thread, stalledNanos, stackTrace);
+    }
+}
@@ -0,0 +1,217 @@
+package net.virtualinfinity.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+
+/**
+ * Relays data in both directions between two connected channels on the same {@link EventLoop}, as a proxy does.
+ *
+ * <p>
+ * Each direction reads into a pooled buffer, which is then written directly to the other channel, so data is never
+ * copied between buffers.  A direction holds at most one buffer: while the other channel can't accept it, the relay
+ * stops reading from the source, so that a slow peer pushes back on a fast one rather than buffering without bound.
+ * Buffers are returned to the pool as soon as they have been fully written.
+ *
+ * <p>
+ * When one side reaches end of stream, the other side's output is shut down once everything read before it has been
+ * written, so half-closed connections are propagated.  Once both directions have finished, or either side fails,
+ * both channels are closed.  Channels which don't support {@link SocketChannelInterface#shutdownOutput()} are closed
+ * as soon as either side finishes.
+ *
+ * <p>
+ * <strong>Warning:</strong> This class must only be used from the event loop thread.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class TcpRelay implements Closeable {
+    private final EventLoop eventLoop;
+    private final BufferPool bufferPool;
+    private final Runnable closedListener;
+    private final Side first;
+    private final Side second;
+    private boolean closed;
+
+    /**
+     * Creates a relay.  Neither channel is read until {@link #start()} is called.
+     *
+     * @param eventLoop the event loop which will manage both channels.
+     * @param first a connected, non-blocking channel.
+     * @param second another connected, non-blocking channel.
+     * @param bufferPool the pool the buffers for each direction are acquired from.
+     * @param closedListener called once both channels have been closed.  May be null.
+     */
+    public TcpRelay(EventLoop eventLoop, SocketChannelInterface first, SocketChannelInterface second, BufferPool bufferPool, Runnable closedListener) {
+        this.eventLoop = eventLoop;
+        this.bufferPool = bufferPool;
+        this.closedListener = closedListener;
+        this.first = new Side(first);
+        this.second = new Side(second);
+        this.first.peer = this.second;
+        this.second.peer = this.first;
+    }
+
+    /**
+     * Registers both channels with the event loop, and starts relaying.
+     *
+     * @throws ClosedChannelException if either channel is closed.
+     */
+    public void start() throws ClosedChannelException {
+        eventLoop.registerHandler(first.channel.selectableChannel(), first);
+        eventLoop.registerHandler(second.channel.selectableChannel(), second);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes both channels, and releases any buffered data.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        first.close();
+        second.close();
+        if (closedListener != null) {
+            closedListener.run();
+        }
+    }
+
+    private void closeIfFinished() {
+        if (first.isFinished() && second.isFinished()) {
+            close();
+        }
+    }
+
+    /**
+     * One of the relayed channels, and the data read from it which hasn't been written to its peer yet.
+     */
+    private final class Side implements SelectionKeyActions {
+        private final SocketChannelInterface channel;
+        private Side peer;
+        private SelectionKeyInterface selectionKey;
+        /**
+         * Data read from this channel, ready to be written to the peer.  Null when there is none.
+         */
+        private ByteBuffer inbound;
+        private boolean inputShutdown;
+        private boolean outputShutdown;
+
+        Side(SocketChannelInterface channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int interestOps() {
+            int interest = 0;
+            if (!inputShutdown && inbound == null) {
+                interest |= SelectionKey.OP_READ;
+            }
+            if (peer.inbound != null) {
+                interest |= SelectionKey.OP_WRITE;
+            }
+            return interest;
+        }
+
+        @Override
+        public void setSelectionKey(SelectionKeyInterface selectionKey) {
+            this.selectionKey = selectionKey;
+        }
+
+        @Override
+        public void selected() {
+            if (closed) {
+                return;
+            }
+            try {
+                if (selectionKey.isWritable()) {
+                    peer.forward();
+                }
+                if (selectionKey.isReadable() && !inputShutdown && inbound == null) {
+                    read();
+                }
+            } catch (final IOException e) {
+                TcpRelay.this.close();
+                return;
+            }
+            closeIfFinished();
+            if (!closed) {
+                updateInterests();
+                peer.updateInterests();
+            }
+        }
+
+        private void read() throws IOException {
+            final ByteBuffer buffer = bufferPool.acquire();
+            final int read;
+            try {
+                read = channel.read(buffer);
+            } catch (final IOException e) {
+                bufferPool.release(buffer);
+                throw e;
+            }
+            if (read <= 0) {
+                bufferPool.release(buffer);
+                if (read < 0) {
+                    inputShutdown = true;
+                    forward();
+                }
+                return;
+            }
+            buffer.flip();
+            inbound = buffer;
+            forward();
+        }
+
+        /**
+         * Writes the data read from this channel to the peer, and propagates end of stream once it has all been
+         * written.
+         */
+        private void forward() throws IOException {
+            if (inbound != null) {
+                peer.channel.write(inbound);
+                if (inbound.hasRemaining()) {
+                    return;
+                }
+                bufferPool.release(inbound);
+                inbound = null;
+            }
+            if (inputShutdown && !peer.outputShutdown) {
+                peer.outputShutdown = true;
+                peer.channel.shutdownOutput();
+            }
+        }
+
+        /**
+         * @return true if this channel has reached end of stream, and everything read from it has been written.
+         */
+        private boolean isFinished() {
+            return inputShutdown && inbound == null;
+        }
+
+        private void updateInterests() {
+            if (selectionKey != null && selectionKey.isValid()) {
+                //noinspection MagicConstant
+                selectionKey.interestOps(interestOps());
+            }
+        }
+
+        private void close() {
+            if (inbound != null) {
+                bufferPool.release(inbound);
+                inbound = null;
+            }
+            try {
+                channel.close();
+            } catch (final IOException ignored) {
+                // Nothing more can be done with the channel.
+            }
+        }
+    }
+}
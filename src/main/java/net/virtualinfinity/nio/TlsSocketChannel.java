@@ -0,0 +1,531 @@
+package net.virtualinfinity.nio;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A non-blocking TLS layer over another socket channel, using an {@link SSLEngine}.
+ *
+ * <p>
+ * Reads return decrypted application data, and writes encrypt application data.  Handshakes, including renegotiation,
+ * are driven from the event loop as the channel is read and written.  {@link SocketSelectionActions} recognises this
+ * channel as a {@link BufferingSocketChannelInterface}, so existing receivers and {@link OutputBuffer}s work unchanged.
+ *
+ * <p>
+ * Delegated tasks from the engine (such as certificate validation) are run on the given executor, and the handshake
+ * resumes on the event loop once they complete.  The event loop is never blocked by them.
+ *
+ * <p>
+ * Network and application buffers are acquired from a {@link BufferPool} only while they hold data, so idle
+ * connections don't pin any buffers.  Encrypted records are accumulated in the network output buffer, and are only
+ * written to the underlying channel when it can not hold another record or on {@link #flush()}, so that several
+ * application records are sent with a single write.  A pool buffer size of several times
+ * {@link javax.net.ssl.SSLSession#getPacketBufferSize()} increases the batching.
+ *
+ * <p>
+ * <strong>Warning:</strong> This class is not thread-safe, and should only be used from the event loop thread.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class TlsSocketChannel implements BufferingSocketChannelInterface {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private final SocketChannelInterface delegate;
+    private final SSLEngine engine;
+    private final EventLoop eventLoop;
+    private final Executor delegatedTaskExecutor;
+    private final BufferPool pool;
+    private final int packetSize;
+    private final int applicationSize;
+    /**
+     * Encrypted data read from the network that hasn't been unwrapped, in write mode.
+     */
+    private ByteBuffer networkInput;
+    /**
+     * Encrypted data that hasn't been written to the network, in write mode.
+     */
+    private ByteBuffer networkOutput;
+    /**
+     * Decrypted data that hasn't been read by the application, in write mode.
+     */
+    private ByteBuffer applicationInput;
+    private boolean networkInputUnderflow;
+    private boolean tasksRunning;
+    private boolean inputShutdown;
+    /**
+     * Whether the underlying channel reached end of stream with part of a record unread.
+     */
+    private boolean inputTruncated;
+    private Runnable readinessListener;
+
+    /**
+     * Creates a TLS channel.  The engine should already be configured for client or server mode.
+     *
+     * @param delegate The underlying channel.
+     * @param engine The engine.
+     * @param eventLoop The event loop that manages the channel.
+     * @param delegatedTaskExecutor The executor that runs the engine's delegated tasks.
+     * @param pool The pool of buffers, which must be at least as large as the engine's packet and application buffer sizes.
+     *
+     * @throws SSLException if the handshake can not be started.
+     */
+    public TlsSocketChannel(SocketChannelInterface delegate, SSLEngine engine, EventLoop eventLoop, Executor delegatedTaskExecutor, BufferPool pool) throws SSLException {
+        this.delegate = delegate;
+        this.engine = engine;
+        this.eventLoop = eventLoop;
+        this.delegatedTaskExecutor = delegatedTaskExecutor;
+        this.pool = pool;
+        this.packetSize = engine.getSession().getPacketBufferSize();
+        this.applicationSize = engine.getSession().getApplicationBufferSize();
+        if (pool.bufferSize() < Math.max(packetSize, applicationSize)) {
+            throw new IllegalArgumentException("Pool buffer size must be at least " + Math.max(packetSize, applicationSize));
+        }
+        engine.beginHandshake();
+    }
+
+    /**
+     * @return the engine.
+     */
+    public SSLEngine engine() {
+        return engine;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = drainApplicationInput(dst);
+        if (!inputShutdown && dst.hasRemaining()) {
+            read += readAndUnwrap(dst);
+        }
+        releaseIfEmpty();
+        if (read == 0 && inputShutdown && isEmpty(applicationInput)) {
+            if (inputTruncated) {
+                throw new SSLException("Connection closed in the middle of a TLS record");
+            }
+            return -1;
+        }
+        return read;
+    }
+
+    /**
+     * Reads from the underlying channel to progress a handshake.  Any application data is kept in the channel.
+     *
+     * @throws IOException if the underlying channel does, or the connection was closed in the middle of a record.
+     */
+    @Override
+    public void readAhead() throws IOException {
+        if (!inputShutdown) {
+            readAndUnwrap(EMPTY);
+        }
+        releaseIfEmpty();
+        if (inputTruncated) {
+            throw new SSLException("Connection closed in the middle of a TLS record");
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (engine.isOutboundDone()) {
+            throw new ClosedChannelException();
+        }
+        progressHandshake();
+        if (tasksRunning || isHandshaking()) {
+            return 0;
+        }
+        final int start = src.position();
+        while (src.hasRemaining() && !tasksRunning) {
+            if (!ensureNetworkOutputSpace()) {
+                break;
+            }
+            final SSLEngineResult result = engine.wrap(src, networkOutput);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new ClosedChannelException();
+            }
+            if (result.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING &&
+                result.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.FINISHED) {
+                // Renegotiation started.
+                progressHandshake();
+                break;
+            }
+        }
+        return src.position() - start;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        progressHandshake();
+        flushNetworkOutput();
+        releaseIfEmpty();
+    }
+
+    @Override
+    public int adjustInterestOps(int requested) {
+        if (tasksRunning) {
+            return hasPendingOutput() ? SelectionKey.OP_WRITE : 0;
+        }
+        int ops = requested;
+        if (hasPendingOutput()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        switch (engine.getHandshakeStatus()) {
+            case NEED_WRAP:
+                ops |= SelectionKey.OP_WRITE;
+                break;
+            case NEED_UNWRAP:
+                if (!inputShutdown) {
+                    ops |= SelectionKey.OP_READ;
+                }
+                if (!hasPendingOutput()) {
+                    // Application data can't be written until the peer responds.
+                    ops &= ~SelectionKey.OP_WRITE;
+                }
+                break;
+            default:
+                break;
+        }
+        return ops;
+    }
+
+    @Override
+    public boolean hasBufferedInput() {
+        return !tasksRunning && (!isEmpty(applicationInput) || (!isEmpty(networkInput) && !networkInputUnderflow));
+    }
+
+    @Override
+    public void setReadinessListener(Runnable listener) {
+        this.readinessListener = listener;
+    }
+
+    /**
+     * Sends a close_notify to the peer, as far as the underlying channel will accept it, and closes the underlying channel.
+     *
+     * @throws IOException if the underlying channel does.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            engine.closeOutbound();
+            if (!tasksRunning && ensureNetworkOutputSpace()) {
+                engine.wrap(EMPTY, networkOutput);
+                flushNetworkOutput();
+            }
+        } catch (final IOException ignored) {
+            // Best effort only; the connection is being closed anyway.
+        } finally {
+            release();
+            delegate.close();
+        }
+    }
+
+    @Override
+    public SelectableChannel selectableChannel() {
+        return delegate.selectableChannel();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public boolean isConnectionPending() {
+        return delegate.isConnectionPending();
+    }
+
+    @Override
+    public boolean finishConnect() throws IOException {
+        return delegate.finishConnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public void configureBlocking(boolean blocking) throws IOException {
+        delegate.configureBlocking(blocking);
+    }
+
+    @Override
+    public boolean connect(SocketAddress address) throws IOException {
+        return delegate.connect(address);
+    }
+
+    /**
+     * Reads from the network and unwraps what it can.  At end of stream, any partial record left over can never be
+     * completed, so the input is shut down either way.
+     *
+     * @return the number of bytes decrypted directly into dst.
+     */
+    private int readAndUnwrap(ByteBuffer dst) throws IOException {
+        final boolean endOfStream = readNetwork() < 0;
+        final int read = unwrap(dst);
+        progressHandshake();
+        if (endOfStream && !tasksRunning && (isEmpty(networkInput) || networkInputUnderflow)) {
+            inputTruncated = !isEmpty(networkInput);
+            closeInbound();
+        }
+        return read;
+    }
+
+    /**
+     * Reads from the underlying channel into the network input buffer.
+     *
+     * @return the number of bytes read, or -1 at end of stream.
+     */
+    private int readNetwork() throws IOException {
+        if (networkInput == null) {
+            networkInput = pool.acquire();
+        }
+        final int read = delegate.read(networkInput);
+        if (read > 0) {
+            networkInputUnderflow = false;
+        }
+        return read;
+    }
+
+    /**
+     * Unwraps as much of the network input as possible.  Decrypted data goes directly into dst if it is large enough
+     * to hold a full record, otherwise into the application input buffer.
+     *
+     * @return the number of bytes decrypted directly into dst.
+     */
+    private int unwrap(ByteBuffer dst) throws IOException {
+        if (isEmpty(networkInput) || tasksRunning) {
+            return 0;
+        }
+        final int start = dst.position();
+        networkInput.flip();
+        try {
+            while (networkInput.hasRemaining() && !tasksRunning) {
+                final boolean direct = isEmpty(applicationInput) && dst.remaining() >= applicationSize;
+                if (!direct && applicationInput == null) {
+                    applicationInput = pool.acquire();
+                }
+                final ByteBuffer target = direct ? dst : applicationInput;
+                if (target.remaining() < applicationSize) {
+                    break;
+                }
+                final SSLEngineResult result = engine.unwrap(networkInput, target);
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    networkInputUnderflow = true;
+                    break;
+                }
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    inputShutdown = true;
+                    break;
+                }
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    break;
+                }
+                boolean wrapped = false;
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                } else if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    wrapped = wrapHandshake();
+                }
+                if (result.bytesConsumed() == 0 && result.bytesProduced() == 0 && !wrapped) {
+                    // The engine needs to send before it can read on, but the network output is full.  The handshake
+                    // resumes from flush() once the output drains.
+                    break;
+                }
+            }
+        } finally {
+            networkInput.compact();
+        }
+        return dst.position() - start + drainApplicationInput(dst);
+    }
+
+    /**
+     * Performs handshake steps which don't need more input from the network.
+     */
+    private void progressHandshake() throws IOException {
+        while (!tasksRunning) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_WRAP:
+                    if (!wrapHandshake()) {
+                        return;
+                    }
+                    break;
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    return;
+                case NEED_UNWRAP:
+                    if (isEmpty(networkInput) || networkInputUnderflow) {
+                        return;
+                    }
+                    final int before = networkInput.position();
+                    unwrapHandshake();
+                    if (networkInput.position() == before && engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                        return;
+                    }
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Wraps handshake messages while the engine needs to send, and there is room in the network output.  Doesn't
+     * touch the network input, so it is safe to call while unwrapping.
+     *
+     * @return true if the handshake progressed.
+     */
+    private boolean wrapHandshake() throws IOException {
+        boolean wrapped = false;
+        while (!tasksRunning && engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            if (!ensureNetworkOutputSpace()) {
+                break;
+            }
+            final SSLEngineResult result = engine.wrap(EMPTY, networkOutput);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED && !engine.isOutboundDone()) {
+                throw new SSLException("Engine closed during handshake");
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                break;
+            }
+            if (result.bytesProduced() == 0 && result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                // No progress, so wrapping again would spin.
+                break;
+            }
+            wrapped = true;
+            if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+            }
+        }
+        return wrapped;
+    }
+
+    private void unwrapHandshake() throws IOException {
+        if (applicationInput == null) {
+            applicationInput = pool.acquire();
+        }
+        networkInput.flip();
+        try {
+            final SSLEngineResult result = engine.unwrap(networkInput, applicationInput);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                networkInputUnderflow = true;
+            } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                inputShutdown = true;
+            }
+        } finally {
+            networkInput.compact();
+        }
+    }
+
+    private void runDelegatedTasks() {
+        final List<Runnable> tasks = new ArrayList<>();
+        for (Runnable task = engine.getDelegatedTask(); task != null; task = engine.getDelegatedTask()) {
+            tasks.add(task);
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        tasksRunning = true;
+        delegatedTaskExecutor.execute(() -> {
+            tasks.forEach(Runnable::run);
+            eventLoop.invokeLater(this::tasksCompleted);
+        });
+    }
+
+    private void tasksCompleted() {
+        tasksRunning = false;
+        if (readinessListener != null) {
+            readinessListener.run();
+        }
+    }
+
+    /**
+     * Makes sure there is room for a full record in the network output buffer, writing to the network if needed.
+     *
+     * @return true if there is room.
+     */
+    private boolean ensureNetworkOutputSpace() throws IOException {
+        if (networkOutput == null) {
+            networkOutput = pool.acquire();
+        }
+        if (networkOutput.remaining() < packetSize) {
+            flushNetworkOutput();
+        }
+        return networkOutput.remaining() >= packetSize;
+    }
+
+    private void flushNetworkOutput() throws IOException {
+        if (isEmpty(networkOutput)) {
+            return;
+        }
+        networkOutput.flip();
+        try {
+            delegate.write(networkOutput);
+        } finally {
+            networkOutput.compact();
+        }
+    }
+
+    private void closeInbound() {
+        inputShutdown = true;
+        try {
+            engine.closeInbound();
+        } catch (final SSLException ignored) {
+            // The peer closed the connection without a close_notify.  Treat it as end of stream.
+        }
+    }
+
+    private int drainApplicationInput(ByteBuffer dst) {
+        if (isEmpty(applicationInput)) {
+            return 0;
+        }
+        applicationInput.flip();
+        final int start = dst.position();
+        BufferUtils.putWhatFits(dst, applicationInput);
+        applicationInput.compact();
+        return dst.position() - start;
+    }
+
+    private boolean hasPendingOutput() {
+        return !isEmpty(networkOutput);
+    }
+
+    private boolean isHandshaking() {
+        final SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    private void releaseIfEmpty() {
+        if (networkInput != null && networkInput.position() == 0) {
+            pool.release(networkInput);
+            networkInput = null;
+        }
+        if (networkOutput != null && networkOutput.position() == 0) {
+            pool.release(networkOutput);
+            networkOutput = null;
+        }
+        if (applicationInput != null && applicationInput.position() == 0) {
+            pool.release(applicationInput);
+            applicationInput = null;
+        }
+    }
+
+    private void release() {
+        pool.release(networkInput);
+        pool.release(networkOutput);
+        pool.release(applicationInput);
+        networkInput = null;
+        networkOutput = null;
+        applicationInput = null;
+    }
+
+    private static boolean isEmpty(ByteBuffer buffer) {
+        return buffer == null || buffer.position() == 0;
+    }
+}
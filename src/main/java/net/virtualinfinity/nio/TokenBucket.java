@@ -0,0 +1,147 @@
+package net.virtualinfinity.nio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter, measured in bytes.  Tokens accumulate at a fixed rate, up to the bucket's capacity,
+ * which is the largest burst allowed after a quiet period.
+ *
+ * <p>
+ * A bucket can limit a single connection, or be shared by every connection on an event loop or in a group of event
+ * loops, to enforce a combined limit.  This class is thread safe.
+ *
+ * @see SocketSelectionActions#setReadLimiters(TokenBucket...)
+ * @see SocketSelectionActions#setWriteLimiters(TokenBucket...)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class TokenBucket {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private final long bytesPerSecond;
+    private final long capacity;
+    private long tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Creates a full token bucket.
+     *
+     * @param bytesPerSecond the sustained rate.
+     * @param capacity the maximum number of tokens, which is the largest burst.
+     */
+    public TokenBucket(long bytesPerSecond, long capacity) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be positive");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes up to the wanted number of tokens.
+     *
+     * @param wanted the number of tokens wanted.
+     *
+     * @return the number of tokens taken, which may be 0.
+     */
+    public synchronized long tryAcquire(long wanted) {
+        refill(System.nanoTime());
+        final long granted = Math.max(0, Math.min(wanted, tokens));
+        tokens -= granted;
+        return granted;
+    }
+
+    /**
+     * Returns tokens which were acquired, but not used.
+     *
+     * @param unused the number of tokens to return.
+     */
+    public synchronized void refund(long unused) {
+        if (unused > 0) {
+            tokens = Math.min(capacity, tokens + unused);
+        }
+    }
+
+    /**
+     * @param wanted the number of tokens wanted.  Values larger than the capacity are treated as the capacity.
+     *
+     * @return the number of nanoseconds until the wanted number of tokens will be available, assuming no other
+     *         tokens are taken in the meantime.
+     */
+    public synchronized long nanosUntilAvailable(long wanted) {
+        refill(System.nanoTime());
+        final long missing = Math.min(wanted, capacity) - tokens;
+        return missing <= 0 ? 0 : (missing * NANOS_PER_SECOND + bytesPerSecond - 1) / bytesPerSecond;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    private void refill(long now) {
+        final long elapsed = now - lastRefillNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        final long missing = capacity - tokens;
+        if (missing <= 0 || elapsed >= missing * NANOS_PER_SECOND / bytesPerSecond + 1) {
+            tokens = capacity;
+            lastRefillNanos = now;
+            return;
+        }
+        final long added = elapsed * bytesPerSecond / NANOS_PER_SECOND;
+        tokens += added;
+        // Keep the fraction of a token that hasn't accumulated yet.
+        lastRefillNanos += added * NANOS_PER_SECOND / bytesPerSecond;
+    }
+
+    /**
+     * Takes the same number of tokens from every bucket, up to the wanted number.
+     *
+     * @param buckets the buckets.
+     * @param wanted the number of tokens wanted.
+     *
+     * @return the number of tokens taken from each bucket, which may be 0.
+     */
+    static long tryAcquire(TokenBucket[] buckets, long wanted) {
+        long granted = wanted;
+        for (int index = 0; index < buckets.length && granted > 0; ++index) {
+            final long taken = buckets[index].tryAcquire(granted);
+            if (taken < granted) {
+                for (int earlier = 0; earlier < index; ++earlier) {
+                    buckets[earlier].refund(granted - taken);
+                }
+            }
+            granted = taken;
+        }
+        return granted;
+    }
+
+    /**
+     * Returns the same number of unused tokens to every bucket.
+     */
+    static void refund(TokenBucket[] buckets, long unused) {
+        for (final TokenBucket bucket : buckets) {
+            bucket.refund(unused);
+        }
+    }
+
+    /**
+     * @return the number of nanoseconds until every bucket will have the wanted number of tokens.
+     */
+    static long nanosUntilAvailable(TokenBucket[] buckets, long wanted) {
+        long nanos = 0;
+        for (final TokenBucket bucket : buckets) {
+            nanos = Math.max(nanos, bucket.nanosUntilAvailable(wanted));
+        }
+        return nanos;
+    }
+}
@@ -0,0 +1,207 @@
+package net.virtualinfinity.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only journal of captured connection traffic, written through memory-mapped regions of a file, so that
+ * recording a read or write costs a copy into memory rather than a system call.
+ *
+ * <p>
+ * The file starts with a header, followed by records.  Each record has the payload length, the direction, the
+ * connection id and the capture time, followed by the payload.  Records never span two regions.  A length of -1 marks
+ * the end of the records in a region, and a length of 0 marks the end of the journal.  Payloads larger than a region
+ * are split over several records.
+ *
+ * <p>
+ * Recording never throws.  If the journal can't be extended, recording stops, and the cause is available from
+ * {@link #failure()}.
+ *
+ * <p>
+ * <strong>Warning:</strong> This class is not thread-safe.  Use a journal per event loop.
+ *
+ * @see SocketSelectionActions#setTrafficTap(TrafficTap)
+ * @see TrafficReplayer
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class TrafficJournal implements Closeable {
+    private static final int MAGIC = 0x4E494F4A;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 4 + 4 + 4 + 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 8;
+    private static final int END_OF_REGION = -1;
+    private static final byte INBOUND = 1;
+    private static final byte OUTBOUND = 2;
+    private final FileChannel channel;
+    private final int regionSize;
+    private final long startNanos;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long nextConnectionId;
+    private IOException failure;
+
+    /**
+     * Creates a journal, replacing any existing file.
+     *
+     * @param file the journal file.
+     * @param regionSize the size of each mapped region of the file.  At least 4096.
+     *
+     * @throws IOException if the file can't be created or mapped.
+     */
+    public TrafficJournal(Path file, int regionSize) throws IOException {
+        if (regionSize < 4096) {
+            throw new IllegalArgumentException("regionSize must be at least 4096");
+        }
+        this.regionSize = regionSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            region = channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        startNanos = System.nanoTime();
+        region.putInt(MAGIC).putInt(VERSION).putInt(regionSize).putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * @return a new connection id, unique within this journal.
+     */
+    public long newConnectionId() {
+        return nextConnectionId++;
+    }
+
+    /**
+     * @param connectionId the id to record the connection's traffic with.
+     *
+     * @return a tap which records a connection's traffic in this journal.
+     */
+    public TrafficTap tap(long connectionId) {
+        return (inbound, data) -> record(connectionId, inbound, data);
+    }
+
+    /**
+     * Records captured data.
+     *
+     * @param connectionId the connection the data was captured from.
+     * @param inbound true for data read from the connection, false for data written to it.
+     * @param data the data between its position and limit.  Its position is left unchanged.
+     */
+    public void record(long connectionId, boolean inbound, ByteBuffer data) {
+        if (region == null) {
+            return;
+        }
+        final long timestamp = System.nanoTime() - startNanos;
+        final int position = data.position();
+        final int limit = data.limit();
+        try {
+            while (data.hasRemaining()) {
+                if (region.remaining() <= RECORD_HEADER_SIZE && !nextRegion()) {
+                    return;
+                }
+                final int length = Math.min(data.remaining(), region.remaining() - RECORD_HEADER_SIZE);
+                region.putInt(length).put(inbound ? INBOUND : OUTBOUND).putLong(connectionId).putLong(timestamp);
+                data.limit(data.position() + length);
+                region.put(data);
+                data.limit(limit);
+            }
+        } finally {
+            data.limit(limit);
+            data.position(position);
+        }
+    }
+
+    private boolean nextRegion() {
+        if (region.remaining() >= 4) {
+            region.putInt(END_OF_REGION);
+        }
+        try {
+            final long start = regionStart + regionSize;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize);
+            regionStart = start;
+            return true;
+        } catch (final IOException e) {
+            failure = e;
+            region = null;
+            return false;
+        }
+    }
+
+    /**
+     * @return the exception which stopped recording, or null if recording hasn't failed.
+     */
+    public IOException failure() {
+        return failure;
+    }
+
+    /**
+     * Stops recording, and truncates the file to the recorded data.
+     *
+     * @throws IOException if the file can't be truncated or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (region != null) {
+                if (region.remaining() >= 4) {
+                    region.putInt(0);
+                }
+                region.force();
+                channel.truncate(regionStart + region.position());
+                region = null;
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads every record in a journal, in the order they were recorded.
+     *
+     * @param file the journal file.
+     * @param consumer receives the records.
+     *
+     * @throws IOException if the file can't be read, or isn't a journal.
+     */
+    public static void read(Path file, TrafficRecordConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < FILE_HEADER_SIZE) {
+                throw new IOException("Not a traffic journal: " + file);
+            }
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a traffic journal: " + file);
+            }
+            final int regionSize = header.getInt();
+            for (long start = 0; start < size; start += regionSize) {
+                final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+                if (start == 0) {
+                    region.position(FILE_HEADER_SIZE);
+                }
+                while (region.remaining() >= 4) {
+                    final int length = region.getInt();
+                    if (length == 0) {
+                        return;
+                    }
+                    if (length == END_OF_REGION) {
+                        break;
+                    }
+                    final boolean inbound = region.get() == INBOUND;
+                    final long connectionId = region.getLong();
+                    final long timestamp = region.getLong();
+                    final ByteBuffer data = region.slice();
+                    data.limit(length);
+                    region.position(region.position() + length);
+                    consumer.record(connectionId, inbound, timestamp, data.asReadOnlyBuffer());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package net.virtualinfinity.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the records read from a {@link TrafficJournal}.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface TrafficRecordConsumer {
+    /**
+     * @param connectionId the id of the connection the data was captured from.
+     * @param inbound true for data read from the connection, false for data written to it.
+     * @param timestampNanos when the data was captured, in nanoseconds since the journal was created.
+     * @param data a read-only view of the data in the journal file.
+     */
+    void record(long connectionId, boolean inbound, long timestampNanos, ByteBuffer data);
+}
@@ -0,0 +1,222 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the traffic recorded in a {@link TrafficJournal} against a server, to reproduce production load in a
+ * benchmark.
+ *
+ * <p>
+ * Each recorded connection is replayed as a new connection, opened through a {@link ConnectionInitiator} at the time
+ * its first record was captured.  The recorded data in one direction is sent at the times it was captured, scaled by
+ * the speed.  For a journal recorded by a server, that is the inbound data; for one recorded by a client, the
+ * outbound data.  Whatever the server sends back is counted and discarded.  Payloads are sent straight from the
+ * memory-mapped journal, without copying.
+ *
+ * <p>
+ * Once everything has been sent, the connections are closed, and the finished callback is called from the event loop.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class TrafficReplayer {
+    private static final long DRAIN_CHECK_MILLIS = 10;
+    private final EventLoop eventLoop;
+    private final ConnectionInitiator connectionInitiator;
+    private final SocketAddress target;
+    private final double speed;
+    private final boolean replayInbound;
+    private final Map<Long, Session> sessions = new HashMap<>();
+    private long bytesSent;
+    private long bytesReceived;
+    private int failedConnections;
+
+    /**
+     * Creates a replayer.
+     *
+     * @param eventLoop the event loop to run the connections on.
+     * @param connectionInitiator opens the connections.
+     * @param target the address of the server.
+     * @param speed how much faster than recorded to replay.  1 replays at the original speed, and
+     *              {@link Double#POSITIVE_INFINITY} sends everything as quickly as possible.
+     * @param replayInbound true to send the data that was inbound to the recording connection, false to send the
+     *                      outbound data.
+     */
+    public TrafficReplayer(EventLoop eventLoop, ConnectionInitiator connectionInitiator, SocketAddress target, double speed, boolean replayInbound) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+        this.eventLoop = eventLoop;
+        this.connectionInitiator = connectionInitiator;
+        this.target = target;
+        this.speed = speed;
+        this.replayInbound = replayInbound;
+    }
+
+    /**
+     * Reads the journal, and schedules its traffic on the event loop.
+     *
+     * @param journal the journal file.
+     * @param finished called from the event loop once everything has been sent.  May be null.
+     *
+     * @throws IOException if the journal can't be read.
+     */
+    public void replay(Path journal, Runnable finished) throws IOException {
+        final List<Send> sends = new ArrayList<>();
+        TrafficJournal.read(journal, (connectionId, inbound, timestampNanos, data) -> {
+            if (inbound == replayInbound) {
+                sends.add(new Send(connectionId, timestampNanos, data));
+            }
+        });
+        eventLoop.invokeLater(() -> schedule(sends, finished));
+    }
+
+    private void schedule(List<Send> sends, Runnable finished) {
+        final long first = sends.isEmpty() ? 0 : sends.get(0).timestampNanos;
+        long last = 0;
+        for (final Send send : sends) {
+            final long delay = (long) ((send.timestampNanos - first) / speed);
+            last = Math.max(last, delay);
+            eventLoop.invokeAfter(() -> session(send.connectionId).send(send.data), delay, TimeUnit.NANOSECONDS);
+        }
+        eventLoop.invokeAfter(() -> finishWhenDrained(finished), last, TimeUnit.NANOSECONDS);
+    }
+
+    private Session session(long connectionId) {
+        return sessions.computeIfAbsent(connectionId, id -> new Session());
+    }
+
+    private void finishWhenDrained(Runnable finished) {
+        for (final Session session : sessions.values()) {
+            if (!session.isDrained()) {
+                eventLoop.invokeAfter(() -> finishWhenDrained(finished), DRAIN_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        sessions.values().forEach(Session::close);
+        sessions.clear();
+        if (finished != null) {
+            finished.run();
+        }
+    }
+
+    /**
+     * @return the number of bytes queued to be sent to the server so far.
+     */
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the number of bytes received from the server so far.
+     */
+    public long bytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return the number of connections which failed to connect, or were disconnected before all of their data was
+     *         sent.
+     */
+    public int failedConnections() {
+        return failedConnections;
+    }
+
+    private static final class Send {
+        private final long connectionId;
+        private final long timestampNanos;
+        private final ByteBuffer data;
+
+        Send(long connectionId, long timestampNanos, ByteBuffer data) {
+            this.connectionId = connectionId;
+            this.timestampNanos = timestampNanos;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A replayed connection.
+     */
+    private final class Session implements ConnectionListener {
+        private final OutputBuffer outputBuffer = new OutputBuffer();
+        private SocketChannelInterface channel;
+        private boolean closed;
+
+        Session() {
+            connectionInitiator.connect(eventLoop, target, this, socketChannel -> {
+                channel = socketChannel;
+                try {
+                    new SocketSelectionActions(socketChannel, this, this::received, outputBuffer, 8192, false).register(eventLoop);
+                } catch (final IOException e) {
+                    connectionFailed(e);
+                }
+            });
+        }
+
+        void send(ByteBuffer data) {
+            if (closed) {
+                return;
+            }
+            // Shared, so that small records are queued by reference too, rather than copied into the buffer.
+            outputBuffer.appendShared(data.duplicate(), null);
+            bytesSent += data.remaining();
+        }
+
+        private void received(ByteBuffer data) {
+            bytesReceived += data.remaining();
+            data.position(data.limit());
+        }
+
+        boolean isDrained() {
+            return closed || !outputBuffer.hasRemaining();
+        }
+
+        void close() {
+            closed = true;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException ignored) {
+                    // Nothing more can be done with the connection.
+                }
+            }
+        }
+
+        @Override
+        public void connecting() {
+        }
+
+        @Override
+        public void connected() {
+        }
+
+        @Override
+        public void connectionFailed(IOException e) {
+            failed();
+        }
+
+        @Override
+        public void disconnected() {
+            if (outputBuffer.hasRemaining()) {
+                failed();
+            } else {
+                close();
+            }
+        }
+
+        private void failed() {
+            if (!closed) {
+                closed = true;
+                ++failedConnections;
+            }
+            close();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package net.virtualinfinity.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Observes the bytes a connection reads and writes, for example to record them in a {@link TrafficJournal}.
+ *
+ * @see SocketSelectionActions#setTrafficTap(TrafficTap)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface TrafficTap {
+    /**
+     * Called from the event loop thread after each successful read or write.
+     *
+     * @param inbound true for data read from the connection, false for data written to it.
+     * @param data the data, between its position and limit.  It must not be modified, and its position must be left
+     *             unchanged.
+     */
+    void captured(boolean inbound, ByteBuffer data);
+}
@@ -0,0 +1,153 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Access to Unix domain sockets, which are supported by the JDK from Java 16.
+ *
+ * <p>
+ * This library is compiled for Java 8, so the Unix domain socket API is accessed reflectively.  On older runtimes
+ * {@link #isSupported()} returns false, and the other methods throw {@link UnsupportedOperationException}.
+ *
+ * <p>
+ * Binding a Unix domain socket creates a file at the socket path, which is not removed when the channel is closed.
+ * The application is responsible for deleting it.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public final class UnixDomainSockets {
+    private static final String ADDRESS_CLASS = "java.net.UnixDomainSocketAddress";
+    private static final ProtocolFamily UNIX = findUnixFamily();
+    private static final Method ADDRESS_OF = findMethod(ADDRESS_CLASS, "of", Path.class);
+    private static final Method ADDRESS_GET_PATH = findMethod(ADDRESS_CLASS, "getPath");
+    private static final Method OPEN_SOCKET_CHANNEL = findMethod(SocketChannel.class.getName(), "open", ProtocolFamily.class);
+    private static final Method OPEN_SERVER_SOCKET_CHANNEL = findMethod(ServerSocketChannel.class.getName(), "open", ProtocolFamily.class);
+
+    private UnixDomainSockets() {
+    }
+
+    /**
+     * @return true if this runtime supports Unix domain socket channels.
+     */
+    public static boolean isSupported() {
+        return UNIX != null && ADDRESS_OF != null && OPEN_SOCKET_CHANNEL != null && OPEN_SERVER_SOCKET_CHANNEL != null;
+    }
+
+    /**
+     * @return the <code>StandardProtocolFamily.UNIX</code> protocol family.
+     *
+     * @throws UnsupportedOperationException if Unix domain sockets are not supported.
+     */
+    public static ProtocolFamily protocolFamily() {
+        checkSupported();
+        return UNIX;
+    }
+
+    /**
+     * Creates the address of a Unix domain socket.
+     *
+     * @param path the path of the socket file.
+     *
+     * @return the socket address.
+     *
+     * @throws UnsupportedOperationException if Unix domain sockets are not supported.
+     */
+    public static SocketAddress address(Path path) {
+        checkSupported();
+        return (SocketAddress) invoke(ADDRESS_OF, null, path);
+    }
+
+    /**
+     * @param address the address.
+     *
+     * @return true if the address is the address of a Unix domain socket.
+     */
+    public static boolean isUnixDomainAddress(SocketAddress address) {
+        return address != null && address.getClass().getName().equals(ADDRESS_CLASS);
+    }
+
+    /**
+     * @param address the address of a Unix domain socket.
+     *
+     * @return the path of the socket file.
+     */
+    public static Path path(SocketAddress address) {
+        if (!isUnixDomainAddress(address)) {
+            throw new IllegalArgumentException("Not a Unix domain socket address: " + address);
+        }
+        return (Path) invoke(ADDRESS_GET_PATH, address);
+    }
+
+    static SocketChannel openSocketChannel(ProtocolFamily family) throws IOException {
+        if (family == StandardProtocolFamily.INET || family == StandardProtocolFamily.INET6) {
+            return SocketChannel.open();
+        }
+        checkSupported();
+        return (SocketChannel) invokeOpen(OPEN_SOCKET_CHANNEL, family);
+    }
+
+    static ServerSocketChannel openServerSocketChannel(ProtocolFamily family) throws IOException {
+        if (family == StandardProtocolFamily.INET || family == StandardProtocolFamily.INET6) {
+            return ServerSocketChannel.open();
+        }
+        checkSupported();
+        return (ServerSocketChannel) invokeOpen(OPEN_SERVER_SOCKET_CHANNEL, family);
+    }
+
+    private static Object invokeOpen(Method open, ProtocolFamily family) throws IOException {
+        try {
+            return open.invoke(null, family);
+        } catch (final InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void checkSupported() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later");
+        }
+    }
+
+    private static ProtocolFamily findUnixFamily() {
+        for (final StandardProtocolFamily family : StandardProtocolFamily.values()) {
+            if (family.name().equals("UNIX")) {
+                return family;
+            }
+        }
+        return null;
+    }
+
+    private static Method findMethod(String className, String name, Class<?>... parameterTypes) {
+        try {
+            return Class.forName(className).getMethod(name, parameterTypes);
+        } catch (final ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines how an {@link EventLoop} waits for channels to become ready.
+ *
+ * <p>
+ * Blocking in {@link java.nio.channels.Selector#select(long)} is the most efficient use of CPU, but waking a blocked
+ * thread can take tens of microseconds.  Spinning on {@link java.nio.channels.Selector#selectNow()} reacts faster, at
+ * the cost of keeping a core busy.
+ *
+ * @see EventLoop#EventLoop(ExceptionHandler, WaitStrategy)
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+@FunctionalInterface
+public interface WaitStrategy {
+    /**
+     * Waits until at least one channel is selected, the timeout elapses, or events are pending.
+     *
+     * @param selection the selector operations.
+     * @param timeout the time in milliseconds to wait, or 0 to wait indefinitely.
+     *
+     * @return the number of keys whose ready sets were updated.
+     *
+     * @throws IOException if the selector does.
+     */
+    int select(Selection selection, long timeout) throws IOException;
+
+    /**
+     * The operations available to a wait strategy.
+     */
+    interface Selection {
+        /**
+         * @see java.nio.channels.Selector#selectNow()
+         */
+        int selectNow() throws IOException;
+
+        /**
+         * @see java.nio.channels.Selector#select(long)
+         */
+        int select(long timeout) throws IOException;
+
+        /**
+         * @return true if events have been added to the event loop since the wait started.
+         */
+        boolean eventsPending();
+    }
+
+    /**
+     * @return a strategy which blocks in {@link java.nio.channels.Selector#select(long)}.  This is the default.
+     */
+    static WaitStrategy blocking() {
+        return Selection::select;
+    }
+
+    /**
+     * @return a strategy which continuously calls {@link java.nio.channels.Selector#selectNow()}, never blocking.
+     */
+    static WaitStrategy busySpin() {
+        return adaptive(Long.MAX_VALUE, 0);
+    }
+
+    /**
+     * Creates a strategy which first spins on {@link java.nio.channels.Selector#selectNow()}, then yields the thread
+     * between attempts, and finally blocks.
+     *
+     * @param spins the number of attempts to make before yielding.
+     * @param yields the number of attempts to make, yielding before each one, before blocking.
+     *
+     * @return the strategy.
+     */
+    static WaitStrategy adaptive(long spins, long yields) {
+        if (spins < 0 || yields < 0) {
+            throw new IllegalArgumentException("spins and yields must not be negative");
+        }
+        final long attempts = spins + yields < 0 ? Long.MAX_VALUE : spins + yields;
+        return (selection, timeout) -> {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            for (long attempt = 0; attempt < attempts; ++attempt) {
+                if (attempt >= spins) {
+                    Thread.yield();
+                }
+                final int selected = selection.selectNow();
+                if (selected != 0 || selection.eventsPending() || timeout != 0 && System.nanoTime() - deadline >= 0) {
+                    return selected;
+                }
+            }
+            if (timeout == 0) {
+                return selection.select(0);
+            }
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            return remaining > 0 ? selection.select(remaining) : selection.selectNow();
+        };
+    }
+}
@@ -0,0 +1,186 @@
+package net.virtualinfinity.nio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class AsyncFileIOTest {
+    private static final int BUFFER_SIZE = 4096;
+    private static final long MAXIMUM_BUFFERED = 16384;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private final ExecutorService ioExecutor = Executors.newFixedThreadPool(2);
+    private EventLoop eventLoop;
+    private AsyncFileIO fileIO;
+
+    @Before
+    public void createEventLoop() throws IOException {
+        eventLoop = new EventLoop();
+        fileIO = new AsyncFileIO(eventLoop, ioExecutor, new BufferPool(BUFFER_SIZE, 8));
+    }
+
+    @After
+    public void shutdownExecutor() {
+        ioExecutor.shutdownNow();
+    }
+
+    @Test(timeout = 5000)
+    public void completionsRunOnTheEventLoop() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("data");
+        final AsynchronousFileChannel channel = fileIO.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final ByteBuffer read = ByteBuffer.allocate(5);
+        final boolean[] completedOnLoop = new boolean[2];
+        eventLoop.execute(() -> fileIO.write(channel, ByteBuffer.wrap("hello".getBytes()), 0, null, handler(written -> {
+            completedOnLoop[0] = eventLoop.inEventLoop();
+            fileIO.read(channel, read, 0, null, handler(count -> {
+                completedOnLoop[1] = eventLoop.inEventLoop();
+                eventLoop.shutdown();
+            }));
+        })));
+        eventLoop.run();
+        channel.close();
+        assertTrue(completedOnLoop[0]);
+        assertTrue(completedOnLoop[1]);
+        assertEquals("hello", new String(read.array()));
+    }
+
+    @Test(timeout = 5000)
+    public void pipesIntoOutputBufferWithBackpressure() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("large");
+        final byte[] contents = new byte[100000];
+        for (int i = 0; i < contents.length; ++i) {
+            contents[i] = (byte) (i * 31);
+        }
+        Files.write(file, contents);
+        final AsynchronousFileChannel channel = fileIO.open(file, StandardOpenOption.READ);
+        final OutputBuffer outputBuffer = new OutputBuffer(BUFFER_SIZE);
+        final ByteBuffer sent = ByteBuffer.allocate(contents.length);
+        final long[] copied = {-1};
+        final long[] mostBuffered = new long[1];
+        eventLoop.execute(() -> fileIO.pipe(channel, 0, Long.MAX_VALUE, outputBuffer, MAXIMUM_BUFFERED, handler(count -> copied[0] = count)));
+        // A slow consumer, which sends at most one buffer per millisecond.
+        eventLoop.scheduleWithFixedDelay(() -> {
+            mostBuffered[0] = Math.max(mostBuffered[0], outputBuffer.remaining());
+            try {
+                final ByteBuffer slice = ByteBuffer.allocate(BUFFER_SIZE);
+                outputBuffer.send(src -> BufferUtils.putWhatFits(slice, src));
+                slice.flip();
+                sent.put(slice);
+            } catch (IOException e) {
+                fail(e.toString());
+            }
+            if (copied[0] >= 0 && !outputBuffer.hasRemaining()) {
+                eventLoop.shutdown();
+            }
+        }, 1, 1, TimeUnit.MILLISECONDS);
+        eventLoop.run();
+        channel.close();
+        assertEquals(contents.length, copied[0]);
+        assertArrayEquals(contents, sent.array());
+        assertTrue("Should stop reading while the output is backed up, but buffered " + mostBuffered[0], mostBuffered[0] < MAXIMUM_BUFFERED + BUFFER_SIZE);
+    }
+
+    @Test(timeout = 5000)
+    public void cancellingAPausedPipeNotifiesTheHandler() throws IOException {
+        final AsynchronousFileChannel channel = fileIO.open(largeFile(), StandardOpenOption.READ);
+        final OutputBuffer outputBuffer = new OutputBuffer(BUFFER_SIZE);
+        final Throwable[] failure = new Throwable[1];
+        final long[] bufferedAfterCancel = new long[1];
+        eventLoop.execute(() -> {
+            final AsyncFileIO.Pipe pipe = fileIO.pipe(channel, 0, Long.MAX_VALUE, outputBuffer, MAXIMUM_BUFFERED, failureHandler(failure));
+            // Nothing is sent, so the pipe pauses once the output buffer is full.
+            eventLoop.invokeAfter(() -> {
+                assertTrue(outputBuffer.remaining() >= MAXIMUM_BUFFERED);
+                pipe.cancel();
+                bufferedAfterCancel[0] = outputBuffer.remaining();
+                try {
+                    outputBuffer.send(src -> src.position(src.limit()));
+                } catch (IOException e) {
+                    fail(e.toString());
+                }
+            }, 100, TimeUnit.MILLISECONDS);
+            eventLoop.invokeAfter(eventLoop::shutdown, 200, TimeUnit.MILLISECONDS);
+        });
+        eventLoop.run();
+        channel.close();
+        assertTrue(String.valueOf(failure[0]), failure[0] instanceof CancellationException);
+        assertTrue(bufferedAfterCancel[0] >= MAXIMUM_BUFFERED);
+        assertFalse("Sending the queued buffers should not restart reading", outputBuffer.hasRemaining());
+    }
+
+    @Test(timeout = 5000)
+    public void clearingTheOutputBufferStopsThePipe() throws IOException {
+        final AsynchronousFileChannel channel = fileIO.open(largeFile(), StandardOpenOption.READ);
+        final OutputBuffer outputBuffer = new OutputBuffer(BUFFER_SIZE);
+        final Throwable[] failure = new Throwable[1];
+        eventLoop.execute(() -> {
+            fileIO.pipe(channel, 0, Long.MAX_VALUE, outputBuffer, MAXIMUM_BUFFERED, failureHandler(failure));
+            eventLoop.invokeAfter(() -> {
+                try {
+                    outputBuffer.clear();
+                } catch (IOException e) {
+                    fail(e.toString());
+                }
+            }, 100, TimeUnit.MILLISECONDS);
+            eventLoop.invokeAfter(eventLoop::shutdown, 200, TimeUnit.MILLISECONDS);
+        });
+        eventLoop.run();
+        channel.close();
+        assertTrue(String.valueOf(failure[0]), failure[0] instanceof IOException);
+        assertFalse("Releasing the cleared buffers should not restart reading", outputBuffer.hasRemaining());
+    }
+
+    private Path largeFile() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("large");
+        Files.write(file, new byte[100000]);
+        return file;
+    }
+
+    private static CompletionHandler<Long, Void> failureHandler(Throwable[] failure) {
+        return new CompletionHandler<Long, Void>() {
+            @Override
+            public void completed(Long result, Void attachment) {
+                fail("Should not complete, but piped " + result);
+            }
+
+            @Override
+            public void failed(Throwable exception, Void attachment) {
+                failure[0] = exception;
+            }
+        };
+    }
+
+    private static <V, A> CompletionHandler<V, A> handler(Consumer<V> completed) {
+        return new CompletionHandler<V, A>() {
+            @Override
+            public void completed(V result, A attachment) {
+                completed.accept(result);
+            }
+
+            @Override
+            public void failed(Throwable exception, A attachment) {
+                exception.printStackTrace();
+            }
+        };
+    }
+}
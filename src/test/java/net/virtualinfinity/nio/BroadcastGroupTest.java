@@ -0,0 +1,125 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class BroadcastGroupTest {
+    private static final int PAYLOAD_SIZE = 4096;
+
+    @Test
+    public void payloadIsSharedAndReleasedOnceEveryMemberHasSent() throws IOException {
+        final BroadcastGroup group = new BroadcastGroup(Long.MAX_VALUE);
+        final List<OutputBuffer> outputs = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            final OutputBuffer outputBuffer = new OutputBuffer();
+            outputs.add(outputBuffer);
+            group.add(outputBuffer, null);
+        }
+        final ByteBuffer data = ByteBuffer.allocateDirect(PAYLOAD_SIZE);
+        final AtomicInteger released = new AtomicInteger();
+        assertEquals(3, group.broadcast(data, released::incrementAndGet));
+        assertEquals("The payload should not be consumed", PAYLOAD_SIZE, data.remaining());
+
+        final List<ByteBuffer> sent = new ArrayList<>();
+        for (final OutputBuffer outputBuffer : outputs) {
+            assertEquals(0, released.get());
+            outputBuffer.send(buffer -> {
+                sent.add(buffer);
+                buffer.position(buffer.limit());
+            });
+        }
+        assertEquals(1, released.get());
+        for (final ByteBuffer buffer : sent) {
+            assertTrue("Members should get read-only views", buffer.isReadOnly());
+            assertTrue("Members should share the payload memory", buffer.isDirect());
+        }
+    }
+
+    @Test
+    public void smallPayloadsAreNotCopied() throws IOException {
+        final BroadcastGroup group = new BroadcastGroup(Long.MAX_VALUE);
+        final OutputBuffer first = new OutputBuffer();
+        final OutputBuffer second = new OutputBuffer();
+        group.add(first, null);
+        group.add(second, null);
+        // Something already queued, which a copy would be coalesced into.
+        first.append(ByteBuffer.allocate(10));
+        final byte[] data = new byte[64];
+        final SharedPayload payload = new SharedPayload(ByteBuffer.wrap(data), null);
+        assertEquals(2, group.broadcast(payload));
+        assertEquals("Each member should hold a reference", 3, payload.referenceCount());
+
+        // Only possible because the members reference the caller's memory.
+        data[0] = 42;
+        final List<ByteBuffer> sent = new ArrayList<>();
+        for (final OutputBuffer outputBuffer : new OutputBuffer[] {first, second}) {
+            outputBuffer.send(buffer -> {
+                sent.add(buffer.duplicate());
+                buffer.position(buffer.limit());
+            });
+        }
+        assertEquals("The queued data and the payload should be sent separately", 3, sent.size());
+        assertEquals(64, sent.get(1).remaining());
+        assertEquals(42, sent.get(1).get(0));
+        assertEquals(42, sent.get(2).get(0));
+        assertEquals(1, payload.referenceCount());
+    }
+
+    @Test
+    public void slowMembersAreDropped() throws IOException {
+        final BroadcastGroup group = new BroadcastGroup(PAYLOAD_SIZE * 2);
+        final OutputBuffer fast = new OutputBuffer();
+        final OutputBuffer slow = new OutputBuffer();
+        final AtomicInteger dropped = new AtomicInteger();
+        group.add(fast, () -> fail("Should not drop a member within its backlog"));
+        group.add(slow, dropped::incrementAndGet);
+        slow.append(ByteBuffer.allocate(PAYLOAD_SIZE + 1));
+        final SharedPayload payload = new SharedPayload(ByteBuffer.allocate(PAYLOAD_SIZE), null);
+        assertEquals(1, group.broadcast(payload));
+        assertEquals(1, dropped.get());
+        assertEquals(1, group.size());
+        assertFalse(group.remove(slow));
+        assertEquals(2, payload.referenceCount());
+        fast.send(buffer -> buffer.position(buffer.limit()));
+        assertEquals(1, payload.referenceCount());
+        payload.release();
+        try {
+            payload.appendTo(fast);
+            fail("Should not append a released payload");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void listenersMayChangeTheMembership() {
+        final BroadcastGroup group = new BroadcastGroup(PAYLOAD_SIZE * 2);
+        final OutputBuffer slow = new OutputBuffer();
+        final OutputBuffer removedBySlow = new OutputBuffer();
+        final OutputBuffer last = new OutputBuffer();
+        final OutputBuffer removedByLast = new OutputBuffer();
+        slow.append(ByteBuffer.allocate(PAYLOAD_SIZE * 2));
+        // Closing a connection typically removes it, and the connections it affects, from the group.
+        group.add(slow, () -> group.remove(removedBySlow));
+        group.add(removedBySlow, null);
+        group.add(last, null);
+        group.add(removedByLast, null);
+        last.addAppendListener(() -> group.remove(removedByLast));
+        final SharedPayload payload = new SharedPayload(ByteBuffer.allocate(PAYLOAD_SIZE), null);
+        assertEquals(1, group.broadcast(payload));
+        assertEquals(1, group.size());
+        assertEquals(PAYLOAD_SIZE, last.remaining());
+        assertFalse("Removed members should not be sent the payload", removedBySlow.hasRemaining());
+        assertFalse(removedByLast.hasRemaining());
+    }
+}
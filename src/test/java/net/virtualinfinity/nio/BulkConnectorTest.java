@@ -0,0 +1,146 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class BulkConnectorTest {
+    private static final int CONNECTIONS = 20;
+    private static final int MAXIMUM_IN_FLIGHT = 3;
+
+    @Test(timeout = 10000)
+    public void opensConnectionsWithinLimits() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), CONNECTIONS)) {
+            final List<SocketChannel> accepted = Collections.synchronizedList(new ArrayList<>());
+            final Thread acceptor = new Thread(() -> {
+                try {
+                    while (accepted.size() < CONNECTIONS) {
+                        accepted.add(server.accept());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            acceptor.start();
+
+            final List<EventLoop> eventLoops = Arrays.asList(new EventLoop(), new EventLoop());
+            final List<Thread> loopThreads = new ArrayList<>();
+            for (final EventLoop eventLoop : eventLoops) {
+                final Thread thread = new Thread(() -> {
+                    try {
+                        eventLoop.run();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+                thread.start();
+                loopThreads.add(thread);
+            }
+
+            final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            final BulkConnector connector = new BulkConnector(new ConnectionInitiator(), new AsynchronousAddressResolver(),
+                eventLoops, Collections.singletonList(InetSocketAddress.createUnresolved(address.getHostString(), address.getPort())),
+                CONNECTIONS, MAXIMUM_IN_FLIGHT, 200);
+            final Set<EventLoop> usedLoops = Collections.synchronizedSet(new HashSet<>());
+            final AtomicInteger mostInFlight = new AtomicInteger();
+            final long start = System.nanoTime();
+            connector.start((index, eventLoop, channel) -> {
+                mostInFlight.accumulateAndGet(connector.getInFlight() + 1, Math::max);
+                usedLoops.add(eventLoop);
+                channel.close();
+            }, () -> eventLoops.forEach(EventLoop::shutdown));
+            for (final Thread thread : loopThreads) {
+                thread.join();
+            }
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            acceptor.join();
+            for (final SocketChannel channel : accepted) {
+                channel.close();
+            }
+
+            assertEquals(CONNECTIONS, connector.getSucceeded());
+            assertEquals(0, connector.getFailed());
+            assertEquals(CONNECTIONS, connector.getConnectLatency().getTotalCount());
+            assertTrue("In flight connects should be limited, but saw " + mostInFlight.get(), mostInFlight.get() <= MAXIMUM_IN_FLIGHT);
+            assertEquals("Connections should be spread across the event loops", 2, usedLoops.size());
+            assertTrue("Connects should be rate limited, but took " + elapsed + "ms", elapsed >= 90);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void abandonsConnectsThatNeverComplete() throws Exception {
+        final AtomicInteger lookups = new AtomicInteger();
+        final AsynchronousAddressResolver resolver = new AsynchronousAddressResolver() {
+            @Override
+            public void lookupInetSocketAddress(EventLoop eventLoop, String hostname, int port, Consumer<InetSocketAddress> completed) {
+                lookups.incrementAndGet();
+                super.lookupInetSocketAddress(eventLoop, hostname, port, completed);
+            }
+        };
+        // Like a dropped SYN: the connect stays pending, and the channel never becomes connectable.
+        final ConnectionInitiator initiator = new ConnectionInitiator(resolver, () -> new SocketChannelWrapper(SocketChannel.open()) {
+            @Override
+            public boolean connect(SocketAddress remote) {
+                return false;
+            }
+
+            @Override
+            public boolean isConnectionPending() {
+                return true;
+            }
+
+            @Override
+            public boolean finishConnect() {
+                return false;
+            }
+        }, ServerSocketChannelWrapper.PROVIDER);
+        final String host = InetAddress.getLoopbackAddress().getHostName();
+        final EventLoop eventLoop = new EventLoop();
+        final BulkConnector connector = new BulkConnector(initiator, resolver, Collections.singletonList(eventLoop),
+            Arrays.asList(InetSocketAddress.createUnresolved(host, 1), InetSocketAddress.createUnresolved(host, 2)),
+            4, 2, 1000);
+        connector.setConnectTimeout(50, TimeUnit.MILLISECONDS);
+        final List<IOException> failures = new ArrayList<>();
+        connector.start(new BulkConnectionHandler() {
+            @Override
+            public void connected(int index, EventLoop loop, SocketChannelInterface channel) {
+                fail("Should not connect");
+            }
+
+            @Override
+            public void connectionFailed(int index, IOException exception) {
+                failures.add(exception);
+            }
+        }, eventLoop::shutdown);
+        eventLoop.run();
+
+        assertEquals("Endpoints sharing a host should be resolved once", 1, lookups.get());
+        assertEquals(4, connector.getFailed());
+        assertEquals(4, connector.getTimedOut());
+        assertEquals(0, connector.getInFlight());
+        assertEquals(4, failures.size());
+        for (final IOException failure : failures) {
+            assertTrue(failure.toString(), failure instanceof SocketTimeoutException);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class ConcurrentOutputBufferTest {
+    private static final int PRODUCERS = 4;
+    private static final int MESSAGES = 10000;
+
+    @Test
+    public void producersAppendConcurrently() throws Exception {
+        final EventLoop eventLoop = new EventLoop();
+        final OutputBuffer outputBuffer = new OutputBuffer();
+        final ConcurrentOutputBuffer concurrent = new ConcurrentOutputBuffer(eventLoop, outputBuffer);
+        final AtomicInteger newDataNotifications = new AtomicInteger();
+        outputBuffer.addNewDataListener(newDataNotifications::incrementAndGet);
+        final Thread loopThread = new Thread(() -> {
+            try {
+                eventLoop.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        loopThread.start();
+
+        final AtomicInteger released = new AtomicInteger();
+        final List<Thread> producers = new ArrayList<>();
+        for (int producer = 0; producer < PRODUCERS; ++producer) {
+            final int id = producer;
+            producers.add(new Thread(() -> {
+                final ByteBuffer message = ByteBuffer.allocate(4);
+                for (int sequence = 0; sequence < MESSAGES; ++sequence) {
+                    message.clear();
+                    message.putInt(id << 24 | sequence).flip();
+                    if (sequence % 2 == 0) {
+                        concurrent.append(message);
+                    } else {
+                        concurrent.appendOwned(ByteBuffer.allocate(4).putInt(0, id << 24 | sequence), released::incrementAndGet);
+                    }
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+
+        final ByteBuffer received = ByteBuffer.allocate(PRODUCERS * MESSAGES * 4);
+        // Before the next select, so after the next drain.
+        eventLoop.invokeLater(() -> eventLoop.invokeBeforeSelect(() -> {
+            try {
+                outputBuffer.send(received::put);
+                eventLoop.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+        loopThread.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse("Event loop should have stopped", loopThread.isAlive());
+
+        assertFalse("Should have received everything", received.hasRemaining());
+        assertEquals(PRODUCERS * MESSAGES / 2, released.get());
+        assertTrue(newDataNotifications.get() >= 1);
+        received.flip();
+        final int[] nextSequence = new int[PRODUCERS];
+        while (received.hasRemaining()) {
+            final int value = received.getInt();
+            final int id = value >>> 24;
+            assertEquals("Producer " + id + " out of order", nextSequence[id]++, value & 0xFFFFFF);
+        }
+    }
+
+    @Test
+    public void mixedSizesArriveIntact() throws Exception {
+        final EventLoop eventLoop = new EventLoop();
+        final OutputBuffer outputBuffer = new OutputBuffer();
+        final ConcurrentOutputBuffer concurrent = new ConcurrentOutputBuffer(eventLoop, outputBuffer, 1024);
+        final Thread loopThread = new Thread(() -> {
+            try {
+                eventLoop.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        loopThread.start();
+
+        // Sizes from a byte up to several blocks, so that blocks fill part way, and large appends get their own.
+        final byte[] expected = new byte[1 << 20];
+        new Random(7).nextBytes(expected);
+        final Random sizes = new Random(11);
+        int position = 0;
+        while (position < expected.length) {
+            final int size = Math.min(expected.length - position, sizes.nextInt(10) == 0 ? 1 + sizes.nextInt(5000) : 1 + sizes.nextInt(100));
+            concurrent.append(ByteBuffer.wrap(expected, position, size));
+            position += size;
+        }
+
+        final ByteBuffer received = ByteBuffer.allocate(expected.length);
+        // Before the next select, so after the next drain.
+        eventLoop.invokeLater(() -> eventLoop.invokeBeforeSelect(() -> {
+            try {
+                outputBuffer.send(received::put);
+                eventLoop.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+        loopThread.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse("Event loop should have stopped", loopThread.isAlive());
+        assertArrayEquals(expected, received.array());
+    }
+
+    @Test(timeout = 5000)
+    public void appendWakesABlockedLoop() throws Exception {
+        final EventLoop eventLoop = new EventLoop();
+        final OutputBuffer outputBuffer = new OutputBuffer();
+        final CountDownLatch drained = new CountDownLatch(1);
+        outputBuffer.addNewDataListener(drained::countDown);
+        final ConcurrentOutputBuffer concurrent = new ConcurrentOutputBuffer(eventLoop, outputBuffer);
+        final Thread loopThread = new Thread(() -> {
+            try {
+                eventLoop.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        loopThread.start();
+        // Nothing is scheduled, so the loop is blocked in select until the append wakes it.
+        Thread.sleep(50);
+        concurrent.append(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        assertTrue("The append should wake the loop to drain it", drained.await(2, TimeUnit.SECONDS));
+        concurrent.close();
+        eventLoop.close();
+        loopThread.join();
+        assertEquals(3, outputBuffer.remaining());
+    }
+}
@@ -0,0 +1,120 @@
+package net.virtualinfinity.nio;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class ConnectionInitiatorTest {
+    private final ConnectionInitiator initiator = new ConnectionInitiator();
+    private Path socketDirectory;
+
+    @After
+    public void deleteSocketDirectory() throws IOException {
+        if (socketDirectory != null) {
+            Files.deleteIfExists(socketDirectory.resolve("echo.sock"));
+            Files.deleteIfExists(socketDirectory);
+        }
+    }
+
+    @Test
+    public void echoOverTcp() throws IOException {
+        final int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        assertEquals("ping", echo(new InetSocketAddress("127.0.0.1", port)));
+    }
+
+    @Test
+    public void echoOverUnixDomainSocket() throws IOException {
+        assumeTrue("Unix domain sockets are not supported by this runtime", UnixDomainSockets.isSupported());
+        socketDirectory = Files.createTempDirectory("nio-test");
+        final SocketAddress address = UnixDomainSockets.address(socketDirectory.resolve("echo.sock"));
+        assertTrue(UnixDomainSockets.isUnixDomainAddress(address));
+        assertEquals("ping", echo(address));
+    }
+
+    /**
+     * Binds an echo server to the address, connects to it, and returns what was echoed back.
+     */
+    private String echo(SocketAddress address) throws IOException {
+        final EventLoop eventLoop = new EventLoop();
+        final StringBuilder echoed = new StringBuilder();
+        final boolean[] connected = new boolean[1];
+        initiator.bind(eventLoop, address, 4, channel -> {
+            final OutputBuffer serverOutput = new OutputBuffer();
+            register(eventLoop, new SocketSelectionActions(channel, new NoOpListener(), serverOutput::append, serverOutput, 64, false));
+        }, (key, e) -> fail(e.toString()));
+        final OutputBuffer clientOutput = new OutputBuffer();
+        clientOutput.append(ByteBuffer.wrap("ping".getBytes("US-ASCII")));
+        initiator.connect(eventLoop, address, new NoOpListener() {
+            @Override
+            public void connected() {
+                connected[0] = true;
+            }
+
+            @Override
+            public void connectionFailed(IOException e) {
+                fail(e.toString());
+            }
+        }, src -> {
+            while (src.hasRemaining()) {
+                echoed.append((char) src.get());
+            }
+            if (echoed.length() == 4) {
+                eventLoop.invokeLater(() -> close(eventLoop));
+            }
+        }, clientOutput, false, 64);
+        eventLoop.invokeAfter(() -> close(eventLoop), 5, TimeUnit.SECONDS);
+        eventLoop.run();
+        assertTrue("Should have been notified of the connection", connected[0]);
+        return echoed.toString();
+    }
+
+    private static void register(EventLoop eventLoop, SocketSelectionActions actions) {
+        try {
+            actions.register(eventLoop);
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    private static void close(EventLoop eventLoop) {
+        try {
+            eventLoop.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private static class NoOpListener implements ConnectionListener {
+        @Override
+        public void connecting() {
+        }
+
+        @Override
+        public void connected() {
+        }
+
+        @Override
+        public void connectionFailed(IOException e) {
+        }
+
+        @Override
+        public void disconnected() {
+        }
+    }
+}
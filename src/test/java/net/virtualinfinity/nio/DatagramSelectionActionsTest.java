@@ -0,0 +1,127 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class DatagramSelectionActionsTest {
+    private final BufferPool pool = new BufferPool(1500, 8);
+    private final ConnectionInitiator initiator = new ConnectionInitiator();
+    private final List<Byte> received = new ArrayList<>();
+    private final List<SocketAddress> sources = new ArrayList<>();
+
+    @Test
+    public void sendAndReceiveOverLoopback() throws IOException {
+        final EventLoop eventLoop = new EventLoop();
+        final DatagramSelectionActions[] endpoints = new DatagramSelectionActions[2];
+        final DatagramConsumer receiver = (data, source) -> {
+            assertEquals(1, data.remaining());
+            received.add(data.get());
+            sources.add(source);
+            if (received.size() == 3) {
+                eventLoop.invokeLater(() -> close(eventLoop));
+            }
+        };
+        initiator.bindDatagram(eventLoop, "127.0.0.1", 0, (data, source) -> {}, pool, 16, 16, sender -> {
+            endpoints[0] = sender;
+            sendIfBound(endpoints);
+        }, (key, e) -> fail(e.toString()));
+        initiator.bindDatagram(eventLoop, "127.0.0.1", 0, receiver, pool, 16, 16, target -> {
+            endpoints[1] = target;
+            sendIfBound(endpoints);
+        }, (key, e) -> fail(e.toString()));
+        eventLoop.invokeAfter(() -> close(eventLoop), 5, TimeUnit.SECONDS);
+        eventLoop.run();
+
+        assertEquals(Arrays.asList((byte) 1, (byte) 2, (byte) 3), received);
+        assertEquals(endpoints[0].channel().getLocalAddress(), sources.get(0));
+        assertEquals(0, endpoints[0].queued());
+    }
+
+    @Test
+    public void sendQueueIsBounded() throws IOException {
+        final DatagramChannelInterface channel = DatagramChannelWrapper.PROVIDER.open();
+        try {
+            final DatagramSelectionActions actions = new DatagramSelectionActions(channel, (data, source) -> {}, pool, 16, 2);
+            final SocketAddress target = new java.net.InetSocketAddress("127.0.0.1", 9);
+            assertTrue(actions.send(ByteBuffer.allocate(1), target));
+            assertTrue(actions.send(ByteBuffer.allocate(1), target));
+            assertFalse(actions.send(ByteBuffer.allocate(1), target));
+            assertEquals(2, actions.queued());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void failedSendsDoNotBlockTheQueue() throws IOException {
+        final EventLoop eventLoop = new EventLoop();
+        final List<IOException> failures = new ArrayList<>();
+        final DatagramSelectionActions[] endpoints = new DatagramSelectionActions[2];
+        initiator.bindDatagram(eventLoop, "127.0.0.1", 0, (data, source) -> {}, pool, 16, 16, sender -> {
+            sender.setSendFailureHandler((data, target, exception) -> failures.add(exception));
+            endpoints[0] = sender;
+            sendTooLargeFirst(endpoints);
+        }, (key, e) -> fail(e.toString()));
+        initiator.bindDatagram(eventLoop, "127.0.0.1", 0, (data, source) -> {
+            received.add(data.get());
+            eventLoop.invokeLater(() -> close(eventLoop));
+        }, pool, 16, 16, target -> {
+            endpoints[1] = target;
+            sendTooLargeFirst(endpoints);
+        }, (key, e) -> fail(e.toString()));
+        eventLoop.invokeAfter(() -> close(eventLoop), 5, TimeUnit.SECONDS);
+        eventLoop.run();
+
+        assertEquals("The datagram after the failed one should still be sent", Arrays.asList((byte) 7), received);
+        assertEquals(1, failures.size());
+        assertEquals(1, endpoints[0].sendFailures());
+        assertEquals(0, endpoints[0].queued());
+    }
+
+    private void sendTooLargeFirst(DatagramSelectionActions[] endpoints) {
+        if (endpoints[0] == null || endpoints[1] == null) {
+            return;
+        }
+        try {
+            final SocketAddress target = endpoints[1].channel().getLocalAddress();
+            // Larger than any UDP datagram, so the send fails.
+            assertTrue(endpoints[0].send(ByteBuffer.allocate(70000), target));
+            assertTrue(endpoints[0].send(ByteBuffer.wrap(new byte[] {7}), target));
+        } catch (final IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    private void sendIfBound(DatagramSelectionActions[] endpoints) {
+        if (endpoints[0] == null || endpoints[1] == null) {
+            return;
+        }
+        try {
+            final SocketAddress target = endpoints[1].channel().getLocalAddress();
+            for (byte value = 1; value <= 3; ++value) {
+                assertTrue(endpoints[0].send(ByteBuffer.wrap(new byte[] {value}), target));
+            }
+        } catch (final IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    private static void close(EventLoop eventLoop) {
+        try {
+            eventLoop.close();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -7,10 +7,17 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Pipe;
 import java.nio.channels.SelectionKey;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
@@ -112,6 +119,170 @@ public class EventLoopTest {
         assertTrue("Should have taken around 50ms. Took " + timeInMillis, timeInMillis >= 50 && timeInMillis <= 65);
     }
 
+    @Test
+    public void testBusySpinWaitStrategy() throws Exception {
+        assertDispatches(WaitStrategy.busySpin());
+    }
+
+    @Test
+    public void testAdaptiveWaitStrategy() throws Exception {
+        assertDispatches(WaitStrategy.adaptive(1000, 100));
+    }
+
+    @Test
+    public void testRebuildSelectorKeepsRegistrations() throws Exception {
+        final EventLoop eventLoop = new EventLoop();
+        final Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        final SelectionKeyInterface[] keys = new SelectionKeyInterface[2];
+        final int[] rebuilt = new int[2];
+        eventLoop.setSelectorRebuildListener((prematureSelects, channels) -> rebuilt[0] = channels);
+        eventLoop.registerHandler(pipe.source(), new SelectionKeyActions() {
+            @Override
+            public int interestOps() {
+                return SelectionKey.OP_READ;
+            }
+
+            @Override
+            public void setSelectionKey(SelectionKeyInterface selectionKey) {
+                keys[keys[0] == null ? 0 : 1] = selectionKey;
+            }
+
+            @Override
+            public void selected() throws IOException {
+                rebuilt[1] = keys[1].isReadable() ? 1 : 0;
+                close(eventLoop);
+            }
+        });
+        eventLoop.rebuildSelector();
+        assertEquals(1, eventLoop.getSelectorRebuildCount());
+        assertEquals("Should report the channels moved to the new selector", 1, rebuilt[0]);
+        assertFalse("Old key should be cancelled", keys[0].isValid());
+        assertEquals(SelectionKey.OP_READ, keys[1].interestOps());
+        pipe.sink().write(ByteBuffer.wrap(new byte[1]));
+        eventLoop.invokeAfter(() -> close(eventLoop), 5, TimeUnit.SECONDS);
+        eventLoop.run();
+        assertEquals("Should be selected through the new selector", 1, rebuilt[1]);
+    }
+
+    @Test(timeout = 10000)
+    public void testFailingHandlerDoesNotTriggerRebuild() throws Exception {
+        final int[] failures = new int[1];
+        final EventLoop eventLoop = new EventLoop((key, e) -> ++failures[0]);
+        eventLoop.setSelectorRebuildThreshold(10);
+        final Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        pipe.sink().write(ByteBuffer.wrap(new byte[1]));
+        // The pipe stays readable, and the handler fails every time it is selected.
+        eventLoop.registerHandler(pipe.source(), SelectionKey.OP_READ, () -> {
+            if (failures[0] == 100) {
+                close(eventLoop);
+                return;
+            }
+            throw new IOException("Handler failure");
+        });
+        eventLoop.run();
+        assertEquals(100, failures[0]);
+        assertEquals("Selects after a failed handler are not premature", 0, eventLoop.getSelectorRebuildCount());
+    }
+
+    @Test(timeout = 5000)
+    public void testFixedRateTaskRepeatsUntilCancelled() throws Exception {
+        final EventLoop eventLoop = new EventLoop();
+        final AtomicInteger runs = new AtomicInteger();
+        final ScheduledFuture<?>[] future = new ScheduledFuture<?>[1];
+        future[0] = eventLoop.scheduleAtFixedRate(() -> {
+            if (runs.incrementAndGet() == 5) {
+                future[0].cancel(false);
+                eventLoop.invokeLater(() -> close(eventLoop));
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS);
+        eventLoop.run();
+        assertEquals(5, runs.get());
+        assertTrue(future[0].isCancelled());
+    }
+
+    @Test(timeout = 5000)
+    public void testExecutorFromAnotherThread() throws Exception {
+        final EventLoop eventLoop = new EventLoop();
+        final Thread loopThread = new Thread(() -> {
+            try {
+                eventLoop.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        loopThread.start();
+        final CompletableFuture<Boolean> inLoop = CompletableFuture.supplyAsync(eventLoop::inEventLoop, eventLoop);
+        assertTrue("Should run on the event loop thread", inLoop.get());
+        assertEquals("done", eventLoop.schedule(() -> "done", 10, TimeUnit.MILLISECONDS).get());
+        try {
+            eventLoop.submit(() -> {
+                throw new IllegalStateException("expected");
+            }).get();
+            fail("Should report the exception through the future");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        eventLoop.shutdown();
+        assertTrue(eventLoop.awaitTermination(1, TimeUnit.SECONDS));
+        loopThread.join();
+        assertTrue(eventLoop.isShutdown());
+        assertTrue(eventLoop.isTerminated());
+    }
+
+    @Test(timeout = 5000)
+    public void testShutdownRunsQueuedTasksAndRejectsNewOnes() throws Exception {
+        final EventLoop eventLoop = new EventLoop();
+        final StringBuilder order = new StringBuilder();
+        eventLoop.execute(() -> {
+            order.append('a');
+            eventLoop.execute(() -> order.append('c'));
+            eventLoop.invokeLater(() -> order.append('d'));
+            order.append('b');
+            eventLoop.shutdown();
+        });
+        eventLoop.scheduleWithFixedDelay(() -> order.append('p'), 1, 1, TimeUnit.HOURS);
+        eventLoop.run();
+        assertEquals("Queued tasks should drain, and periodic tasks should be cancelled", "abcd", order.toString());
+        assertTrue(eventLoop.isTerminated());
+        try {
+            eventLoop.execute(() -> order.append('x'));
+            fail("Should reject tasks after shutdown");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Checks that an event loop using the wait strategy dispatches events and selected channels.
+     */
+    private void assertDispatches(WaitStrategy waitStrategy) throws Exception {
+        final EventLoop eventLoop = new EventLoop(null, waitStrategy);
+        final Pipe pipe = Pipe.open();
+        final boolean[] ran = new boolean[2];
+        pipe.source().configureBlocking(false);
+        eventLoop.registerHandler(pipe.source(), SelectionKey.OP_READ, () -> {
+            ran[1] = true;
+            close(eventLoop);
+        });
+        final Thread other = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+                eventLoop.invokeLater(() -> ran[0] = true);
+                Thread.sleep(20);
+                pipe.sink().write(ByteBuffer.wrap(new byte[1]));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        other.start();
+        eventLoop.invokeAfter(() -> close(eventLoop), 5, TimeUnit.SECONDS);
+        eventLoop.run();
+        other.join();
+        assertTrue("Should run events added from another thread", ran[0]);
+        assertTrue("Should dispatch selected channels", ran[1]);
+    }
 
     private void close(EventLoop eventLoop) {
         try {
@@ -0,0 +1,124 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class FrameDecoderTest {
+    private final BufferPool pool = new BufferPool(16, 4);
+    private final List<String> frames = new ArrayList<>();
+    private final ByteBufferConsumer collector = frame -> {
+        assertTrue("Frames should be read-only", frame.isReadOnly());
+        final byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        frames.add(new String(bytes, StandardCharsets.US_ASCII));
+    };
+
+    @Test
+    public void fixedLengthAcrossReads() throws IOException {
+        final FrameDecoder decoder = new FixedLengthFrameDecoder(collector, 3, pool);
+        decoder.accept(ascii("abcd"));
+        decoder.accept(ascii("ef"));
+        decoder.accept(ascii("ghi"));
+        assertEquals(asList("abc", "def", "ghi"), frames);
+    }
+
+    @Test
+    public void contiguousFramesAreSlicesOfTheInput() throws IOException {
+        final ByteBuffer input = ByteBuffer.allocateDirect(8);
+        input.put(new byte[] {0, 2, 'h', 'i', 0, 1, '!', 0}).flip();
+        final List<ByteBuffer> received = new ArrayList<>();
+        new LengthFieldFrameDecoder(received::add, 2, 16, true, pool).accept(input);
+        assertEquals(2, received.size());
+        assertFalse("Input should be fully consumed", input.hasRemaining());
+        input.put(2, (byte) 'H');
+        assertEquals("Frame should share content with the input", 'H', received.get(0).get(0));
+    }
+
+    @Test
+    public void lengthFieldSplitInsideHeader() throws IOException {
+        final FrameDecoder decoder = new LengthFieldFrameDecoder(collector, 4, 64, true, pool);
+        decoder.accept(bytes(0, 0));
+        decoder.accept(bytes(0, 5, 'h', 'e'));
+        decoder.accept(bytes('l', 'l', 'o', 0, 0, 0, 1, 'x', 0, 0));
+        assertEquals(asList("hello", "x"), frames);
+        decoder.accept(bytes(0, 2, 'o', 'k'));
+        assertEquals(asList("hello", "x", "ok"), frames);
+    }
+
+    @Test
+    public void lengthFieldKeepsHeaderWhenNotStripping() throws IOException {
+        final List<Integer> sizes = new ArrayList<>();
+        final FrameDecoder decoder = new LengthFieldFrameDecoder(frame -> sizes.add(frame.remaining()), 1, 64, false, pool);
+        decoder.accept(bytes(3, 'a', 'b', 'c', 0));
+        assertEquals(asList(4, 1), sizes);
+    }
+
+    @Test
+    public void framesLargerThanPooledBuffers() throws IOException {
+        final FrameDecoder decoder = new LengthFieldFrameDecoder(collector, 1, 64, true, pool);
+        decoder.accept(bytes(40));
+        for (int i = 0; i < 40; ++i) {
+            decoder.accept(ascii("z"));
+        }
+        assertEquals(1, frames.size());
+        assertEquals(40, frames.get(0).length());
+    }
+
+    @Test(expected = IOException.class)
+    public void lengthFieldTooLong() throws IOException {
+        new LengthFieldFrameDecoder(collector, 8, 64, true, pool).accept(bytes(0, 0, 0, 0, 0, 0, 1, 0));
+    }
+
+    @Test
+    public void linesWithDelimiterSplitAcrossReads() throws IOException {
+        final FrameDecoder decoder = DelimiterFrameDecoder.lines(collector, 64, pool);
+        decoder.accept(ascii("one\r\ntw"));
+        decoder.accept(ascii("o\r"));
+        decoder.accept(ascii("\nthree\n\n"));
+        assertEquals(asList("one", "two", "three", ""), frames);
+    }
+
+    @Test
+    public void multiByteDelimiterStraddlingReads() throws IOException {
+        final FrameDecoder decoder = new DelimiterFrameDecoder(collector, "<>".getBytes(StandardCharsets.US_ASCII), 64, false, pool);
+        decoder.accept(ascii("ab<"));
+        decoder.accept(ascii(">cd<>e"));
+        assertEquals(asList("ab<>", "cd<>"), frames);
+        decoder.accept(ascii("<>"));
+        assertEquals(asList("ab<>", "cd<>", "e<>"), frames);
+    }
+
+    @Test(expected = IOException.class)
+    public void delimiterNotFoundWithinMaximum() throws IOException {
+        final FrameDecoder decoder = DelimiterFrameDecoder.lines(collector, 8, pool);
+        decoder.accept(ascii("12345"));
+        decoder.accept(ascii("6789"));
+    }
+
+    private static List<Object> asList(Object... values) {
+        return java.util.Arrays.asList(values);
+    }
+
+    private static ByteBuffer ascii(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer bytes(int... values) {
+        final ByteBuffer buffer = ByteBuffer.allocate(values.length);
+        for (final int value : values) {
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
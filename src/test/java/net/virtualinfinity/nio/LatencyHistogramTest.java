@@ -0,0 +1,92 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesWithinPrecision() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; ++value) {
+            histogram.recordValue(value * 1000);
+        }
+        assertEquals(100000, histogram.getTotalCount());
+        assertEquals(1000, histogram.getMinValue());
+        assertEquals(100000000, histogram.getMaxValue());
+        assertWithinPrecision(50000000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(99000000, histogram.getValueAtPercentile(99));
+        assertWithinPrecision(99900000, histogram.getValueAtPercentile(99.9));
+        assertEquals(100000000, histogram.getValueAtPercentile(100));
+        assertEquals(50000500, histogram.getMean(), 1);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(1);
+        histogram.recordValue(2);
+        histogram.recordValue(3);
+        histogram.recordValue(2047);
+        assertEquals(2, histogram.getValueAtPercentile(50));
+        assertEquals(2047, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void coordinatedOmissionCorrection() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValueWithExpectedInterval(1000, 100);
+        assertEquals("Should back-fill the samples missed during the stall", 10, histogram.getTotalCount());
+        assertEquals(100, histogram.getMinValue());
+        assertEquals(1000, histogram.getMaxValue());
+    }
+
+    @Test
+    public void valuesAboveHighestTrackableAreClamped() {
+        final LatencyHistogram histogram = new LatencyHistogram(1000000, 2);
+        histogram.recordValue(5000000);
+        assertEquals(1000000, histogram.getMaxValue());
+    }
+
+    @Test
+    public void addCombinesCounts() {
+        final LatencyHistogram a = new LatencyHistogram();
+        final LatencyHistogram b = new LatencyHistogram();
+        a.recordValue(10);
+        b.recordValue(20);
+        b.recordValue(30);
+        a.add(b);
+        assertEquals(3, a.getTotalCount());
+        assertEquals(10, a.getMinValue());
+        assertEquals(30, a.getMaxValue());
+    }
+
+    @Test
+    public void reports() throws IOException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; ++value) {
+            histogram.recordValue(TimeUnit.MICROSECONDS.toNanos(value));
+        }
+        final StringBuilder text = new StringBuilder();
+        histogram.writeReport(text, TimeUnit.MICROSECONDS);
+        assertTrue(text.toString(), text.toString().contains("count=1000"));
+        assertTrue(text.toString(), text.toString().contains("p99.9="));
+
+        final StringBuilder csv = new StringBuilder();
+        histogram.writeCsv(csv, TimeUnit.MICROSECONDS, 5);
+        final String[] lines = csv.toString().split("\n");
+        assertEquals("Value,Percentile,TotalCount,1/(1-Percentile)", lines[0]);
+        assertTrue(lines[lines.length - 1], lines[lines.length - 1].startsWith("1000.000,1.0"));
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertEquals(expected, actual, expected / 1000.0);
+    }
+}
@@ -0,0 +1,53 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link LoadGenerator} request/response load test from the command line.
+ *
+ * <p>
+ * This is not a unit test.  Run its main method with the test classpath, eg. after <code>mvn test-compile</code>:
+ * <pre>
+ * java -cp target/classes:target/test-classes net.virtualinfinity.nio.LoadGeneratorMain host port connections requestsPerSecond durationSeconds requestSize responseSize [csvFile]
+ * </pre>
+ * A response size of 0 runs a streaming workload.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class LoadGeneratorMain {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 7) {
+            System.err.println("Usage: LoadGeneratorMain host port connections requestsPerSecond durationSeconds requestSize responseSize [csvFile]");
+            System.exit(1);
+        }
+        final byte[] request = new byte[Integer.parseInt(args[5])];
+        Arrays.fill(request, (byte) 'x');
+        final int responseSize = Integer.parseInt(args[6]);
+        final LoadGenerator.Workload workload = responseSize == 0 ?
+            LoadGenerator.Workload.streaming(ByteBuffer.wrap(request)) :
+            LoadGenerator.Workload.requestResponse(ByteBuffer.wrap(request), responseSize);
+        final LoadGenerator generator = new LoadGenerator(new ConnectionInitiator(), args[0], Integer.parseInt(args[1]),
+            workload, Integer.parseInt(args[2]), Double.parseDouble(args[3]));
+        final LatencyHistogram result = generator.run(Long.parseLong(args[4]), TimeUnit.SECONDS);
+        final PrintWriter out = new PrintWriter(System.out);
+        out.printf("sent=%d completed=%d failedConnections=%d%n", generator.getRequestsSent(),
+            generator.getRequestsCompleted(), generator.getFailedConnections());
+        result.writeReport(out, TimeUnit.MICROSECONDS);
+        out.flush();
+        if (args.length > 7) {
+            try (Writer csv = Files.newBufferedWriter(Paths.get(args[7]), StandardCharsets.UTF_8)) {
+                result.writeCsv(csv, TimeUnit.MICROSECONDS, 5);
+            }
+        }
+        // The address resolver's threads would otherwise keep the JVM alive.
+        System.exit(0);
+    }
+}
@@ -0,0 +1,90 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class LoadGeneratorTest {
+    private static final int CONNECTIONS = 2;
+    private static final int REQUEST_SIZE = 16;
+    private static final int RESPONSE_SIZE = 32;
+
+    @Test(timeout = 10000)
+    public void recordsALatencyForEveryRequest() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            final List<Thread> responders = new ArrayList<>();
+            final Thread acceptor = new Thread(() -> {
+                try {
+                    for (int i = 0; i < CONNECTIONS; ++i) {
+                        final Thread responder = new Thread(respondTo(server.accept()));
+                        responders.add(responder);
+                        responder.start();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            acceptor.start();
+
+            final LoadGenerator generator = new LoadGenerator(new ConnectionInitiator(), server.getLocalAddress(),
+                LoadGenerator.Workload.requestResponse(ByteBuffer.allocate(REQUEST_SIZE), RESPONSE_SIZE), CONNECTIONS, 100);
+            final LatencyHistogram histogram = generator.run(500, TimeUnit.MILLISECONDS);
+            acceptor.join();
+            for (final Thread responder : responders) {
+                responder.join();
+            }
+
+            assertEquals(0, generator.getFailedConnections());
+            assertTrue("Expected about 50 requests in 500ms at 100/s, sent " + generator.getRequestsSent(),
+                generator.getRequestsSent() >= 40 && generator.getRequestsSent() <= 52);
+            assertEquals(generator.getRequestsSent(), generator.getRequestsCompleted());
+            assertEquals(generator.getRequestsCompleted(), histogram.getTotalCount());
+            assertTrue(histogram.getMaxValue() > 0);
+
+            final StringBuilder report = new StringBuilder();
+            histogram.writeReport(report, TimeUnit.MICROSECONDS);
+            assertTrue(report.toString(), report.toString().startsWith("count=" + generator.getRequestsCompleted()));
+            assertTrue(report.toString(), report.toString().contains("p99="));
+        }
+    }
+
+    /**
+     * Answers each complete request with a response, until the generator closes the connection.
+     */
+    private static Runnable respondTo(SocketChannel channel) {
+        return () -> {
+            try {
+                final ByteBuffer request = ByteBuffer.allocate(REQUEST_SIZE);
+                while (channel.read(request) >= 0) {
+                    if (!request.hasRemaining()) {
+                        request.clear();
+                        final ByteBuffer response = ByteBuffer.allocate(RESPONSE_SIZE);
+                        while (response.hasRemaining()) {
+                            channel.write(response);
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+                // The generator closed the connection.
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        };
+    }
+}
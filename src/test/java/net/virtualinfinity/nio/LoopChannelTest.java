@@ -0,0 +1,121 @@
+package net.virtualinfinity.nio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class LoopChannelTest {
+    private EventLoop receiver;
+
+    @Before
+    public void setUp() throws IOException {
+        receiver = new EventLoop();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        receiver.close();
+    }
+
+    @Test
+    public void offerFailsWhenFull() {
+        final List<Integer> received = new ArrayList<>();
+        final LoopChannel<Integer> channel = new LoopChannel<>(receiver, 3, received::add);
+        assertEquals(4, channel.capacity());
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(channel.offer(i));
+        }
+        assertFalse("The receiver hasn't drained, so the channel should be full", channel.offer(4));
+        assertEquals(4, channel.size());
+    }
+
+    @Test
+    public void offerFailsOnceClosed() {
+        final List<Integer> received = new ArrayList<>();
+        final LoopChannel<Integer> channel = new LoopChannel<>(receiver, 4, received::add);
+        assertTrue(channel.offer(1));
+        channel.close();
+        assertTrue(channel.isClosed());
+        assertFalse("A closed channel is never drained, so it should refuse messages", channel.offer(2));
+        assertEquals(1, channel.size());
+    }
+
+    @Test(timeout = 10000)
+    public void deliversEverySendersMessagesInOrder() throws Exception {
+        final int senders = 3;
+        final int messagesPerSender = 100000;
+        final int[] next = new int[senders];
+        final List<String> errors = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(senders * messagesPerSender);
+        final LoopChannel<long[]> channel = new LoopChannel<>(receiver, 64, message -> {
+            final int sender = (int) message[0];
+            if (message[1] != next[sender]) {
+                errors.add("Sender " + sender + " expected " + next[sender] + " got " + message[1]);
+            }
+            next[sender] = (int) message[1] + 1;
+            done.countDown();
+        });
+        final Thread loop = new Thread(() -> {
+            try {
+                receiver.run();
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        loop.start();
+        final List<Thread> threads = new ArrayList<>();
+        for (int sender = 0; sender < senders; ++sender) {
+            final long id = sender;
+            final Thread thread = new Thread(() -> {
+                for (long sequence = 0; sequence < messagesPerSender; ++sequence) {
+                    while (!channel.offer(new long[] {id, sequence})) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Only " + (senders * messagesPerSender - done.getCount()) + " messages delivered", done.await(5, TimeUnit.SECONDS));
+        receiver.shutdown();
+        loop.join();
+        assertEquals(errors.toString(), 0, errors.size());
+        assertEquals(0, channel.size());
+    }
+
+    @Test(timeout = 5000)
+    public void wakesASpinningLoop() throws Exception {
+        receiver.close();
+        receiver = new EventLoop(null, WaitStrategy.busySpin());
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final LoopChannel<String> channel = new LoopChannel<>(receiver, 16, message -> delivered.countDown());
+        final Thread loop = new Thread(() -> {
+            try {
+                receiver.run();
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        loop.start();
+        Thread.sleep(20);
+        assertTrue(channel.offer("message"));
+        assertTrue(delivered.await(2, TimeUnit.SECONDS));
+        channel.close();
+        receiver.shutdown();
+        loop.join();
+    }
+}
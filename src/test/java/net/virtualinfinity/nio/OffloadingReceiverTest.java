@@ -0,0 +1,140 @@
+package net.virtualinfinity.nio;
+
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class OffloadingReceiverTest {
+    @Rule
+    public JUnitRuleMockery context = new JUnitRuleMockery();
+    @Mock
+    private SocketChannelInterface channel;
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+    private final OutputBuffer outputBuffer = new OutputBuffer();
+    private final List<IOException> failures = new ArrayList<>();
+    private EventLoop eventLoop;
+
+    @Before
+    public void createEventLoop() throws IOException {
+        eventLoop = new EventLoop();
+    }
+
+    @After
+    public void shutdownWorkers() {
+        workers.shutdownNow();
+    }
+
+    @Test(timeout = 5000)
+    public void resultsAreSentInReceiveOrder() throws Exception {
+        final OffloadingReceiver receiver = new OffloadingReceiver(eventLoop, workers, data -> {
+            // Make later blocks likely to finish first, if they were processed concurrently.
+            sleep(data.remaining() % 3);
+            return data;
+        }, outputBuffer, Long.MAX_VALUE, failures::add);
+        final StringBuilder expected = new StringBuilder();
+        eventLoop.execute(() -> {
+            for (int i = 0; i < 100; ++i) {
+                final String block = i + ",";
+                expected.append(block);
+                receiver.accept(ByteBuffer.wrap(block.getBytes(StandardCharsets.US_ASCII)));
+            }
+        });
+        closeWhenIdle(receiver);
+        eventLoop.run();
+        assertEquals(expected.toString(), sentText());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void suspendsReadingWhileTooMuchIsPending() throws Exception {
+        final SocketSelectionActions actions = new SocketSelectionActions(channel, null, null, outputBuffer, 8, false);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final OffloadingReceiver receiver = new OffloadingReceiver(eventLoop, workers, data -> {
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return null;
+        }, outputBuffer, 10, failures::add);
+        receiver.setFlowControl(actions);
+        final boolean[] suspended = new boolean[2];
+        eventLoop.execute(() -> {
+            receiver.accept(ByteBuffer.allocate(6));
+            suspended[0] = actions.isReadingSuspended();
+            receiver.accept(ByteBuffer.allocate(6));
+            suspended[1] = actions.isReadingSuspended();
+            proceed.countDown();
+        });
+        closeWhenIdle(receiver);
+        eventLoop.run();
+        assertFalse("Should read while below the limit", suspended[0]);
+        assertTrue("Should suspend reading at the limit", suspended[1]);
+        assertFalse("Should resume reading once processed", actions.isReadingSuspended());
+    }
+
+    @Test(timeout = 5000)
+    public void failureStopsProcessing() throws Exception {
+        final OffloadingReceiver receiver = new OffloadingReceiver(eventLoop, workers, data -> {
+            if (data.get(0) == 'x') {
+                throw new IOException("Invalid");
+            }
+            return data;
+        }, outputBuffer, Long.MAX_VALUE, failures::add);
+        eventLoop.execute(() -> {
+            receiver.accept(ByteBuffer.wrap("a".getBytes(StandardCharsets.US_ASCII)));
+            receiver.accept(ByteBuffer.wrap("x".getBytes(StandardCharsets.US_ASCII)));
+            receiver.accept(ByteBuffer.wrap("b".getBytes(StandardCharsets.US_ASCII)));
+        });
+        closeWhenIdle(receiver);
+        eventLoop.run();
+        assertEquals(1, failures.size());
+        assertEquals("a", sentText());
+    }
+
+    private void closeWhenIdle(OffloadingReceiver receiver) {
+        eventLoop.scheduleWithFixedDelay(() -> {
+            if (receiver.pendingBytes() == 0) {
+                eventLoop.shutdown();
+            }
+        }, 10, 1, TimeUnit.MILLISECONDS);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private String sentText() throws IOException {
+        final StringBuilder sent = new StringBuilder();
+        outputBuffer.send(buffer -> {
+            while (buffer.hasRemaining()) {
+                sent.append((char) buffer.get());
+            }
+        });
+        return sent.toString();
+    }
+}
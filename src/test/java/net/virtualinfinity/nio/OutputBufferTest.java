@@ -4,6 +4,9 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -32,4 +35,210 @@ public class OutputBufferTest {
         assertArrayEquals(new byte[]{10, 11, 12, 13, 14, 15, 16, 17, 18}, output.array());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void spillsPastMemoryLimitAndSendsInOrder() throws IOException {
+        final Path directory = Files.createTempDirectory("nio-spill");
+        try {
+            final OutputBuffer buffer = new OutputBuffer(8, 16, directory, 32);
+            final byte[] expected = new byte[100];
+            for (int i = 0; i < expected.length; ++i) {
+                expected[i] = (byte) i;
+            }
+            for (int offset = 0; offset < expected.length; offset += 10) {
+                buffer.append(ByteBuffer.wrap(expected, offset, 10));
+            }
+            assertEquals(100, buffer.remaining());
+            assertEquals(84, buffer.spilled());
+
+            final ByteBuffer output = ByteBuffer.allocate(100);
+            final ByteBuffer window = ByteBuffer.allocate(7);
+            while (buffer.hasRemaining()) {
+                window.clear();
+                buffer.send(src -> BufferUtils.putWhatFits(window, src));
+                window.flip();
+                output.put(window);
+            }
+            assertArrayEquals(expected, output.array());
+            assertEquals(0, buffer.spilled());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals("Sent segments should be deleted", 0, files.count());
+            }
+
+            buffer.append(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+            assertEquals("Should use memory again once the spill is drained", 0, buffer.spilled());
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void clearDeletesSegments() throws IOException {
+        final Path directory = Files.createTempDirectory("nio-spill");
+        try {
+            final OutputBuffer buffer = new OutputBuffer(8, 0, directory, 16);
+            buffer.append(ByteBuffer.wrap(new byte[40]));
+            assertEquals(40, buffer.spilled());
+            buffer.clear();
+            assertFalse(buffer.hasRemaining());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void appendOwnedSendsByReferenceAndReleases() throws IOException {
+        final OutputBuffer buffer = new OutputBuffer(8);
+        final boolean[] released = new boolean[2];
+        buffer.append(ByteBuffer.wrap(new byte[] {1, 2}));
+        final ByteBuffer large = ByteBuffer.wrap(new byte[] {3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+        buffer.appendOwned(large, () -> released[0] = true);
+        assertFalse("Should have taken the whole buffer", large.hasRemaining());
+        buffer.appendOwned(ByteBuffer.wrap(new byte[] {13}), () -> released[1] = true);
+        assertTrue("Small appends should be copied and released immediately", released[1]);
+        assertEquals(13, buffer.remaining());
+
+        final ByteBuffer output = ByteBuffer.allocate(13);
+        final ByteBuffer[] accepted = new ByteBuffer[3];
+        final int[] calls = new int[1];
+        buffer.send(src -> {
+            if (calls[0] < accepted.length) {
+                accepted[calls[0]] = src;
+            }
+            calls[0]++;
+            BufferUtils.putWhatFits(output, src);
+        });
+        assertTrue("Should be released once sent", released[0]);
+        assertSame("Owned buffer should be sent without copying", large.array(), accepted[1].array());
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13}, output.array());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void appendOwnedPartialSend() throws IOException {
+        final OutputBuffer buffer = new OutputBuffer(4);
+        final boolean[] released = new boolean[1];
+        buffer.appendOwned(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6}), () -> released[0] = true);
+        final ByteBuffer output = ByteBuffer.allocate(4);
+        buffer.send(src -> BufferUtils.putWhatFits(output, src));
+        assertFalse(released[0]);
+        assertEquals(2, buffer.remaining());
+        buffer.clear();
+        assertTrue("Clearing should release owned buffers", released[0]);
+    }
+
+    @Test
+    public void writerEncodesAcrossPooledChunks() throws IOException {
+        final BufferPool pool = new BufferPool(8, 4);
+        final OutputBuffer buffer = new OutputBuffer(pool);
+        final int[] notifications = new int[1];
+        buffer.addNewDataListener(() -> notifications[0]++);
+        final OutputBuffer.Writer writer = buffer.writer();
+        writer.putByte(1).putShort(0x0203).putInt(0x04050607).putLong(0x08090A0B0C0D0E0FL)
+            .putVarint(300).putUtf8("h\u00e9\u20ac\ud83d\ude00").putBytes(new byte[] {42, 43}, 0, 2);
+        assertEquals(0, notifications[0]);
+        writer.commit();
+        assertEquals("Listeners should be notified once per commit", 1, notifications[0]);
+
+        final byte[] expected = {
+            1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, (byte) 0xAC, 0x02,
+            'h', (byte) 0xC3, (byte) 0xA9, (byte) 0xE2, (byte) 0x82, (byte) 0xAC,
+            (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80, 42, 43};
+        assertEquals(expected.length, buffer.remaining());
+        assertArrayEquals(expected, sendAll(buffer));
+    }
+
+    @Test
+    public void writerBackFillsLengthPrefix() throws IOException {
+        final OutputBuffer buffer = new OutputBuffer(4);
+        final OutputBuffer.Writer writer = buffer.writer();
+        final int length = writer.reserveInt();
+        writer.putUtf8("hello");
+        try {
+            writer.commit();
+            fail("Should not commit with an unfilled reservation");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        writer.fillInt(length, writer.writtenSince(length));
+        writer.commit();
+        assertArrayEquals(new byte[] {0, 0, 0, 5, 'h', 'e', 'l', 'l', 'o'}, sendAll(buffer));
+    }
+
+    @Test
+    public void refusesToSendUnfilledReservations() throws IOException {
+        final OutputBuffer buffer = new OutputBuffer(4);
+        final OutputBuffer.Writer writer = buffer.writer();
+        buffer.append(ByteBuffer.wrap(new byte[] {1, 2}));
+        final int length = writer.reserveInt();
+        writer.putByte(3);
+        final int[] sent = new int[1];
+        try {
+            buffer.send(src -> sent[0] += src.remaining());
+            fail("Should not send a placeholder");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        try {
+            buffer.sendGathering((srcs, offset, count) -> sent[0]++);
+            fail("Should not send a placeholder");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals("Nothing should have been sent", 0, sent[0]);
+        writer.fillInt(length, writer.writtenSince(length));
+        writer.commit();
+        assertArrayEquals(new byte[] {1, 2, 0, 0, 0, 1, 3}, sendAll(buffer));
+    }
+
+    @Test
+    public void clearDiscardsReservations() throws IOException {
+        final OutputBuffer buffer = new OutputBuffer(new BufferPool(8, 1));
+        final OutputBuffer.Writer writer = buffer.writer();
+        final int length = writer.reserveInt();
+        buffer.clear();
+        try {
+            writer.fillInt(length, 0);
+            fail("The reservation's chunk was released");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        writer.putByte(1).commit();
+        assertArrayEquals(new byte[] {1}, sendAll(buffer));
+    }
+
+    @Test
+    public void reservationsRespectTheMemoryLimit() throws IOException {
+        final Path directory = Files.createTempDirectory("nio-spill");
+        try {
+            final OutputBuffer buffer = new OutputBuffer(8, 6, directory, 16);
+            final OutputBuffer.Writer writer = buffer.writer();
+            writer.putShort(1);
+            writer.putInt(2);
+            try {
+                writer.reserveInt();
+                fail("Should not reserve space past the memory limit");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+            assertEquals(6, buffer.remaining());
+            assertEquals(0, buffer.spilled());
+            buffer.clear();
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    private static byte[] sendAll(OutputBuffer buffer) throws IOException {
+        final ByteBuffer output = ByteBuffer.allocate((int) buffer.remaining());
+        buffer.send(src -> BufferUtils.putWhatFits(output, src));
+        assertFalse(buffer.hasRemaining());
+        return output.array();
+    }
+}
@@ -0,0 +1,60 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Measures the cost of passing buffers through pipelines with an increasing number of pass-through stages.
+ *
+ * <p>
+ * This is not a unit test.  Run its main method with the test classpath, eg. after <code>mvn test-compile</code>:
+ * <pre>
+ * java -cp target/classes:target/test-classes net.virtualinfinity.nio.PipelineBenchmark
+ * </pre>
+ * The outbound figures include appending to, and draining, the output buffer.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class PipelineBenchmark {
+    private static final int ITERATIONS = 5000000;
+    private static final int[] STAGE_COUNTS = {0, 1, 2, 4, 8};
+
+    public static void main(String[] args) throws IOException {
+        final ByteBuffer data = ByteBuffer.allocateDirect(1024);
+        final long[] sink = new long[1];
+        final ByteBufferConsumer receiver = src -> sink[0] += src.remaining();
+        System.out.printf("%-8s %12s %12s%n", "stages", "inbound ns", "outbound ns");
+        for (int round = 0; round < 2; ++round) {
+            for (final int stageCount : STAGE_COUNTS) {
+                final OutputBuffer outputBuffer = new OutputBuffer();
+                final Pipeline pipeline = new Pipeline(receiver, outputBuffer);
+                for (int i = 0; i < stageCount; ++i) {
+                    pipeline.addLast(new PipelineStage() {});
+                }
+                final double inbound = measure(() -> pipeline.accept(data));
+                final double outbound = measure(() -> {
+                    data.clear();
+                    pipeline.write(data);
+                    outputBuffer.send(src -> src.position(src.limit()));
+                });
+                // The first round is warm-up.
+                if (round == 1) {
+                    System.out.printf("%-8d %12.2f %12.2f%n", stageCount, inbound, outbound);
+                }
+            }
+        }
+        System.out.println("(checksum " + sink[0] + ")");
+    }
+
+    private static double measure(Operation operation) throws IOException {
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            operation.run();
+        }
+        return (double) (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private interface Operation {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,98 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class PipelineTest {
+    private final List<String> calls = new ArrayList<>();
+    private final List<ByteBuffer> received = new ArrayList<>();
+    private final OutputBuffer outputBuffer = new OutputBuffer();
+    private final Pipeline pipeline = new Pipeline(received::add, outputBuffer);
+
+    @Test
+    public void inboundFlowsFromSocketToApplication() throws IOException {
+        pipeline.addLast(new Recording("b")).addFirst(new Recording("a")).addLast(new Recording("c"));
+        final ByteBuffer data = ByteBuffer.allocate(4);
+        pipeline.accept(data);
+        assertEquals(Arrays.asList("a in", "b in", "c in"), calls);
+        assertSame("Buffers should be passed by reference", data, received.get(0));
+    }
+
+    @Test
+    public void outboundFlowsFromApplicationToSocket() throws IOException {
+        final Recording a = new Recording("a");
+        pipeline.addFirst(a).addAfter(a, new Recording("b"));
+        pipeline.write(ByteBuffer.allocate(4));
+        assertEquals(Arrays.asList("b out", "a out"), calls);
+        assertEquals(4, outputBuffer.remaining());
+    }
+
+    @Test
+    public void stageCanRemoveItself() throws IOException {
+        final PipelineStage once = new PipelineStage() {
+            @Override
+            public void inbound(ByteBuffer data, ByteBufferConsumer next) throws IOException {
+                calls.add("once");
+                pipeline.remove(this);
+                next.accept(data);
+            }
+
+            @Override
+            public void removed(Pipeline removedFrom) {
+                calls.add("removed");
+            }
+        };
+        pipeline.addFirst(once);
+        pipeline.accept(ByteBuffer.allocate(1));
+        pipeline.accept(ByteBuffer.allocate(1));
+        assertEquals(Arrays.asList("once", "removed"), calls);
+        assertEquals(2, received.size());
+        assertTrue(pipeline.stages().isEmpty());
+    }
+
+    @Test
+    public void stageCanTransformData() throws IOException {
+        pipeline.addLast(new PipelineStage() {
+            @Override
+            public void inbound(ByteBuffer data, ByteBufferConsumer next) throws IOException {
+                final ByteBuffer slice = data.slice();
+                slice.limit(1);
+                data.position(data.limit());
+                next.accept(slice);
+            }
+        });
+        pipeline.accept(ByteBuffer.wrap(new byte[] {7, 8, 9}));
+        assertEquals(1, received.get(0).remaining());
+        assertEquals(7, received.get(0).get());
+    }
+
+    private final class Recording implements PipelineStage {
+        private final String name;
+
+        Recording(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void inbound(ByteBuffer data, ByteBufferConsumer next) throws IOException {
+            calls.add(name + " in");
+            next.accept(data);
+        }
+
+        @Override
+        public void outbound(ByteBuffer data, ByteBufferConsumer next) throws IOException {
+            calls.add(name + " out");
+            next.accept(data);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class SelectionKeyWrapperTest {
+    private final CountingSelectionKey key = new CountingSelectionKey();
+
+    @Test
+    public void skipsUnchangedInterestOps() {
+        final SelectionKeyWrapper wrapper = new SelectionKeyWrapper(key);
+        wrapper.interestOps(SelectionKey.OP_READ);
+        assertEquals("Unchanged interest should not touch the key", 0, key.updates);
+        wrapper.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        wrapper.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        assertEquals(1, key.updates);
+        assertEquals(SelectionKey.OP_READ | SelectionKey.OP_WRITE, key.interestOps());
+    }
+
+    @Test
+    public void defersUpdatesOnEventLoopUntilBeforeSelect() throws IOException {
+        final EventLoop eventLoop = new EventLoop();
+        final SelectionKeyWrapper wrapper = new SelectionKeyWrapper(key, eventLoop);
+        eventLoop.invokeLater(() -> {
+            wrapper.interestOps(SelectionKey.OP_WRITE);
+            wrapper.interestOps(0);
+            wrapper.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            assertEquals("Should wait for the end of the iteration", 0, key.updates);
+            assertEquals(SelectionKey.OP_READ | SelectionKey.OP_WRITE, wrapper.interestOps());
+            eventLoop.invokeLater(() -> {
+                assertEquals("Should apply only the final interest set", 1, key.updates);
+                assertEquals(SelectionKey.OP_READ | SelectionKey.OP_WRITE, key.interestOps());
+                wrapper.interestOps(SelectionKey.OP_WRITE);
+                wrapper.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                eventLoop.invokeLater(() -> {
+                    assertEquals("Changing and changing back should not update the key", 1, key.updates);
+                    try {
+                        eventLoop.close();
+                    } catch (IOException e) {
+                        fail(e.toString());
+                    }
+                });
+            });
+        });
+        eventLoop.run();
+    }
+
+    @Test
+    public void changeFromAnotherThreadWinsOverAQueuedUpdate() throws Exception {
+        final EventLoop eventLoop = new EventLoop();
+        final SelectionKeyWrapper wrapper = new SelectionKeyWrapper(key, eventLoop);
+        eventLoop.invokeLater(() -> {
+            wrapper.interestOps(SelectionKey.OP_WRITE);
+            final Thread other = new Thread(() -> wrapper.interestOps(0));
+            other.start();
+            try {
+                other.join();
+            } catch (InterruptedException e) {
+                fail(e.toString());
+            }
+            assertEquals("Another thread's change should apply immediately", 0, key.interestOps());
+            assertEquals(0, wrapper.interestOps());
+            eventLoop.invokeLater(() -> {
+                assertEquals("The queued update should not undo the later change", 0, key.interestOps());
+                try {
+                    eventLoop.close();
+                } catch (IOException e) {
+                    fail(e.toString());
+                }
+            });
+        });
+        eventLoop.run();
+    }
+
+    private static class CountingSelectionKey extends SelectionKey {
+        private int interestOps = SelectionKey.OP_READ;
+        private int updates;
+
+        @Override
+        public SelectableChannel channel() {
+            return null;
+        }
+
+        @Override
+        public Selector selector() {
+            return null;
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public int interestOps() {
+            return interestOps;
+        }
+
+        @Override
+        public SelectionKey interestOps(int ops) {
+            ++updates;
+            interestOps = ops;
+            return this;
+        }
+
+        @Override
+        public int readyOps() {
+            return 0;
+        }
+    }
+}
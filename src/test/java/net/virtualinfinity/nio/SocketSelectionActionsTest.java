@@ -15,8 +15,12 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import static org.junit.Assert.*;
 
@@ -124,6 +128,108 @@ public class SocketSelectionActionsTest {
 
     }
 
+    @Test
+    public void eagerWriteSendsImmediately() throws IOException {
+        channelState.startsAs(CONNECTED);
+        context.checking(expectations());
+        context.checking(new Expectations() {{
+            oneOf(channel).write(with.is(Expectations.anything())); will(consumeByteBufferAndReturn(10));
+        }});
+        final SocketSelectionActions actions = createActions(INPUT_BUFFER_SIZE, false);
+        actions.setEagerWrite(true);
+        outputBuffer.append(ByteBuffer.allocate(10));
+        assertFalse(outputBuffer.hasRemaining());
+        assertEquals(SelectionKey.OP_READ, actions.interestOps());
+    }
+
+    @Test
+    public void eagerWriteFallsBackToBuffering() throws IOException {
+        channelState.startsAs(CONNECTED);
+        context.checking(expectations());
+        context.checking(new Expectations() {{
+            oneOf(channel).write(with.is(Expectations.anything())); will(returnValue(0)); inSequence(sequence);
+            oneOf(channel).write(with.is(Expectations.anything())); will(throwException(new IOException())); inSequence(sequence);
+        }});
+        final SocketSelectionActions actions = createActions(INPUT_BUFFER_SIZE, false);
+        actions.setEagerWrite(true);
+        outputBuffer.append(ByteBuffer.allocate(10));
+        assertEquals(SelectionKey.OP_READ | SelectionKey.OP_WRITE, actions.interestOps());
+        outputBuffer.append(ByteBuffer.allocate(10));
+        assertEquals("Should only write eagerly when the buffer was empty", 20, outputBuffer.remaining());
+        outputState.become(WRITABLE);
+        try {
+            actions.selected();
+            fail("Should report the write failure when selected");
+        } catch (final IOException expected) {
+            assertEquals(20, outputBuffer.remaining());
+        }
+    }
+
+    @Test
+    public void eagerWriteFailureDisconnects() throws IOException {
+        channelState.startsAs(CONNECTED);
+        context.checking(expectations());
+        context.checking(new Expectations() {{
+            oneOf(channel).write(with.is(Expectations.anything())); will(throwException(new IOException()));
+            oneOf(connectionListener).disconnected();
+            oneOf(channel).close();
+        }});
+        final SocketSelectionActions actions = createActions(INPUT_BUFFER_SIZE, false);
+        actions.setEagerWrite(true);
+        outputBuffer.append(ByteBuffer.allocate(10));
+    }
+
+    @Test
+    public void corkingGathersAppendsIntoOneWrite() throws IOException {
+        channelState.startsAs(CONNECTED);
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+            // Keep the peer open, so that the client doesn't become readable.
+            final SocketChannel peer = server.accept();
+            client.configureBlocking(false);
+            final EventLoop eventLoop = new EventLoop();
+            context.checking(new Expectations() {{
+                allowing(channel).isOpen(); will(returnValue(true));
+                allowing(channel).isConnectionPending(); will(returnValue(false));
+                allowing(channel).isConnected(); will(returnValue(true));
+                allowing(channel).selectableChannel(); will(returnValue(client));
+                // One write for the first iteration, then one at the threshold and one for the rest in the second.
+                exactly(3).of(channel).write(with(any(ByteBuffer[].class)), with(any(int.class)), with(any(int.class))); will(new ConsumeByteBuffers());
+            }});
+            final SocketSelectionActions actions = new SocketSelectionActions(channel, connectionListener, receiver, outputBuffer, INPUT_BUFFER_SIZE, false);
+            actions.setCorking(true, 2048);
+            actions.register(eventLoop);
+            // Each step queues the next, so they run in consecutive loop iterations.
+            eventLoop.invokeLater(() -> {
+                for (int i = 0; i < 100; ++i) {
+                    outputBuffer.append(ByteBuffer.allocate(10));
+                }
+                assertEquals("Should wait for the end of the iteration", 1000, outputBuffer.remaining());
+                assertEquals(SelectionKey.OP_READ, actions.interestOps());
+                eventLoop.invokeLater(() -> {
+                    assertFalse(outputBuffer.hasRemaining());
+                    for (int i = 0; i < 300; ++i) {
+                        outputBuffer.append(ByteBuffer.allocate(10));
+                    }
+                    assertTrue("Should flush once the threshold is reached", outputBuffer.remaining() < 2048);
+                    eventLoop.invokeLater(() -> {
+                        assertFalse(outputBuffer.hasRemaining());
+                        try {
+                            eventLoop.close();
+                        } catch (IOException e) {
+                            fail(e.toString());
+                        }
+                    });
+                });
+            });
+            try {
+                eventLoop.run();
+            } finally {
+                peer.close();
+            }
+        }
+    }
+
     private Action simulateChannelRead(int count, byte value) {
         return new SimulateChannelRead(count, value);
     }
@@ -193,6 +299,26 @@ public class SocketSelectionActionsTest {
         }
     }
 
+    private static class ConsumeByteBuffers implements Action {
+        @Override
+        public Object invoke(Invocation invocation) throws Throwable {
+            final ByteBuffer[] buffers = (ByteBuffer[]) invocation.getParameter(0);
+            final int offset = (Integer) invocation.getParameter(1);
+            final int length = (Integer) invocation.getParameter(2);
+            long written = 0;
+            for (int i = offset; i < offset + length; ++i) {
+                written += buffers[i].remaining();
+                buffers[i].position(buffers[i].limit());
+            }
+            return written;
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText("Moves each ByteBuffer's position to its limit");
+        }
+    }
+
     private static class SimulateChannelRead implements Action {
         private final int count;
         private final byte value;
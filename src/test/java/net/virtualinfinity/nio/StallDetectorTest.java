@@ -0,0 +1,108 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class StallDetectorTest {
+
+    @Test
+    public void reportsSlowEventsOnce() throws IOException {
+        final EventLoop eventLoop = new EventLoop();
+        final List<StackTraceElement[]> stalls = Collections.synchronizedList(new ArrayList<>());
+        try (StallDetector detector = new StallDetector(50, TimeUnit.MILLISECONDS, (loop, thread, stalledNanos, stackTrace) -> {
+            assertSame(eventLoop, loop);
+            assertTrue(stalledNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+            stalls.add(stackTrace);
+        })) {
+            detector.monitor(eventLoop);
+            for (int i = 0; i < 10; ++i) {
+                eventLoop.invokeLater(() -> { });
+            }
+            eventLoop.invokeAfter(this::slowHandler, 10, TimeUnit.MILLISECONDS);
+            // Idle time waiting in select is not a stall.
+            eventLoop.invokeAfter(() -> close(eventLoop), 400, TimeUnit.MILLISECONDS);
+            eventLoop.run();
+        }
+        assertEquals("Should report the slow event once", 1, stalls.size());
+        assertTrue(Arrays.toString(stalls.get(0)), Arrays.stream(stalls.get(0)).anyMatch(element -> element.getMethodName().equals("slowHandler")));
+    }
+
+    @Test
+    public void reportsSlowIterationsOfFastEvents() throws IOException {
+        final EventLoop eventLoop = new EventLoop();
+        final List<Long> dispatchStalls = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> iterationStalls = Collections.synchronizedList(new ArrayList<>());
+        try (StallDetector detector = new StallDetector(100, TimeUnit.MILLISECONDS, new StallListener() {
+            @Override
+            public void stalled(EventLoop loop, Thread thread, long stalledNanos, StackTraceElement[] stackTrace) {
+                dispatchStalls.add(stalledNanos);
+            }
+
+            @Override
+            public void iterationStalled(EventLoop loop, Thread thread, long stalledNanos, StackTraceElement[] stackTrace) {
+                iterationStalls.add(stalledNanos);
+            }
+        })) {
+            detector.monitor(eventLoop);
+            // Each event is well under the threshold, but they all run in the same iteration.
+            eventLoop.invokeAfter(() -> {
+                for (int i = 0; i < 10; ++i) {
+                    eventLoop.invokeLater(() -> sleep(20));
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+            eventLoop.invokeAfter(() -> close(eventLoop), 500, TimeUnit.MILLISECONDS);
+            eventLoop.run();
+        }
+        assertEquals("No single event was too slow", 0, dispatchStalls.size());
+        assertEquals("Should report the slow iteration once", 1, iterationStalls.size());
+        assertTrue(iterationStalls.get(0) >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void onlyTimesMonitoredLoops() throws IOException {
+        final EventLoop eventLoop = new EventLoop();
+        final long[] startNanos = new long[2];
+        eventLoop.invokeLater(() -> {
+            startNanos[0] = eventLoop.dispatchStartNanos();
+            startNanos[1] = eventLoop.iterationStartNanos();
+            close(eventLoop);
+        });
+        eventLoop.run();
+        assertEquals(0, startNanos[0]);
+        assertEquals(0, startNanos[1]);
+    }
+
+    private void slowHandler() {
+        try {
+            Thread.sleep(250);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void close(EventLoop eventLoop) {
+        try {
+            eventLoop.close();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class TcpRelayTest {
+    private static final int REQUEST_SIZE = 1 << 20;
+
+    @Test(timeout = 10000)
+    public void relaysBothDirectionsAndPropagatesHalfClose() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             SocketChannel client = SocketChannel.open(server.getLocalAddress());
+             SocketChannel relayClientSide = server.accept();
+             SocketChannel relayServerSide = SocketChannel.open(server.getLocalAddress());
+             SocketChannel backend = server.accept()) {
+            relayClientSide.configureBlocking(false);
+            relayServerSide.configureBlocking(false);
+            final EventLoop eventLoop = new EventLoop();
+            final BufferPool bufferPool = new BufferPool(4096, 4);
+            final TcpRelay relay = new TcpRelay(eventLoop, new SocketChannelWrapper(relayClientSide), new SocketChannelWrapper(relayServerSide), bufferPool, eventLoop::shutdown);
+            relay.start();
+
+            final AtomicLong backendReceived = new AtomicLong();
+            final Thread backendThread = new Thread(() -> {
+                try {
+                    backendReceived.set(drain(backend));
+                    // The request was half-closed, but the response can still be sent.
+                    backend.write(ByteBuffer.wrap(new byte[] {'o', 'k'}));
+                    backend.shutdownOutput();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            backendThread.start();
+            final Thread clientThread = new Thread(() -> {
+                try {
+                    final ByteBuffer request = ByteBuffer.allocate(REQUEST_SIZE);
+                    while (request.hasRemaining()) {
+                        client.write(request);
+                    }
+                    client.shutdownOutput();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            clientThread.start();
+
+            eventLoop.run();
+            clientThread.join();
+            backendThread.join();
+            assertTrue(relay.isClosed());
+            assertEquals(REQUEST_SIZE, backendReceived.get());
+            assertEquals("The response should be relayed after the request was half-closed", 2, drain(client));
+        }
+    }
+
+    private static long drain(SocketChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long total = 0;
+        for (int read = channel.read(buffer); read >= 0; read = channel.read(buffer)) {
+            total += read;
+            buffer.clear();
+        }
+        return total;
+    }
+}
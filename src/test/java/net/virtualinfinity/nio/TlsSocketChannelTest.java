@@ -0,0 +1,415 @@
+package net.virtualinfinity.nio;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class TlsSocketChannelTest {
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static Path keyStoreDirectory;
+    private static SSLContext context;
+    private final ConnectionInitiator initiator = new ConnectionInitiator();
+    private final ExecutorService delegatedTasks = Executors.newSingleThreadExecutor();
+    private final BufferPool pool = new BufferPool(64 * 1024, 16);
+
+    @BeforeClass
+    public static void createKeyStore() throws Exception {
+        keyStoreDirectory = Files.createTempDirectory("nio-tls");
+        final Path keyStoreFile = keyStoreDirectory.resolve("test.p12");
+        final Process keytool = new ProcessBuilder(
+            System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool",
+            "-genkeypair", "-alias", "test", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+            "-dname", "CN=localhost", "-storetype", "PKCS12", "-keystore", keyStoreFile.toString(),
+            "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+            .redirectErrorStream(true)
+            .start();
+        assertTrue("keytool timed out", keytool.waitFor(60, TimeUnit.SECONDS));
+        assertEquals("keytool failed", 0, keytool.exitValue());
+
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(keyStoreFile)) {
+            keyStore.load(in, PASSWORD);
+        }
+        final KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        final TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+    }
+
+    @AfterClass
+    public static void deleteKeyStore() throws IOException {
+        if (keyStoreDirectory != null) {
+            Files.deleteIfExists(keyStoreDirectory.resolve("test.p12"));
+            Files.deleteIfExists(keyStoreDirectory);
+        }
+    }
+
+    @Test
+    public void echoesOverTls() throws Exception {
+        final byte[] request = new byte[200 * 1024];
+        new Random(42).nextBytes(request);
+        final int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        final InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        final EventLoop eventLoop = new EventLoop();
+        final ByteBuffer echoed = ByteBuffer.allocate(request.length);
+        final boolean[] connected = new boolean[1];
+        try {
+            initiator.bind(eventLoop, address, 4, channel -> {
+                final OutputBuffer serverOutput = new OutputBuffer();
+                register(eventLoop, new SocketSelectionActions(tls(channel, eventLoop, false), new NoOpListener(), serverOutput::append, serverOutput, 4096, false));
+            }, (key, e) -> fail(e.toString()));
+            initiator.connect(eventLoop, address, new NoOpListener(), channel -> {
+                final OutputBuffer clientOutput = new OutputBuffer();
+                clientOutput.append(ByteBuffer.wrap(request));
+                register(eventLoop, new SocketSelectionActions(tls(channel, eventLoop, true), new NoOpListener() {
+                    @Override
+                    public void connected() {
+                        connected[0] = true;
+                    }
+
+                    @Override
+                    public void connectionFailed(IOException e) {
+                        fail(e.toString());
+                    }
+                }, src -> {
+                    echoed.put(src);
+                    if (!echoed.hasRemaining()) {
+                        eventLoop.invokeLater(() -> close(eventLoop));
+                    }
+                }, clientOutput, 4096, false));
+            });
+            eventLoop.invokeAfter(() -> close(eventLoop), 20, TimeUnit.SECONDS);
+            eventLoop.run();
+        } finally {
+            delegatedTasks.shutdownNow();
+        }
+        assertTrue("Should have been notified of the connection", connected[0]);
+        assertEquals("Should have echoed everything", request.length, echoed.position());
+        assertArrayEquals(request, echoed.array());
+    }
+
+    @Test
+    public void truncatedRecordEndsTheStream() throws Exception {
+        // A record header promising 256 bytes, followed by only 50 of them.
+        final ByteBuffer halfRecord = ByteBuffer.allocate(55);
+        halfRecord.put(new byte[] {0x16, 0x03, 0x03, 0x01, 0x00}).position(halfRecord.limit());
+        halfRecord.flip();
+        try (EventLoop eventLoop = new EventLoop()) {
+            final TlsSocketChannel channel = tls(new ClosingPeer(halfRecord), eventLoop, true);
+            final ByteBuffer dst = ByteBuffer.allocate(pool.bufferSize());
+            for (int attempt = 0; attempt < 10; ++attempt) {
+                try {
+                    assertEquals("Should not report data from a truncated record", 0, channel.read(dst));
+                } catch (final SSLException expected) {
+                    assertEquals("Should not select for reading after end of stream", 0,
+                        channel.adjustInterestOps(0) & SelectionKey.OP_READ);
+                    return;
+                }
+            }
+            fail("Reads should stop once the peer has closed");
+        } finally {
+            delegatedTasks.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void unwrapStopsWhenTheHandshakeCanNotSend() throws Exception {
+        final ByteBuffer input = ByteBuffer.allocate(10);
+        try (EventLoop eventLoop = new EventLoop()) {
+            final TlsSocketChannel channel = new TlsSocketChannel(new StalledPeer(input), new StalledEngine(context.createSSLEngine()), eventLoop, delegatedTasks, pool);
+            assertEquals(0, channel.read(ByteBuffer.allocate(pool.bufferSize())));
+            assertTrue("The unread input should be kept for later", channel.hasBufferedInput());
+            assertEquals("Should wait for the output to drain", SelectionKey.OP_WRITE,
+                channel.adjustInterestOps(SelectionKey.OP_READ) & SelectionKey.OP_WRITE);
+        } finally {
+            delegatedTasks.shutdownNow();
+        }
+    }
+
+    private TlsSocketChannel tls(SocketChannelInterface channel, EventLoop eventLoop, boolean client) {
+        final SSLEngine engine = context.createSSLEngine("localhost", 0);
+        engine.setUseClientMode(client);
+        try {
+            return new TlsSocketChannel(channel, engine, eventLoop, delegatedTasks, pool);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void register(EventLoop eventLoop, SocketSelectionActions actions) {
+        try {
+            actions.register(eventLoop);
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    private static void close(EventLoop eventLoop) {
+        try {
+            eventLoop.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * A peer which sends some bytes, then closes the connection, and discards everything written to it.
+     */
+    private static class ClosingPeer implements SocketChannelInterface {
+        private final ByteBuffer input;
+
+        ClosingPeer(ByteBuffer input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!input.hasRemaining()) {
+                return -1;
+            }
+            final int start = input.position();
+            BufferUtils.putWhatFits(dst, input);
+            return input.position() - start;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            final int written = src.remaining();
+            src.position(src.limit());
+            return written;
+        }
+
+        @Override
+        public SelectableChannel selectableChannel() {
+            return null;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public boolean isConnectionPending() {
+            return false;
+        }
+
+        @Override
+        public boolean finishConnect() {
+            return true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void configureBlocking(boolean blocking) {
+        }
+
+        @Override
+        public boolean connect(SocketAddress address) {
+            return true;
+        }
+    }
+
+    /**
+     * A peer which sends some bytes, then neither sends nor reads anything more.
+     */
+    private static class StalledPeer extends ClosingPeer {
+        StalledPeer(ByteBuffer input) {
+            super(input);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            return Math.max(0, super.read(dst));
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return 0;
+        }
+    }
+
+    /**
+     * An engine which always needs to send before it can read any further, like one in the middle of a renegotiation.
+     * Each wrap fills the output buffer, and each unwrap consumes nothing.
+     */
+    private static class StalledEngine extends SSLEngine {
+        private final SSLEngine sizes;
+
+        StalledEngine(SSLEngine sizes) {
+            this.sizes = sizes;
+        }
+
+        @Override
+        public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) {
+            final int produced = dst.remaining();
+            dst.position(dst.limit());
+            return new SSLEngineResult(SSLEngineResult.Status.OK, SSLEngineResult.HandshakeStatus.NEED_WRAP, 0, produced);
+        }
+
+        @Override
+        public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) {
+            return new SSLEngineResult(SSLEngineResult.Status.OK, SSLEngineResult.HandshakeStatus.NEED_WRAP, 0, 0);
+        }
+
+        @Override
+        public SSLEngineResult.HandshakeStatus getHandshakeStatus() {
+            return SSLEngineResult.HandshakeStatus.NEED_WRAP;
+        }
+
+        @Override
+        public SSLSession getSession() {
+            return sizes.getSession();
+        }
+
+        @Override
+        public Runnable getDelegatedTask() {
+            return null;
+        }
+
+        @Override
+        public void beginHandshake() {
+        }
+
+        @Override
+        public void closeInbound() {
+        }
+
+        @Override
+        public boolean isInboundDone() {
+            return false;
+        }
+
+        @Override
+        public void closeOutbound() {
+        }
+
+        @Override
+        public boolean isOutboundDone() {
+            return false;
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return sizes.getSupportedCipherSuites();
+        }
+
+        @Override
+        public String[] getEnabledCipherSuites() {
+            return sizes.getEnabledCipherSuites();
+        }
+
+        @Override
+        public void setEnabledCipherSuites(String[] suites) {
+        }
+
+        @Override
+        public String[] getSupportedProtocols() {
+            return sizes.getSupportedProtocols();
+        }
+
+        @Override
+        public String[] getEnabledProtocols() {
+            return sizes.getEnabledProtocols();
+        }
+
+        @Override
+        public void setEnabledProtocols(String[] protocols) {
+        }
+
+        @Override
+        public void setUseClientMode(boolean mode) {
+        }
+
+        @Override
+        public boolean getUseClientMode() {
+            return true;
+        }
+
+        @Override
+        public void setNeedClientAuth(boolean need) {
+        }
+
+        @Override
+        public boolean getNeedClientAuth() {
+            return false;
+        }
+
+        @Override
+        public void setWantClientAuth(boolean want) {
+        }
+
+        @Override
+        public boolean getWantClientAuth() {
+            return false;
+        }
+
+        @Override
+        public void setEnableSessionCreation(boolean flag) {
+        }
+
+        @Override
+        public boolean getEnableSessionCreation() {
+            return true;
+        }
+    }
+
+    private static class NoOpListener implements ConnectionListener {
+        @Override
+        public void connecting() {
+        }
+
+        @Override
+        public void connected() {
+        }
+
+        @Override
+        public void connectionFailed(IOException e) {
+        }
+
+        @Override
+        public void disconnected() {
+        }
+    }
+}
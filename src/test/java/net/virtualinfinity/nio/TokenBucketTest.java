@@ -0,0 +1,126 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class TokenBucketTest {
+    @Test
+    public void startsFullAndLimitsBursts() {
+        final TokenBucket bucket = new TokenBucket(1, 100);
+        assertEquals(100, bucket.tryAcquire(150));
+        assertEquals(0, bucket.tryAcquire(1));
+        bucket.refund(30);
+        assertEquals(30, bucket.tryAcquire(50));
+    }
+
+    @Test
+    public void refillsAtTheRate() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(1000, 100);
+        bucket.tryAcquire(100);
+        final long wait = bucket.nanosUntilAvailable(50);
+        assertTrue(String.valueOf(wait), wait > TimeUnit.MILLISECONDS.toNanos(40) && wait <= TimeUnit.MILLISECONDS.toNanos(50));
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+        assertTrue(bucket.tryAcquire(100) >= 50);
+    }
+
+    @Test
+    public void combinedBucketsGrantTheSmallestAllowance() {
+        final TokenBucket connection = new TokenBucket(1, 100);
+        final TokenBucket shared = new TokenBucket(1, 40);
+        final TokenBucket[] buckets = {connection, shared};
+        assertEquals(40, TokenBucket.tryAcquire(buckets, 100));
+        assertEquals("Tokens not granted by the shared bucket should be refunded", 60, connection.tryAcquire(100));
+    }
+
+    @Test(timeout = 5000)
+    public void limitsWriteRate() throws IOException, InterruptedException {
+        final int total = 30000;
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             SocketChannel client = SocketChannel.open(server.getLocalAddress());
+             SocketChannel peer = server.accept()) {
+            client.configureBlocking(false);
+            final EventLoop eventLoop = new EventLoop();
+            final OutputBuffer outputBuffer = new OutputBuffer();
+            final SocketSelectionActions actions = new SocketSelectionActions(new SocketChannelWrapper(client), null, src -> src.position(src.limit()), outputBuffer, 1024, false);
+            actions.setWriteLimiters(new TokenBucket(100000, 10000));
+            actions.register(eventLoop);
+            final AtomicLong received = new AtomicLong();
+            final Thread reader = new Thread(() -> {
+                final ByteBuffer buffer = ByteBuffer.allocate(4096);
+                try {
+                    while (received.get() < total) {
+                        buffer.clear();
+                        received.addAndGet(peer.read(buffer));
+                    }
+                    eventLoop.shutdown();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            reader.start();
+            final long start = System.nanoTime();
+            eventLoop.invokeLater(() -> outputBuffer.append(ByteBuffer.allocate(total)));
+            eventLoop.run();
+            reader.join();
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals(total, received.get());
+            assertTrue("The first 10000 byte burst, then 200ms for the rest, but took " + elapsed + "ms", elapsed >= 180);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void throttledWritesResumeInSmallSteps() throws Exception {
+        final int total = 30000;
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             SocketChannel client = SocketChannel.open(server.getLocalAddress());
+             SocketChannel peer = server.accept()) {
+            client.configureBlocking(false);
+            final EventLoop eventLoop = new EventLoop();
+            final OutputBuffer outputBuffer = new OutputBuffer();
+            final SocketSelectionActions actions = new SocketSelectionActions(new SocketChannelWrapper(client), null, src -> src.position(src.limit()), outputBuffer, 1024, false);
+            actions.setWriteLimiters(new TokenBucket(100000, 10000));
+            actions.register(eventLoop);
+            final AtomicLong received = new AtomicLong();
+            final AtomicLong longestGap = new AtomicLong();
+            final Thread reader = new Thread(() -> {
+                final ByteBuffer buffer = ByteBuffer.allocate(4096);
+                try {
+                    long lastRead = 0;
+                    while (received.get() < total) {
+                        buffer.clear();
+                        received.addAndGet(peer.read(buffer));
+                        final long now = System.nanoTime();
+                        if (lastRead != 0) {
+                            longestGap.accumulateAndGet(now - lastRead, Math::max);
+                        }
+                        lastRead = now;
+                    }
+                    eventLoop.shutdown();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            reader.start();
+            eventLoop.invokeLater(() -> outputBuffer.append(ByteBuffer.allocate(total)));
+            eventLoop.run();
+            reader.join();
+            assertEquals(total, received.get());
+            // Waiting for the whole 10000 byte bucket to refill would leave 100ms gaps.
+            final long gap = TimeUnit.NANOSECONDS.toMillis(longestGap.get());
+            assertTrue("Expected the write to resume after about one segment's worth of tokens, but waited " + gap + "ms", gap < 60);
+        }
+    }
+}
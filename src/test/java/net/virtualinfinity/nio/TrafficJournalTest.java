@@ -0,0 +1,168 @@
+package net.virtualinfinity.nio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class TrafficJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAcrossRegions() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("traffic.journal");
+        final ByteBuffer large = ByteBuffer.allocate(10000);
+        for (int i = 0; i < large.capacity(); ++i) {
+            large.put(i, (byte) i);
+        }
+        try (TrafficJournal journal = new TrafficJournal(file, 4096)) {
+            final long first = journal.newConnectionId();
+            final long second = journal.newConnectionId();
+            journal.tap(first).captured(true, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+            journal.record(second, false, large);
+            assertEquals("Recording should not consume the data", 0, large.position());
+            journal.record(first, false, ByteBuffer.wrap(new byte[] {4}));
+            assertNull(journal.failure());
+        }
+
+        final List<String> records = new ArrayList<>();
+        final ByteBuffer reassembled = ByteBuffer.allocate(large.capacity());
+        TrafficJournal.read(file, (connectionId, inbound, timestampNanos, data) -> {
+            records.add(connectionId + (inbound ? "<" : ">") + data.remaining());
+            if (connectionId == 1) {
+                reassembled.put(data);
+            }
+        });
+        assertEquals("0<3", records.get(0));
+        assertEquals("0>1", records.get(records.size() - 1));
+        assertTrue("Large payloads should be split across regions", records.size() > 3);
+        assertEquals(large, reassembled.flip());
+    }
+
+    @Test(timeout = 10000)
+    public void replaysCapturedTraffic() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("replay.journal");
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             SocketChannel client = SocketChannel.open(server.getLocalAddress());
+             SocketChannel accepted = server.accept()) {
+            // Capture a client's requests on the server side.
+            accepted.configureBlocking(false);
+            final EventLoop eventLoop = new EventLoop();
+            final TrafficJournal journal = new TrafficJournal(file, 4096);
+            final long[] captured = new long[1];
+            final SocketSelectionActions actions = new SocketSelectionActions(new SocketChannelWrapper(accepted), null, src -> {
+                captured[0] += src.remaining();
+                src.position(src.limit());
+                if (captured[0] >= 3000) {
+                    eventLoop.shutdown();
+                }
+            }, new OutputBuffer(), 512, false);
+            actions.setTrafficTap(journal.tap(journal.newConnectionId()));
+            actions.register(eventLoop);
+            for (int i = 0; i < 3; ++i) {
+                client.write(ByteBuffer.allocate(1000));
+            }
+            eventLoop.run();
+            journal.close();
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            final AtomicLong received = new AtomicLong();
+            final Thread sink = new Thread(() -> {
+                try (SocketChannel accepted = server.accept()) {
+                    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+                    for (int read = accepted.read(buffer); read >= 0; read = accepted.read(buffer)) {
+                        received.addAndGet(read);
+                        buffer.clear();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            sink.start();
+            final EventLoop eventLoop = new EventLoop();
+            final TrafficReplayer replayer = new TrafficReplayer(eventLoop, new ConnectionInitiator(), server.getLocalAddress(), Double.POSITIVE_INFINITY, true);
+            replayer.replay(file, eventLoop::shutdown);
+            eventLoop.run();
+            sink.join();
+            assertEquals(3000, replayer.bytesSent());
+            assertEquals(3000, received.get());
+            assertEquals(0, replayer.failedConnections());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void replaysAtScaledSpeed() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("timed.journal");
+        try (TrafficJournal journal = new TrafficJournal(file, 4096)) {
+            journal.record(0, true, ByteBuffer.allocate(100));
+            journal.record(0, false, ByteBuffer.allocate(1000));
+            Thread.sleep(400);
+            journal.record(0, true, ByteBuffer.allocate(100));
+            journal.record(1, true, ByteBuffer.allocate(50));
+        }
+
+        final long elapsedNanos;
+        final TrafficReplayer replayer;
+        final AtomicLong received = new AtomicLong();
+        // The sink closes the server once it has accepted, so the second connection, which starts later, is refused.
+        final ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        final SocketAddress address = server.getLocalAddress();
+        final Thread sink = new Thread(() -> {
+            try {
+                final SocketChannel accepted;
+                try {
+                    accepted = server.accept();
+                } finally {
+                    server.close();
+                }
+                try (SocketChannel connection = accepted) {
+                    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+                    for (int read = connection.read(buffer); read >= 0; read = connection.read(buffer)) {
+                        received.addAndGet(read);
+                        buffer.clear();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        sink.start();
+        final EventLoop eventLoop = new EventLoop();
+        replayer = new TrafficReplayer(eventLoop, new ConnectionInitiator(), address, 4, true);
+        final long start = System.nanoTime();
+        final long[] finished = new long[1];
+        replayer.replay(file, () -> {
+            finished[0] = System.nanoTime();
+            eventLoop.shutdown();
+        });
+        eventLoop.run();
+        sink.join();
+        elapsedNanos = finished[0] - start;
+        assertEquals("Only the inbound records should be replayed", 250, replayer.bytesSent());
+        assertEquals(200, received.get());
+        assertEquals(1, replayer.failedConnections());
+        assertTrue("Should wait for the scaled gap between records, took " + elapsedNanos,
+            elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(95));
+        assertTrue("Should replay four times faster than recorded, took " + elapsedNanos,
+            elapsedNanos < TimeUnit.MILLISECONDS.toNanos(350));
+    }
+}
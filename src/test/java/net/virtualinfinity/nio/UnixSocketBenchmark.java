@@ -0,0 +1,106 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares request/response latency over loopback TCP and a Unix domain socket, using an echo server running on its
+ * own {@link EventLoop} and a {@link LoadGenerator}.
+ *
+ * <p>
+ * This is not a unit test.  Run its main method with the test classpath, eg. after <code>mvn test-compile</code>:
+ * <pre>
+ * java -cp target/classes:target/test-classes net.virtualinfinity.nio.UnixSocketBenchmark [connections] [requestsPerSecond] [seconds]
+ * </pre>
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class UnixSocketBenchmark {
+    private static final int MESSAGE_SIZE = 128;
+
+    public static void main(String[] args) throws Exception {
+        if (!UnixDomainSockets.isSupported()) {
+            System.err.println("Unix domain sockets require Java 16 or later");
+            System.exit(1);
+        }
+        final int connections = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final double rate = args.length > 1 ? Double.parseDouble(args[1]) : 20000;
+        final long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+
+        final int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        final Path directory = Files.createTempDirectory("nio-benchmark");
+        final Path socketPath = directory.resolve("echo.sock");
+        final SocketAddress tcp = new InetSocketAddress("127.0.0.1", port);
+        final SocketAddress unix = UnixDomainSockets.address(socketPath);
+
+        final ConnectionInitiator initiator = new ConnectionInitiator();
+        final EventLoop server = new EventLoop((key, e) -> key.channel().close());
+        startEchoServer(initiator, server, tcp);
+        startEchoServer(initiator, server, unix);
+        final Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "echo-server");
+        serverThread.start();
+        try {
+            // Warm up both paths, then measure.
+            run(initiator, tcp, connections, rate, 2);
+            run(initiator, unix, connections, rate, 2);
+            System.out.printf("%d connections, %.0f requests/second, %d byte messages%n", connections, rate, MESSAGE_SIZE);
+            System.out.println("--- loopback TCP");
+            run(initiator, tcp, connections, rate, seconds).writeReport(System.out, TimeUnit.MICROSECONDS);
+            System.out.println("--- Unix domain socket");
+            run(initiator, unix, connections, rate, seconds).writeReport(System.out, TimeUnit.MICROSECONDS);
+        } finally {
+            server.close();
+            serverThread.join();
+            Files.deleteIfExists(socketPath);
+            Files.deleteIfExists(directory);
+        }
+        System.exit(0);
+    }
+
+    private static LatencyHistogram run(ConnectionInitiator initiator, SocketAddress address, int connections, double rate, long seconds) throws IOException {
+        final LoadGenerator.Workload workload = LoadGenerator.Workload.requestResponse(ByteBuffer.allocate(MESSAGE_SIZE), MESSAGE_SIZE);
+        return new LoadGenerator(initiator, address, workload, connections, rate).run(seconds, TimeUnit.SECONDS);
+    }
+
+    private static void startEchoServer(ConnectionInitiator initiator, EventLoop server, SocketAddress address) {
+        initiator.bind(server, address, 128, channel -> {
+            final OutputBuffer output = new OutputBuffer();
+            try {
+                new SocketSelectionActions(channel, new ConnectionListener() {
+                    @Override
+                    public void connecting() {
+                    }
+
+                    @Override
+                    public void connected() {
+                    }
+
+                    @Override
+                    public void connectionFailed(IOException e) {
+                    }
+
+                    @Override
+                    public void disconnected() {
+                    }
+                }, output::append, output, 8192, false).register(server);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, (key, e) -> e.printStackTrace());
+    }
+}
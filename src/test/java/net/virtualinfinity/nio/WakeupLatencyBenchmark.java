@@ -0,0 +1,90 @@
+package net.virtualinfinity.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the latency from a write on a loopback socket to the dispatch of the reading handler, for each
+ * {@link WaitStrategy}.  Each message is the {@link System#nanoTime()} at which it was written.
+ *
+ * <p>
+ * This is not a unit test.  Run its main method with the test classpath, eg. after <code>mvn test-compile</code>:
+ * <pre>
+ * java -cp target/classes:target/test-classes net.virtualinfinity.nio.WakeupLatencyBenchmark [messages] [intervalMicros]
+ * </pre>
+ * The spinning strategies need a spare core for the event loop, or the results will mostly measure the scheduler.
+ *
+ * @author <a href='mailto:Daniel@coloraura.com'>Daniel Pitts</a>
+ */
+public class WakeupLatencyBenchmark {
+    public static void main(String[] args) throws Exception {
+        final int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final long interval = TimeUnit.MICROSECONDS.toNanos(args.length > 1 ? Long.parseLong(args[1]) : 100);
+        final Map<String, WaitStrategy> strategies = new LinkedHashMap<>();
+        strategies.put("blocking", WaitStrategy.blocking());
+        strategies.put("adaptive(10000, 100)", WaitStrategy.adaptive(10000, 100));
+        strategies.put("busySpin", WaitStrategy.busySpin());
+        for (final Map.Entry<String, WaitStrategy> strategy : strategies.entrySet()) {
+            // Warm up, then measure.
+            run(strategy.getValue(), messages / 10, interval);
+            System.out.println("--- " + strategy.getKey());
+            run(strategy.getValue(), messages, interval).writeReport(System.out, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private static LatencyHistogram run(WaitStrategy waitStrategy, int messages, long interval) throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             SocketChannel writer = SocketChannel.open(server.getLocalAddress());
+             SocketChannel reader = server.accept()) {
+            writer.socket().setTcpNoDelay(true);
+            reader.configureBlocking(false);
+            final EventLoop eventLoop = new EventLoop(null, waitStrategy);
+            final ByteBuffer input = ByteBuffer.allocateDirect(8 * 1024);
+            final long[] received = new long[1];
+            eventLoop.registerHandler(reader, SelectionKey.OP_READ, () -> {
+                final long now = System.nanoTime();
+                reader.read(input);
+                input.flip();
+                while (input.remaining() >= 8) {
+                    histogram.recordValue(Math.max(0, now - input.getLong()));
+                    ++received[0];
+                }
+                input.compact();
+                if (received[0] == messages) {
+                    eventLoop.close();
+                }
+            });
+            final Thread loopThread = new Thread(() -> {
+                try {
+                    eventLoop.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "event-loop");
+            loopThread.start();
+            final ByteBuffer output = ByteBuffer.allocateDirect(8);
+            for (int message = 0; message < messages; ++message) {
+                final long next = System.nanoTime() + interval;
+                output.clear();
+                output.putLong(System.nanoTime()).flip();
+                writer.write(output);
+                while (System.nanoTime() - next < 0) {
+                    LockSupport.parkNanos(next - System.nanoTime());
+                }
+            }
+            loopThread.join(TimeUnit.SECONDS.toMillis(30));
+            eventLoop.close();
+        }
+        return histogram;
+    }
+}